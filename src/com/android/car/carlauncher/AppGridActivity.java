@@ -32,12 +32,10 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.ServiceConnection;
 import android.content.pm.LauncherApps;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.IBinder;
 import android.text.TextUtils;
 import android.text.format.DateUtils;
 import android.util.Log;
@@ -81,7 +79,7 @@ public class AppGridActivity extends Activity implements InsetsChangedListener {
     private PackageManager mPackageManager;
     private UsageStatsManager mUsageStatsManager;
     private AppInstallUninstallReceiver mInstallUninstallReceiver;
-    private Car mCar;
+    private CarConnectionHub mCarConnectionHub;
     private CarUxRestrictionsManager mCarUxRestrictionsManager;
     private CarPackageManager mCarPackageManager;
     private CarMediaManager mCarMediaManager;
@@ -120,11 +118,11 @@ public class AppGridActivity extends Activity implements InsetsChangedListener {
         }
     }
 
-    private ServiceConnection mCarConnectionListener = new ServiceConnection() {
+    private CarConnectionHub.Listener mCarConnectionListener = new CarConnectionHub.Listener() {
         @Override
-        public void onServiceConnected(ComponentName name, IBinder service) {
+        public void onCarReady(Car car) {
             try {
-                mCarUxRestrictionsManager = (CarUxRestrictionsManager) mCar.getCarManager(
+                mCarUxRestrictionsManager = (CarUxRestrictionsManager) car.getCarManager(
                         Car.CAR_UX_RESTRICTION_SERVICE);
                 mGridAdapter.setIsDistractionOptimizationRequired(
                         mCarUxRestrictionsManager
@@ -135,8 +133,8 @@ public class AppGridActivity extends Activity implements InsetsChangedListener {
                                 mGridAdapter.setIsDistractionOptimizationRequired(
                                         restrictionInfo.isRequiresDistractionOptimization()));
 
-                mCarPackageManager = (CarPackageManager) mCar.getCarManager(Car.PACKAGE_SERVICE);
-                mCarMediaManager = (CarMediaManager) mCar.getCarManager(Car.CAR_MEDIA_SERVICE);
+                mCarPackageManager = (CarPackageManager) car.getCarManager(Car.PACKAGE_SERVICE);
+                mCarMediaManager = (CarMediaManager) car.getCarManager(Car.CAR_MEDIA_SERVICE);
                 updateAppsLists();
             } catch (CarNotConnectedException e) {
                 Log.e(TAG, "Car not connected in CarConnectionListener", e);
@@ -144,7 +142,7 @@ public class AppGridActivity extends Activity implements InsetsChangedListener {
         }
 
         @Override
-        public void onServiceDisconnected(ComponentName name) {
+        public void onCarLost() {
             mCarUxRestrictionsManager = null;
             mCarPackageManager = null;
         }
@@ -157,7 +155,7 @@ public class AppGridActivity extends Activity implements InsetsChangedListener {
         mColumnNumber = getResources().getInteger(R.integer.car_app_selector_column_number);
         mPackageManager = getPackageManager();
         mUsageStatsManager = (UsageStatsManager) getSystemService(Context.USAGE_STATS_SERVICE);
-        mCar = Car.createCar(this, mCarConnectionListener);
+        mCarConnectionHub = CarConnectionHub.getInstance(this);
         mHiddenApps.addAll(Arrays.asList(getResources().getStringArray(R.array.hidden_apps)));
         mCustomMediaComponents.addAll(
                 Arrays.asList(getResources().getStringArray(R.array.custom_media_packages)));
@@ -205,15 +203,6 @@ public class AppGridActivity extends Activity implements InsetsChangedListener {
         updateMode();
     }
 
-    @Override
-    protected void onDestroy() {
-        if (mCar != null && mCar.isConnected()) {
-            mCar.disconnect();
-            mCar = null;
-        }
-        super.onDestroy();
-    }
-
     private void updateMode() {
         mMode = parseMode(getIntent());
         setTitle(mMode.mTitleStringId);
@@ -274,7 +263,7 @@ public class AppGridActivity extends Activity implements InsetsChangedListener {
         registerReceiver(mInstallUninstallReceiver, filter);
 
         // Connect to car service
-        mCar.connect();
+        mCarConnectionHub.addListener(getMainExecutor(), mCarConnectionListener);
     }
 
     @Override
@@ -293,9 +282,7 @@ public class AppGridActivity extends Activity implements InsetsChangedListener {
         } catch (CarNotConnectedException e) {
             Log.e(TAG, "Error unregistering listeners", e);
         }
-        if (mCar != null) {
-            mCar.disconnect();
-        }
+        mCarConnectionHub.removeListener(mCarConnectionListener);
     }
 
     /**
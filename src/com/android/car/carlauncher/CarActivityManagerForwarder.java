@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher;
+
+import static com.android.car.carlauncher.TaskEventMetrics.CAR_ACTIVITY_MANAGER;
+import static com.android.car.carlauncher.TaskEventMetrics.ON_TASK_APPEARED;
+import static com.android.car.carlauncher.TaskEventMetrics.ON_TASK_INFO_CHANGED;
+import static com.android.car.carlauncher.TaskEventMetrics.ON_TASK_VANISHED;
+import static com.android.car.carlauncher.TaskViewManager.DBG;
+
+import android.app.ActivityManager;
+import android.car.app.CarActivityManager;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.Nullable;
+
+import com.android.internal.annotations.GuardedBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Forwards the task events to {@link CarActivityManager} off the shell thread.
+ *
+ * <p>Each forwarded event is a binder call to CarService, so the events are queued and sent from
+ * the given executor instead, and a slow CarService can't delay the task organization. Pending
+ * {@code onTaskInfoChanged} events for the same task are collapsed into the latest one. All the
+ * events queued before the executor gets to run are sent in a single pass.
+ *
+ * <p>The alive tasks are tracked, so that the events which arrive before CarActivityManager is
+ * set, or while CarService is gone, aren't lost: once {@link #setCarActivityManager} is called
+ * the alive tasks are replayed to it as appeared. The events which are dropped anyway, since
+ * CarActivityManager was unset after they were queued, are reported to {@link TaskEventMetrics}.
+ */
+final class CarActivityManagerForwarder {
+    private static final String TAG = CarActivityManagerForwarder.class.getSimpleName();
+
+    private static final int EVENT_TASK_APPEARED = 0;
+    private static final int EVENT_TASK_INFO_CHANGED = 1;
+    private static final int EVENT_TASK_VANISHED = 2;
+
+    private static final class TaskEvent {
+        final int mType;
+        ActivityManager.RunningTaskInfo mTaskInfo;
+
+        TaskEvent(int type, ActivityManager.RunningTaskInfo taskInfo) {
+            mType = type;
+            mTaskInfo = taskInfo;
+        }
+    }
+
+    private final AtomicReference<CarActivityManager> mCarActivityManagerRef;
+    private final Executor mExecutor;
+    @Nullable
+    private final TaskEventMetrics mMetrics;
+    // Runs the updates of mMetrics, which isn't thread-safe.
+    private final Executor mMetricsExecutor;
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    private List<TaskEvent> mPendingEvents = new ArrayList<>();
+    // The pending onTaskInfoChanged event of each task, which can still be updated in place.
+    @GuardedBy("mLock")
+    private final SparseArray<TaskEvent> mPendingInfoChanges = new SparseArray<>();
+    // The latest info of the tasks which appeared and didn't vanish yet.
+    @GuardedBy("mLock")
+    private final SparseArray<ActivityManager.RunningTaskInfo> mAliveTasks = new SparseArray<>();
+    @GuardedBy("mLock")
+    private boolean mDrainScheduled;
+    @GuardedBy("mLock")
+    private int mCollapsedCount;
+    // Only accessed on mExecutor, swapped with mPendingEvents to avoid allocating on each drain.
+    private List<TaskEvent> mDrainingEvents = new ArrayList<>();
+
+    private final Runnable mDrainRunnable = this::drain;
+
+    CarActivityManagerForwarder(AtomicReference<CarActivityManager> carActivityManagerRef,
+            Executor executor) {
+        this(carActivityManagerRef, executor, /* metrics= */ null, Runnable::run);
+    }
+
+    CarActivityManagerForwarder(AtomicReference<CarActivityManager> carActivityManagerRef,
+            Executor executor, @Nullable TaskEventMetrics metrics, Executor metricsExecutor) {
+        mCarActivityManagerRef = carActivityManagerRef;
+        mExecutor = executor;
+        mMetrics = metrics;
+        mMetricsExecutor = metricsExecutor;
+    }
+
+    /** Queues {@link CarActivityManager#onTaskAppeared}. */
+    void onTaskAppeared(ActivityManager.RunningTaskInfo taskInfo) {
+        enqueue(EVENT_TASK_APPEARED, taskInfo);
+    }
+
+    /** Queues {@link CarActivityManager#onTaskInfoChanged}. */
+    void onTaskInfoChanged(ActivityManager.RunningTaskInfo taskInfo) {
+        enqueue(EVENT_TASK_INFO_CHANGED, taskInfo);
+    }
+
+    /** Queues {@link CarActivityManager#onTaskVanished}. */
+    void onTaskVanished(ActivityManager.RunningTaskInfo taskInfo) {
+        enqueue(EVENT_TASK_VANISHED, taskInfo);
+    }
+
+    /**
+     * Sets the {@link CarActivityManager} to forward the events to, and replays the alive tasks
+     * to it. Its task monitor should be registered already. The events queued for the previous
+     * one are dropped.
+     */
+    void setCarActivityManager(@Nullable CarActivityManager carAm) {
+        boolean scheduleDrain;
+        synchronized (mLock) {
+            mCarActivityManagerRef.set(carAm);
+            mPendingEvents.clear();
+            mPendingInfoChanges.clear();
+            if (carAm == null || mAliveTasks.size() == 0) {
+                return;
+            }
+            if (DBG) Log.d(TAG, "Replaying " + mAliveTasks.size() + " alive tasks");
+            for (int i = 0; i < mAliveTasks.size(); i++) {
+                mPendingEvents.add(new TaskEvent(EVENT_TASK_APPEARED, mAliveTasks.valueAt(i)));
+            }
+            scheduleDrain = !mDrainScheduled;
+            mDrainScheduled = true;
+        }
+        if (scheduleDrain) {
+            mExecutor.execute(mDrainRunnable);
+        }
+    }
+
+    /**
+     * Tracks an alive task which CarActivityManager knows about already, e.g. a task handed over
+     * from another forwarder, so that it's replayed along with the others.
+     */
+    void trackTask(ActivityManager.RunningTaskInfo taskInfo) {
+        synchronized (mLock) {
+            mAliveTasks.put(taskInfo.taskId, taskInfo);
+        }
+    }
+
+    /** Stops tracking a task which is handed over to another forwarder. */
+    void untrackTask(ActivityManager.RunningTaskInfo taskInfo) {
+        synchronized (mLock) {
+            mAliveTasks.remove(taskInfo.taskId);
+        }
+    }
+
+    private void enqueue(int type, ActivityManager.RunningTaskInfo taskInfo) {
+        boolean scheduleDrain;
+        synchronized (mLock) {
+            if (type == EVENT_TASK_VANISHED) {
+                mAliveTasks.remove(taskInfo.taskId);
+            } else {
+                mAliveTasks.put(taskInfo.taskId, taskInfo);
+            }
+            if (mCarActivityManagerRef.get() == null) {
+                // Replayed from mAliveTasks once CarActivityManager is set.
+                return;
+            }
+            if (type == EVENT_TASK_INFO_CHANGED) {
+                TaskEvent pending = mPendingInfoChanges.get(taskInfo.taskId);
+                if (pending != null) {
+                    pending.mTaskInfo = taskInfo;
+                    mCollapsedCount++;
+                    return;
+                }
+                TaskEvent event = new TaskEvent(type, taskInfo);
+                mPendingInfoChanges.put(taskInfo.taskId, event);
+                mPendingEvents.add(event);
+            } else {
+                // Events queued after an appearance or a vanishing must not be merged with the
+                // ones queued before it.
+                mPendingInfoChanges.remove(taskInfo.taskId);
+                mPendingEvents.add(new TaskEvent(type, taskInfo));
+            }
+            scheduleDrain = !mDrainScheduled;
+            mDrainScheduled = true;
+        }
+        if (scheduleDrain) {
+            mExecutor.execute(mDrainRunnable);
+        }
+    }
+
+    private void drain() {
+        List<TaskEvent> events;
+        CarActivityManager carAm;
+        synchronized (mLock) {
+            events = mPendingEvents;
+            mPendingEvents = mDrainingEvents;
+            mDrainingEvents = events;
+            mPendingInfoChanges.clear();
+            mDrainScheduled = false;
+            // Read along with the events, so that they don't go to a CarActivityManager set
+            // after them, which gets the alive tasks replayed instead.
+            carAm = mCarActivityManagerRef.get();
+        }
+        if (carAm == null) {
+            Log.w(TAG, "CarActivityManager is null, dropping " + events.size() + " task events");
+            reportDropped(events);
+            events.clear();
+            return;
+        }
+        if (DBG) Log.d(TAG, "Forwarding " + events.size() + " task events");
+        for (int i = 0; i < events.size(); i++) {
+            TaskEvent event = events.get(i);
+            switch (event.mType) {
+                case EVENT_TASK_APPEARED:
+                    carAm.onTaskAppeared(event.mTaskInfo);
+                    break;
+                case EVENT_TASK_INFO_CHANGED:
+                    carAm.onTaskInfoChanged(event.mTaskInfo);
+                    break;
+                case EVENT_TASK_VANISHED:
+                    carAm.onTaskVanished(event.mTaskInfo);
+                    break;
+                default:
+                    Log.e(TAG, "Unknown task event type: " + event.mType);
+            }
+        }
+        events.clear();
+    }
+
+    private void reportDropped(List<TaskEvent> events) {
+        if (mMetrics == null) {
+            return;
+        }
+        // Copied, the events are reused by the next drain.
+        int count = events.size();
+        String[] callbacks = new String[count];
+        int[] taskIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            callbacks[i] = getCallbackName(events.get(i).mType);
+            taskIds[i] = events.get(i).mTaskInfo.taskId;
+        }
+        mMetricsExecutor.execute(() -> {
+            for (int i = 0; i < count; i++) {
+                mMetrics.onEventDropped(callbacks[i], taskIds[i]);
+            }
+        });
+    }
+
+    private static String getCallbackName(int type) {
+        switch (type) {
+            case EVENT_TASK_APPEARED:
+                return CAR_ACTIVITY_MANAGER + ON_TASK_APPEARED;
+            case EVENT_TASK_INFO_CHANGED:
+                return CAR_ACTIVITY_MANAGER + ON_TASK_INFO_CHANGED;
+            default:
+                return CAR_ACTIVITY_MANAGER + ON_TASK_VANISHED;
+        }
+    }
+
+    /** Returns how many {@code onTaskInfoChanged} events were collapsed so far. */
+    int getCollapsedCount() {
+        synchronized (mLock) {
+            return mCollapsedCount;
+        }
+    }
+}
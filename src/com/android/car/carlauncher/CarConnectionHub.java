@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher;
+
+import android.annotation.Nullable;
+import android.car.Car;
+import android.car.app.CarActivityManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.concurrent.Executor;
+
+/**
+ * Shares a single connection to CarService between the components of the launcher, e.g.
+ * {@link TaskViewManager}, {@link AppGridActivity} and the home card models.
+ *
+ * <p>The connection is bound off the main thread when the first listener is added and unbound
+ * when the last one is removed. When CarService crashes, every listener is told through
+ * {@link Listener#onCarLost()}, and {@link Listener#onCarReady(Car)} is called again once the
+ * connection is re-established.
+ *
+ * <p>The managers, e.g. {@code CarActivityManager}, {@code CarUserManager},
+ * {@code CarPackageManager}, {@code CarMediaManager}, {@code CarProjectionManager} or
+ * {@code CarUxRestrictionsManager}, are created once by the shared {@link Car} and handed out by
+ * {@link #getCarManager(String)}. Note that the managers which only accept a single listener, like
+ * {@code CarUxRestrictionsManager}, must only be listened to by one component. Likewise, the task
+ * monitor of {@code CarActivityManager} is registered once for the process, and shared through
+ * {@link #acquireTaskMonitor()} and {@link #releaseTaskMonitor(int)}.
+ */
+public final class CarConnectionHub {
+    private static final String TAG = "CarConnectionHub";
+
+    /** Returned by {@link #acquireTaskMonitor()} when not connected. */
+    public static final int NO_CONNECTION = -1;
+
+    /** Callbacks about the connection to CarService. */
+    public interface Listener {
+        /**
+         * Called when connected to CarService, including when the listener is added while
+         * already connected, and again after CarService restarts.
+         */
+        void onCarReady(Car car);
+
+        /**
+         * Called when the connection to CarService is lost, the managers mustn't be used until
+         * {@link #onCarReady(Car)} is called again.
+         */
+        default void onCarLost() {}
+    }
+
+    @GuardedBy("CarConnectionHub.class")
+    private static CarConnectionHub sInstance;
+
+    private final Context mContext;
+    // Runs the bind & unbind.
+    private final Executor mConnectionExecutor;
+    // Receives the connection events before they are dispatched, the main thread if null.
+    @Nullable
+    private final Handler mEventHandler;
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    private final ArrayMap<Listener, Executor> mListeners = new ArrayMap<>();
+    @GuardedBy("mLock")
+    private boolean mConnectionRequested;
+    @GuardedBy("mLock")
+    @Nullable
+    private Car mCar;
+    @GuardedBy("mLock")
+    private boolean mReady;
+    @GuardedBy("mLock")
+    private int mConnections;
+    @GuardedBy("mLock")
+    private int mConnectionLosses;
+    // The holders of the task monitor registered for the current connection.
+    @GuardedBy("mLock")
+    private int mTaskMonitorHolders;
+
+    /** Returns the hub shared by the components of the process. */
+    public static CarConnectionHub getInstance(Context context) {
+        synchronized (CarConnectionHub.class) {
+            if (sInstance == null) {
+                HandlerThread connectionThread = new HandlerThread(TAG);
+                connectionThread.start();
+                Handler connectionHandler = connectionThread.getThreadHandler();
+                sInstance = new CarConnectionHub(context.getApplicationContext(),
+                        connectionHandler::post, connectionHandler);
+            }
+            return sInstance;
+        }
+    }
+
+    @VisibleForTesting
+    CarConnectionHub(Context context, Executor connectionExecutor,
+            @Nullable Handler eventHandler) {
+        mContext = context;
+        mConnectionExecutor = connectionExecutor;
+        mEventHandler = eventHandler;
+    }
+
+    /**
+     * Adds a listener whose callbacks are run on {@code executor}. {@link Listener#onCarReady}
+     * is called right away if already connected.
+     */
+    public void addListener(Executor executor, Listener listener) {
+        boolean connect = false;
+        synchronized (mLock) {
+            mListeners.put(listener, executor);
+            if (!mConnectionRequested) {
+                mConnectionRequested = true;
+                connect = true;
+            } else if (mReady) {
+                Car car = mCar;
+                executor.execute(() -> dispatch(listener, car, /* ready= */ true));
+            }
+        }
+        if (connect) {
+            mConnectionExecutor.execute(this::connect);
+        }
+    }
+
+    /**
+     * Removes a listener, no callback is called for it afterwards. The connection is unbound
+     * when the last listener is removed.
+     */
+    public void removeListener(Listener listener) {
+        Car car;
+        synchronized (mLock) {
+            if (mListeners.remove(listener) == null || !mListeners.isEmpty()) {
+                return;
+            }
+            mConnectionRequested = false;
+            mReady = false;
+            mTaskMonitorHolders = 0;
+            car = mCar;
+            mCar = null;
+        }
+        if (car != null) {
+            mConnectionExecutor.execute(car::disconnect);
+        }
+    }
+
+    /**
+     * Returns the manager of the given service, e.g. {@link Car#CAR_ACTIVITY_SERVICE}, or
+     * {@code null} if not connected.
+     */
+    @Nullable
+    public Object getCarManager(String serviceName) {
+        Car car;
+        synchronized (mLock) {
+            if (!mReady) {
+                return null;
+            }
+            car = mCar;
+        }
+        return car.getCarManager(serviceName);
+    }
+
+    /**
+     * Registers the task monitor of {@code CarActivityManager}, unless it's already registered for
+     * another holder. It's registered per process, so a holder mustn't register or unregister it
+     * by itself, which would override or clear the registration of the other holders.
+     *
+     * @return the connection the task monitor is held for, to be passed to
+     *         {@link #releaseTaskMonitor(int)}, or {@link #NO_CONNECTION} if not connected
+     */
+    public int acquireTaskMonitor() {
+        synchronized (mLock) {
+            if (!mReady) {
+                return NO_CONNECTION;
+            }
+            if (mTaskMonitorHolders++ == 0) {
+                getCarActivityManagerLocked().registerTaskMonitor();
+            }
+            return mConnections;
+        }
+    }
+
+    /**
+     * Releases the task monitor acquired for {@code connection}, it's unregistered once it has no
+     * holder left. It's ignored if the connection was lost meanwhile, since the registration is
+     * lost with it.
+     */
+    public void releaseTaskMonitor(int connection) {
+        synchronized (mLock) {
+            if (!mReady || connection != mConnections || mTaskMonitorHolders == 0) {
+                return;
+            }
+            if (--mTaskMonitorHolders == 0) {
+                getCarActivityManagerLocked().unregisterTaskMonitor();
+            }
+        }
+    }
+
+    @GuardedBy("mLock")
+    private CarActivityManager getCarActivityManagerLocked() {
+        return (CarActivityManager) mCar.getCarManager(Car.CAR_ACTIVITY_SERVICE);
+    }
+
+    private void connect() {
+        // Doesn't wait, the events are received on mEventHandler as the bind completes.
+        Car car = Car.createCar(mContext, mEventHandler, Car.CAR_WAIT_TIMEOUT_DO_NOT_WAIT,
+                this::onLifecycleChanged);
+        synchronized (mLock) {
+            if (mConnectionRequested && (mCar == null || mCar == car)) {
+                mCar = car;
+                return;
+            }
+        }
+        // Either all the listeners were removed meanwhile or another connection is in place.
+        car.disconnect();
+    }
+
+    private void onLifecycleChanged(Car car, boolean ready) {
+        ArrayMap<Listener, Executor> listeners;
+        synchronized (mLock) {
+            if (!mConnectionRequested || (mCar != null && mCar != car)) {
+                return;
+            }
+            mCar = car;
+            if (ready == mReady) {
+                return;
+            }
+            mReady = ready;
+            if (ready) {
+                mConnections++;
+            } else {
+                Log.w(TAG, "CarService looks crashed");
+                mConnectionLosses++;
+                // The task monitor is registered again by its holders once reconnected.
+                mTaskMonitorHolders = 0;
+            }
+            listeners = new ArrayMap<>(mListeners);
+        }
+        for (int i = 0; i < listeners.size(); i++) {
+            Listener listener = listeners.keyAt(i);
+            listeners.valueAt(i).execute(() -> dispatch(listener, car, ready));
+        }
+    }
+
+    private void dispatch(Listener listener, Car car, boolean ready) {
+        synchronized (mLock) {
+            // The listener may be removed or the connection lost since it was posted.
+            if (!mListeners.containsKey(listener) || mReady != ready || mCar != car) {
+                return;
+            }
+        }
+        if (ready) {
+            listener.onCarReady(car);
+        } else {
+            listener.onCarLost();
+        }
+    }
+
+    /** Dumps the state of the connection. */
+    public void dump(String prefix, PrintWriter writer) {
+        synchronized (mLock) {
+            writer.print(prefix);
+            writer.print("CarConnectionHub: listeners=");
+            writer.print(mListeners.size());
+            writer.print(", ready=");
+            writer.print(mReady);
+            writer.print(", connections=");
+            writer.print(mConnections);
+            writer.print(", connectionLosses=");
+            writer.print(mConnectionLosses);
+            writer.print(", taskMonitorHolders=");
+            writer.println(mTaskMonitorHolders);
+        }
+    }
+}
@@ -18,7 +18,6 @@ package com.android.car.carlauncher;
 
 import android.app.ActivityManager;
 import android.car.app.CarActivityManager;
-import android.util.Log;
 import android.view.SurfaceControl;
 
 import com.android.wm.shell.common.SyncTransactionQueue;
@@ -29,48 +28,55 @@ import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The Car version of FullscreenTaskListener, which reports Task lifecycle to CarService.
+ *
+ * <p>The events which arrive while CarActivityManager isn't set are replayed by the
+ * {@link CarActivityManagerForwarder} once it's set with
+ * {@link CarActivityManagerForwarder#setCarActivityManager}.
  */
 public class CarFullscreenTaskMonitorListener extends FullscreenTaskListener {
-    private static final String TAG = CarFullscreenTaskMonitorListener.class.getSimpleName();
-    private final AtomicReference<CarActivityManager> mCarActivityManagerRef;
+    private final CarActivityManagerForwarder mForwarder;
 
     public CarFullscreenTaskMonitorListener(
             AtomicReference<CarActivityManager> carActivityManagerRef,
             SyncTransactionQueue syncQueue) {
+        // Forwards the events synchronously on the calling thread.
+        this(new CarActivityManagerForwarder(carActivityManagerRef, Runnable::run), syncQueue);
+    }
+
+    CarFullscreenTaskMonitorListener(CarActivityManagerForwarder forwarder,
+            SyncTransactionQueue syncQueue) {
         super(syncQueue);
-        mCarActivityManagerRef = carActivityManagerRef;
+        mForwarder = forwarder;
     }
+
     @Override
     public void onTaskAppeared(ActivityManager.RunningTaskInfo taskInfo,
             SurfaceControl leash) {
         super.onTaskAppeared(taskInfo, leash);
-        CarActivityManager carAM = mCarActivityManagerRef.get();
-        if (carAM != null) {
-            carAM.onTaskAppeared(taskInfo);
-        } else {
-            Log.w(TAG, "CarActivityManager is null, skip onTaskAppeared: taskInfo=" + taskInfo);
-        }
+        mForwarder.onTaskAppeared(taskInfo);
     }
 
     @Override
     public void onTaskInfoChanged(ActivityManager.RunningTaskInfo taskInfo) {
         super.onTaskInfoChanged(taskInfo);
-        CarActivityManager carAM = mCarActivityManagerRef.get();
-        if (carAM != null) {
-            carAM.onTaskInfoChanged(taskInfo);
-        } else {
-            Log.w(TAG, "CarActivityManager is null, skip onTaskInfoChanged: taskInfo=" + taskInfo);
-        }
+        mForwarder.onTaskInfoChanged(taskInfo);
     }
 
     @Override
     public void onTaskVanished(ActivityManager.RunningTaskInfo taskInfo) {
         super.onTaskVanished(taskInfo);
-        CarActivityManager carAM = mCarActivityManagerRef.get();
-        if (carAM != null) {
-            carAM.onTaskVanished(taskInfo);
-        } else {
-            Log.w(TAG, "CarActivityManager is null, skip onTaskVanished: taskInfo=" + taskInfo);
-        }
+        mForwarder.onTaskVanished(taskInfo);
+    }
+
+    /** Takes over a task from another listener, CarService knows about it already. */
+    void adoptTask(ActivityManager.RunningTaskInfo taskInfo, SurfaceControl leash) {
+        super.onTaskAppeared(taskInfo, leash);
+        mForwarder.trackTask(taskInfo);
+    }
+
+    /** Hands a task over to another listener, without reporting it as vanished. */
+    void releaseTask(ActivityManager.RunningTaskInfo taskInfo) {
+        super.onTaskVanished(taskInfo);
+        mForwarder.untrackTask(taskInfo);
     }
 }
@@ -24,17 +24,24 @@ import android.app.TaskStackListener;
 import android.car.user.CarUserManager;
 import android.content.Intent;
 import android.content.res.Configuration;
+import android.graphics.Rect;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.ViewGroup;
 import android.view.WindowManager;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.collection.ArraySet;
+import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentActivity;
+import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentTransaction;
 import androidx.lifecycle.ViewModelProvider;
 
 import com.android.car.carlauncher.homescreen.HomeCardModule;
+import com.android.car.carlauncher.homescreen.HomeCardModuleRegistry;
 import com.android.car.carlauncher.taskstack.TaskStackChangeListeners;
 import com.android.car.internal.common.UserHelperLite;
 import com.android.wm.shell.TaskView;
@@ -42,7 +49,10 @@ import com.android.wm.shell.common.HandlerExecutor;
 
 import com.google.common.annotations.VisibleForTesting;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Basic Launcher for Android Automotive which demonstrates the use of {@link TaskView} to host
@@ -67,10 +77,20 @@ public class CarLauncher extends FragmentActivity {
     private CarTaskView mTaskView;
     private int mCarLauncherTaskId = INVALID_TASK_ID;
     private Set<HomeCardModule> mHomeCardModules;
+    // Set while the home card modules are being constructed off the main thread.
+    private CompletableFuture<Void> mHomeCardModulesFuture;
+    private boolean mCardsCommitPending;
+    private MapLaunchBoundsStore mMapLaunchBoundsStore;
+    // Set while the saved bounds of the maps card are being loaded off the main thread.
+    private CompletableFuture<Void> mMapLaunchBoundsFuture;
 
     /** Set to {@code true} once we've logged that the Activity is fully drawn. */
     private boolean mIsReadyLogged;
     private boolean mUseSmallCanvasOptimizedMap;
+    private boolean mStartupOrchestration;
+    private long mCreateTimeMs;
+    /** Time from {@link #onCreate} to the first frame of the embedded map, -1 until known. */
+    private long mMapFirstFrameLatencyMs = -1;
 
     private final TaskStackListener mTaskStackListener = new TaskStackListener() {
         @Override
@@ -107,6 +127,7 @@ public class CarLauncher extends FragmentActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mCreateTimeMs = SystemClock.uptimeMillis();
 
         if (CarLauncherUtils.isCustomDisplayPolicyDefined(this)) {
             Intent controlBarIntent = new Intent(this, ControlBarActivity.class);
@@ -120,6 +141,14 @@ public class CarLauncher extends FragmentActivity {
 
         mUseSmallCanvasOptimizedMap =
                 CarLauncherUtils.isSmallCanvasOptimizedMapIntentConfigured(this);
+        mStartupOrchestration = getResources().getBoolean(
+                R.bool.config_enableStartupOrchestration);
+        // Read while the layout is inflated, the map is launched on them once they are loaded.
+        CompletableFuture<Rect> mapLaunchBounds = null;
+        if (mStartupOrchestration) {
+            mMapLaunchBoundsStore = new MapLaunchBoundsStore(this);
+            mapLaunchBounds = mMapLaunchBoundsStore.load(getResources().getConfiguration());
+        }
 
         mActivityManager = getSystemService(ActivityManager.class);
         mCarLauncherTaskId = getTaskId();
@@ -141,15 +170,16 @@ public class CarLauncher extends FragmentActivity {
             if (!UserHelperLite.isHeadlessSystemUser(getUserId())) {
                 ViewGroup mapsCard = findViewById(R.id.maps_card);
                 if (mapsCard != null) {
-                    setUpTaskView(mapsCard);
+                    setUpTaskView(mapsCard, mapLaunchBounds);
                 }
             }
         }
-        initializeCards();
-
+        // The card modules are constructed off the main thread while the map is being launched.
+        loadHomeCardModules();
     }
 
-    private void setUpTaskView(ViewGroup parent) {
+    private void setUpTaskView(ViewGroup parent,
+            @Nullable CompletableFuture<Rect> mapLaunchBounds) {
         Set<String> taskViewPackages = new ArraySet<>(getResources().getStringArray(
                 R.array.config_taskViewPackages));
         mTaskViewManager = new TaskViewManager(this,
@@ -172,13 +202,24 @@ public class CarLauncher extends FragmentActivity {
                     public void onTaskViewCreated(CarTaskView taskView) {
                         parent.addView(taskView);
                         mTaskView = taskView;
+                        if (mapLaunchBounds != null) {
+                            startMapEarly((ControlledCarTaskView) taskView, mapLaunchBounds);
+                        }
                     }
 
                     @Override
                     public void onTaskViewReady() {
+                        if (mStartupOrchestration) {
+                            saveMapLaunchBounds();
+                        }
                         maybeLogReady();
                     }
 
+                    @Override
+                    public void onTaskAppeared(ActivityManager.RunningTaskInfo taskInfo) {
+                        maybeLogMapFirstFrame();
+                    }
+
                     @Override
                     public Set<String> getDependingPackageNames() {
                         return taskViewPackages;
@@ -186,9 +227,27 @@ public class CarLauncher extends FragmentActivity {
                 });
     }
 
+    /**
+     * Launches the map on the bounds of the previous session once they are loaded, unless the
+     * surface of {@code taskView} got ready meanwhile.
+     */
+    private void startMapEarly(ControlledCarTaskView taskView,
+            CompletableFuture<Rect> mapLaunchBounds) {
+        mMapLaunchBoundsFuture = mapLaunchBounds.thenAcceptAsync(bounds -> {
+            mMapLaunchBoundsFuture = null;
+            if (bounds != null && !isDestroyed()) {
+                taskView.startActivityEarly(bounds);
+            }
+        }, getMainExecutor());
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
+        if (mCardsCommitPending) {
+            mCardsCommitPending = false;
+            initializeCards();
+        }
         maybeLogReady();
     }
 
@@ -199,6 +258,14 @@ public class CarLauncher extends FragmentActivity {
             return;
         }
         TaskStackChangeListeners.getInstance().unregisterTaskStackListener(mTaskStackListener);
+        if (mHomeCardModulesFuture != null) {
+            mHomeCardModulesFuture.cancel(/* mayInterruptIfRunning= */ false);
+            mHomeCardModulesFuture = null;
+        }
+        if (mMapLaunchBoundsFuture != null) {
+            mMapLaunchBoundsFuture.cancel(/* mayInterruptIfRunning= */ false);
+            mMapLaunchBoundsFuture = null;
+        }
         release();
     }
 
@@ -215,33 +282,80 @@ public class CarLauncher extends FragmentActivity {
         initializeCards();
     }
 
+    private void loadHomeCardModules() {
+        mHomeCardModulesFuture = HomeCardModuleRegistry
+                .createModules(getResources().getStringArray(R.array.config_homeCardModuleClasses))
+                .thenAcceptAsync(this::onHomeCardModulesCreated, getMainExecutor());
+    }
+
+    private void onHomeCardModulesCreated(Set<HomeCardModule> cardModules) {
+        mHomeCardModulesFuture = null;
+        if (isDestroyed()) {
+            return;
+        }
+        mHomeCardModules = new ArraySet<>(cardModules.size());
+        for (HomeCardModule cardModule : cardModules) {
+            if (findViewById(cardModule.getCardResId()) == null) {
+                Log.w(TAG, "No container for " + cardModule.getClass().getName());
+                continue;
+            }
+            cardModule.setViewModelProvider(new ViewModelProvider( /* owner= */this));
+            mHomeCardModules.add(cardModule);
+        }
+        if (getSupportFragmentManager().isStateSaved()) {
+            // Fragments can't be committed now, they are added once the activity resumes.
+            mCardsCommitPending = true;
+            return;
+        }
+        initializeCards();
+    }
+
     private void initializeCards() {
         if (mHomeCardModules == null) {
-            mHomeCardModules = new ArraySet<>();
-            for (String providerClassName : getResources().getStringArray(
-                    R.array.config_homeCardModuleClasses)) {
-                try {
-                    long reflectionStartTime = System.currentTimeMillis();
-                    HomeCardModule cardModule = (HomeCardModule) Class.forName(
-                            providerClassName).newInstance();
-                    cardModule.setViewModelProvider(new ViewModelProvider( /* owner= */this));
-                    mHomeCardModules.add(cardModule);
-                    if (DEBUG) {
-                        long reflectionTime = System.currentTimeMillis() - reflectionStartTime;
-                        Log.d(TAG, "Initialization of HomeCardModule class " + providerClassName
-                                + " took " + reflectionTime + " ms");
-                    }
-                } catch (IllegalAccessException | InstantiationException |
-                        ClassNotFoundException e) {
-                    Log.w(TAG, "Unable to create HomeCardProvider class " + providerClassName, e);
-                }
-            }
+            // The cards are added once the modules are constructed.
+            return;
         }
-        FragmentTransaction transaction = getSupportFragmentManager().beginTransaction();
+        // Only the cards which aren't shown yet are added. The cards already shown keep their
+        // presenter and models, and re-inflate their own views when a configuration change
+        // affects them.
+        FragmentManager fragmentManager = getSupportFragmentManager();
+        FragmentTransaction transaction = null;
         for (HomeCardModule cardModule : mHomeCardModules) {
-            transaction.replace(cardModule.getCardResId(), cardModule.getCardView());
+            Fragment cardView = cardModule.getCardView();
+            if (fragmentManager.findFragmentById(cardModule.getCardResId()) == cardView) {
+                continue;
+            }
+            if (transaction == null) {
+                transaction = fragmentManager.beginTransaction();
+            }
+            transaction.replace(cardModule.getCardResId(), cardView);
+        }
+        if (transaction != null) {
+            transaction.commitNow();
         }
-        transaction.commitNow();
+    }
+
+    private void saveMapLaunchBounds() {
+        if (mTaskView == null) {
+            return;
+        }
+        Rect bounds = new Rect();
+        mTaskView.getBoundsOnScreen(bounds);
+        mMapLaunchBoundsStore.save(getResources().getConfiguration(), bounds);
+    }
+
+    @Override
+    public void dump(@NonNull String prefix, @Nullable FileDescriptor fd,
+            @NonNull PrintWriter writer, @Nullable String[] args) {
+        super.dump(prefix, fd, writer, args);
+        if (mTaskViewManager != null) {
+            mTaskViewManager.dump(prefix, writer);
+        }
+        writer.print(prefix);
+        writer.print("startupOrchestration=");
+        writer.print(mStartupOrchestration);
+        writer.print(", mapFirstFrameLatencyMs=");
+        writer.println(mMapFirstFrameLatencyMs);
     }
 
     /** Logs that the Activity is ready. Used for startup time diagnostics. */
@@ -267,6 +381,18 @@ public class CarLauncher extends FragmentActivity {
         }
     }
 
+    /** Logs the time it took the map to draw its first frame. Used for startup diagnostics. */
+    private void maybeLogMapFirstFrame() {
+        if (mMapFirstFrameLatencyMs >= 0) {
+            // Only the first appearance after the launcher creation is of interest.
+            return;
+        }
+        mMapFirstFrameLatencyMs = SystemClock.uptimeMillis() - mCreateTimeMs;
+        Log.i(TAG, "Map for user " + getUserId() + " drew its first frame "
+                + mMapFirstFrameLatencyMs + " ms after launcher creation, startupOrchestration="
+                + mStartupOrchestration);
+    }
+
     /** Brings the Car Launcher to the foreground. */
     private void bringToForeground() {
         if (mCarLauncherTaskId != INVALID_TASK_ID) {
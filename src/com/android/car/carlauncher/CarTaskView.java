@@ -46,9 +46,12 @@ public class CarTaskView extends TaskView {
     private static final String TAG = CarTaskView.class.getSimpleName();
     @Nullable
     private WindowContainerToken mTaskToken;
+    @Nullable
+    private SurfaceControl mEmbeddedTaskLeash;
     private final SyncTransactionQueue mSyncQueue;
     private final SparseArray<Rect> mInsets = new SparseArray<>();
     private boolean mTaskViewReadySent;
+    private boolean mEmbeddedTaskParked;
 
     public CarTaskView(Context context, ShellTaskOrganizer organizer,
             SyncTransactionQueue syncQueue) {
@@ -59,11 +62,24 @@ public class CarTaskView extends TaskView {
     @Override
     public void onTaskAppeared(ActivityManager.RunningTaskInfo taskInfo, SurfaceControl leash) {
         mTaskToken = taskInfo.token;
+        mEmbeddedTaskLeash = leash;
         super.onTaskAppeared(taskInfo, leash);
 
         applyInsets();
     }
 
+    @Override
+    public void onTaskVanished(ActivityManager.RunningTaskInfo taskInfo) {
+        mEmbeddedTaskLeash = null;
+        super.onTaskVanished(taskInfo);
+    }
+
+    /** Returns the leash of the embedded task, or {@code null} if there is no task. */
+    @Nullable
+    SurfaceControl getEmbeddedTaskLeash() {
+        return mEmbeddedTaskLeash;
+    }
+
     @Override
     protected void notifyInitialized() {
         super.notifyInitialized();
@@ -84,6 +100,7 @@ public class CarTaskView extends TaskView {
      * Moves the embedded task over the embedding task to make it shown.
      */
     public void showEmbeddedTask(WindowContainerTransaction wct) {
+        mEmbeddedTaskParked = false;
         if (mTaskToken == null) {
             return;
         }
@@ -93,6 +110,23 @@ public class CarTaskView extends TaskView {
         wct.reorder(mTaskToken, /* onTop= */ true);
     }
 
+    /**
+     * Hides the embedded task while the {@link CarTaskView} isn't visible, which stops it and lets
+     * it trim its UI memory. It stays parked until {@link #showEmbeddedTask} is called.
+     */
+    void parkEmbeddedTask(WindowContainerTransaction wct) {
+        mEmbeddedTaskParked = true;
+        if (mTaskToken == null) {
+            return;
+        }
+        wct.setHidden(mTaskToken, /* hidden= */ true);
+    }
+
+    /** Returns whether the embedded task is parked, see {@link #parkEmbeddedTask}. */
+    boolean isEmbeddedTaskParked() {
+        return mEmbeddedTaskParked;
+    }
+
     // TODO(b/238473897): Consider taking insets one by one instead of taking all insets.
     /**
      * Set & apply the given {@code insets} on the Task.
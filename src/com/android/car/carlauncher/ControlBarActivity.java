@@ -24,22 +24,28 @@ import android.util.Log;
 import android.view.WindowManager;
 
 import androidx.collection.ArraySet;
+import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentActivity;
+import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentTransaction;
 import androidx.lifecycle.ViewModelProvider;
 
 import com.android.car.carlauncher.homescreen.HomeCardModule;
+import com.android.car.carlauncher.homescreen.HomeCardModuleRegistry;
 
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Launcher activity that shows only the control bar fragment.
  */
 public class ControlBarActivity extends FragmentActivity {
     private static final String TAG = "CarLauncher";
-    private static final boolean DEBUG = false;
 
     private Set<HomeCardModule> mHomeCardModules;
+    // Set while the home card modules are being constructed off the main thread.
+    private CompletableFuture<Void> mHomeCardModulesFuture;
+    private boolean mCardsCommitPending;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -51,7 +57,27 @@ public class ControlBarActivity extends FragmentActivity {
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL);
 
         setContentView(R.layout.control_bar_container);
-        initializeCards();
+        mHomeCardModulesFuture = HomeCardModuleRegistry
+                .createModules(getResources().getStringArray(R.array.config_homeCardModuleClasses))
+                .thenAcceptAsync(this::onHomeCardModulesCreated, getMainExecutor());
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (mCardsCommitPending) {
+            mCardsCommitPending = false;
+            initializeCards();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mHomeCardModulesFuture != null) {
+            mHomeCardModulesFuture.cancel(/* mayInterruptIfRunning= */ false);
+            mHomeCardModulesFuture = null;
+        }
     }
 
     @Override
@@ -60,32 +86,50 @@ public class ControlBarActivity extends FragmentActivity {
         initializeCards();
     }
 
+    private void onHomeCardModulesCreated(Set<HomeCardModule> cardModules) {
+        mHomeCardModulesFuture = null;
+        if (isDestroyed()) {
+            return;
+        }
+        mHomeCardModules = new ArraySet<>(cardModules.size());
+        for (HomeCardModule cardModule : cardModules) {
+            if (findViewById(cardModule.getCardResId()) == null) {
+                Log.w(TAG, "No container for " + cardModule.getClass().getName());
+                continue;
+            }
+            cardModule.setViewModelProvider(new ViewModelProvider(/* owner= */this));
+            mHomeCardModules.add(cardModule);
+        }
+        if (getSupportFragmentManager().isStateSaved()) {
+            // Fragments can't be committed now, they are added once the activity resumes.
+            mCardsCommitPending = true;
+            return;
+        }
+        initializeCards();
+    }
+
     private void initializeCards() {
         if (mHomeCardModules == null) {
-            mHomeCardModules = new ArraySet<>();
-            for (String providerClassName : getResources().getStringArray(
-                    R.array.config_homeCardModuleClasses)) {
-                try {
-                    long reflectionStartTime = System.currentTimeMillis();
-                    HomeCardModule cardModule = (HomeCardModule) Class.forName(
-                            providerClassName).newInstance();
-                    cardModule.setViewModelProvider(new ViewModelProvider(/* owner= */this));
-                    mHomeCardModules.add(cardModule);
-                    if (DEBUG) {
-                        long reflectionTime = System.currentTimeMillis() - reflectionStartTime;
-                        Log.d(TAG, "Initialization of HomeCardModule class " + providerClassName
-                                + " took " + reflectionTime + " ms");
-                    }
-                } catch (IllegalAccessException | InstantiationException
-                        | ClassNotFoundException e) {
-                    Log.w(TAG, "Unable to create HomeCardProvider class " + providerClassName, e);
-                }
-            }
+            // The cards are added once the modules are constructed.
+            return;
         }
-        FragmentTransaction transaction = getSupportFragmentManager().beginTransaction();
+        // Only the cards which aren't shown yet are added. The cards already shown keep their
+        // presenter and models, and re-inflate their own views when a configuration change
+        // affects them.
+        FragmentManager fragmentManager = getSupportFragmentManager();
+        FragmentTransaction transaction = null;
         for (HomeCardModule cardModule : mHomeCardModules) {
-            transaction.replace(cardModule.getCardResId(), cardModule.getCardView());
+            Fragment cardView = cardModule.getCardView();
+            if (fragmentManager.findFragmentById(cardModule.getCardResId()) == cardView) {
+                continue;
+            }
+            if (transaction == null) {
+                transaction = fragmentManager.beginTransaction();
+            }
+            transaction.replace(cardModule.getCardResId(), cardView);
+        }
+        if (transaction != null) {
+            transaction.commitNow();
         }
-        transaction.commitNow();
     }
 }
@@ -16,6 +16,8 @@
 
 package com.android.car.carlauncher;
 
+import static android.app.ActivityTaskManager.INVALID_TASK_ID;
+
 import static com.android.car.carlauncher.TaskViewManager.DBG;
 
 import android.app.Activity;
@@ -26,6 +28,7 @@ import android.graphics.Rect;
 import android.os.UserManager;
 import android.util.Log;
 import android.view.Display;
+import android.view.SurfaceControl;
 import android.window.WindowContainerTransaction;
 
 import com.android.wm.shell.ShellTaskOrganizer;
@@ -51,6 +54,11 @@ final class ControlledCarTaskView extends CarTaskView {
     private final UserManager mUserManager;
     private final TaskViewManager mTaskViewManager;
     private final ControlledCarTaskViewConfig mConfig;
+    private final TaskSnapshotCache mSnapshotCache;
+    private final String mSnapshotKey;
+    // Whether the activity was started with the initial launch bounds before the surface got
+    // created, in which case it mustn't be started again once the surface is ready.
+    private boolean mStartedEarly;
 
     ControlledCarTaskView(
             Activity context,
@@ -67,43 +75,80 @@ final class ControlledCarTaskView extends CarTaskView {
         mCallbacks = callbacks;
         mUserManager = userManager;
         mTaskViewManager = taskViewManager;
+        mSnapshotCache = taskViewManager.getSnapshotCache();
+        mSnapshotKey = context.getDisplayId() + "_"
+                + Integer.toHexString(mConfig.mActivityIntent.filterHashCode());
 
         mCallbackExecutor.execute(() -> mCallbacks.onTaskViewCreated(this));
+        if (mConfig.mInitialLaunchBounds != null) {
+            startActivityEarly(mConfig.mInitialLaunchBounds);
+        }
+    }
+
+    /**
+     * Starts the activity on {@code launchBounds} without waiting for the surface to be created,
+     * e.g. on the bounds of the previous session once they are loaded. It's ignored once the
+     * surface is ready or if the task is already there. TaskView resizes the task to the actual
+     * bounds when the surface is ready.
+     */
+    void startActivityEarly(Rect launchBounds) {
+        if (isInitialized() || mStartedEarly || getTaskId() != INVALID_TASK_ID
+                || mTaskViewManager.hasRetainedTask(this)) {
+            return;
+        }
+        // The task view may not be attached yet, so the display of the host is used instead.
+        mStartedEarly = startActivity(mContext.getDisplay(), launchBounds);
     }
 
     @Override
     protected void onCarTaskViewInitialized() {
         super.onCarTaskViewInitialized();
-        startActivity();
+        if (mStartedEarly) {
+            // TaskView resizes the task to the actual bounds when the surface is ready.
+            if (DBG) Log.d(TAG, "Activity already started with the initial launch bounds");
+            mStartedEarly = false;
+        } else {
+            startActivity();
+        }
         mCallbackExecutor.execute(() -> mCallbacks.onTaskViewReady());
     }
 
     /**
-     * Starts the underlying activity.
+     * Starts the underlying activity, unless the task of the previous host is retained, in which
+     * case it's adopted instead.
      */
     public void startActivity() {
+        if (mTaskViewManager.adoptRetainedTask(this)) {
+            if (DBG) Log.d(TAG, "Adopted the retained task of " + mConfig.mActivityIntent);
+            return;
+        }
+        Rect launchBounds = new Rect();
+        getBoundsOnScreen(launchBounds);
+        startActivity(getDisplay(), launchBounds);
+    }
+
+    /** Starts the underlying activity on the given bounds, returns whether it was started. */
+    private boolean startActivity(Display display, Rect launchBounds) {
         if (!mUserManager.isUserUnlocked()) {
             if (DBG) Log.d(TAG, "Can't start activity due to user is isn't unlocked");
-            return;
+            return false;
         }
 
         // Don't start activity when the display is off. This can happen when the taskview is not
         // attached to a window.
-        if (getDisplay() == null) {
+        if (display == null) {
             Log.w(TAG, "Can't start activity because display is not available in "
                     + "taskview yet.");
-            return;
+            return false;
         }
         // Don't start activity when the display is off for ActivityVisibilityTests.
-        if (getDisplay().getState() != Display.STATE_ON) {
+        if (display.getState() != Display.STATE_ON) {
             Log.w(TAG, "Can't start activity due to the display is off");
-            return;
+            return false;
         }
 
         ActivityOptions options = ActivityOptions.makeCustomAnimation(mContext,
                 /* enterResId= */ 0, /* exitResId= */ 0);
-        Rect launchBounds = new Rect();
-        getBoundsOnScreen(launchBounds);
         if (DBG) {
             Log.d(TAG, "Starting (" + mConfig.mActivityIntent.getComponent() + ") on "
                     + launchBounds);
@@ -113,6 +158,26 @@ final class ControlledCarTaskView extends CarTaskView {
                         mConfig.mActivityIntent,
                         PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT),
                 /* fillInIntent= */ null, options, launchBounds);
+        // Shows the last frame of the task until the restarted task draws its first frame.
+        mSnapshotCache.showPlaceholder(mSnapshotKey, this);
+        return true;
+    }
+
+    /**
+     * Captures the current frame of the embedded task for {@link TaskSnapshotCache}. It should be
+     * called before the task gets hidden.
+     */
+    void captureSnapshot() {
+        SurfaceControl leash = getEmbeddedTaskLeash();
+        if (leash == null) {
+            return;
+        }
+        mSnapshotCache.capture(mSnapshotKey, leash, getWidth(), getHeight());
+    }
+
+    /** Drops the captured frame of the embedded task, e.g. once its package was replaced. */
+    void invalidateSnapshot() {
+        mSnapshotCache.invalidate(mSnapshotKey);
     }
 
     /** Gets the config used to build this controlled car task view. */
@@ -127,25 +192,44 @@ final class ControlledCarTaskView extends CarTaskView {
         return mCallbacks.getDependingPackageNames();
     }
 
+    @Override
+    public void onTaskAppeared(ActivityManager.RunningTaskInfo taskInfo, SurfaceControl leash) {
+        super.onTaskAppeared(taskInfo, leash);
+        mSnapshotCache.hidePlaceholder(this);
+        mTaskViewManager.onControlledTaskAppeared(this);
+        mCallbackExecutor.execute(() -> mCallbacks.onTaskAppeared(taskInfo));
+    }
+
     @Override
     public void onTaskVanished(ActivityManager.RunningTaskInfo taskInfo) {
         super.onTaskVanished(taskInfo);
+        // A task started early which vanished before the surface is ready needs to be started
+        // again.
+        mStartedEarly = false;
+        mTaskViewManager.onControlledTaskVanished(this);
         if (mConfig.mAutoRestartOnCrash && mTaskViewManager.isHostVisible()) {
             // onTaskVanished can be called when the host is in the background. In this case
             // embedded activity should not be started.
             Log.i(TAG, "Restarting task " + taskInfo.baseActivity
                     + " in ControlledCarTaskView");
-            startActivity();
+            mTaskViewManager.requestRestart(this, "crash");
         }
     }
 
+    @Override
+    public void release() {
+        mSnapshotCache.hidePlaceholder(this);
+        mTaskViewManager.onControlledTaskViewReleased(this);
+        super.release();
+    }
+
     @Override
     public void showEmbeddedTask(WindowContainerTransaction wct) {
         if (mTaskInfo == null) {
             if (DBG) {
                 Log.d(TAG, "Embedded task not available, starting it now.");
             }
-            startActivity();
+            mTaskViewManager.requestRestart(this, "host restarted");
             return;
         }
         super.showEmbeddedTask(wct);
@@ -16,6 +16,8 @@
 
 package com.android.car.carlauncher;
 
+import android.app.ActivityManager;
+
 import java.util.Collections;
 import java.util.Set;
 
@@ -31,4 +33,10 @@ public interface ControlledCarTaskViewCallbacks extends
     default Set<String> getDependingPackageNames() {
         return Collections.emptySet();
     }
+
+    /**
+     * Called when the task of the {@link ControlledCarTaskView} appears. The task appears once
+     * its first frame is drawn.
+     */
+    default void onTaskAppeared(ActivityManager.RunningTaskInfo taskInfo) {}
 }
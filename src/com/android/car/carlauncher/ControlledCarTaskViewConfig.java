@@ -16,7 +16,9 @@
 
 package com.android.car.carlauncher;
 
+import android.annotation.Nullable;
 import android.content.Intent;
+import android.graphics.Rect;
 
 /** This class provides the required configuration to create a {@link ControlledCarTaskView}. */
 public final class ControlledCarTaskViewConfig {
@@ -26,16 +28,20 @@ public final class ControlledCarTaskViewConfig {
     final boolean mAutoRestartOnCrash;
     final boolean mCaptureGestures;
     final boolean mCaptureLongPress;
+    @Nullable
+    final Rect mInitialLaunchBounds;
 
     private ControlledCarTaskViewConfig(
             Intent activityIntent,
             boolean autoRestartOnCrash,
             boolean captureGestures,
-            boolean captureLongPress) {
+            boolean captureLongPress,
+            @Nullable Rect initialLaunchBounds) {
         mActivityIntent = activityIntent;
         mAutoRestartOnCrash = autoRestartOnCrash;
         mCaptureGestures = captureGestures;
         mCaptureLongPress = captureLongPress;
+        mInitialLaunchBounds = initialLaunchBounds;
     }
 
     /**
@@ -52,6 +58,7 @@ public final class ControlledCarTaskViewConfig {
         private boolean mAutoRestartOnCrash;
         private boolean mCaptureGestures;
         private boolean mCaptureLongPress;
+        private Rect mInitialLaunchBounds;
 
         private Builder() {}
 
@@ -98,13 +105,26 @@ public final class ControlledCarTaskViewConfig {
             return this;
         }
 
+        /**
+         * Sets the bounds to launch the activity with as soon as the {@link ControlledCarTaskView}
+         * is created, e.g. the bounds it had in the previous session. When set, the activity is
+         * started without waiting for the surface of the {@link ControlledCarTaskView} to be
+         * created, and the task is resized to the actual bounds once the surface is ready.
+         */
+        public Builder setInitialLaunchBounds(@Nullable Rect initialLaunchBounds) {
+            mInitialLaunchBounds =
+                    initialLaunchBounds == null ? null : new Rect(initialLaunchBounds);
+            return this;
+        }
+
         /** Creates the {@link ControlledCarTaskViewConfig} object. */
         public ControlledCarTaskViewConfig build() {
             if (mActivityIntent == null) {
                 throw new IllegalArgumentException("mActivityIntent can't be null");
             }
             return new ControlledCarTaskViewConfig(
-                    mActivityIntent, mAutoRestartOnCrash, mCaptureGestures, mCaptureLongPress);
+                    mActivityIntent, mAutoRestartOnCrash, mCaptureGestures, mCaptureLongPress,
+                    mInitialLaunchBounds);
         }
     }
 }
@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher;
+
+import static android.app.ActivityTaskManager.INVALID_TASK_ID;
+
+import static com.android.car.carlauncher.TaskViewManager.DBG;
+
+import android.os.SystemClock;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.wm.shell.common.ShellExecutor;
+import com.android.wm.shell.common.annotations.ShellMainThread;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+/**
+ * Schedules the (re)starts of the activities embedded in {@link ControlledCarTaskView}s.
+ *
+ * <ul>
+ *   <li>Restart requests for a task view which are made before its pending restart runs are
+ *       merged into a single launch.
+ *   <li>The first restart after a crash is immediate, the following consecutive ones are delayed
+ *       with an exponential backoff and some jitter. A task which stays up for
+ *       {@link #STABLE_RUN_MS} resets the backoff.
+ *   <li>When a task crashes {@link #CRASH_LOOP_THRESHOLD} times within
+ *       {@link #CRASH_LOOP_WINDOW_MS}, the circuit breaker opens for
+ *       {@link #CIRCUIT_BREAKER_COOLDOWN_MS}. The restart requests made meanwhile are deferred
+ *       until it closes.
+ * </ul>
+ *
+ * <p>Only the task views {@link #add added} to the scheduler are tracked. A vanishing counts as
+ * a crash unless the task view was removed first, e.g. because it's released, or a package it
+ * depends upon is replaced within {@link #PACKAGE_UPDATE_WINDOW_MS}.
+ */
+final class ControlledTaskRestartScheduler {
+    private static final String TAG = ControlledTaskRestartScheduler.class.getSimpleName();
+
+    @VisibleForTesting
+    static final long BASE_BACKOFF_MS = 1_000;
+    @VisibleForTesting
+    static final long MAX_BACKOFF_MS = 60_000;
+    @VisibleForTesting
+    static final float JITTER_RATIO = 0.2f;
+    @VisibleForTesting
+    static final long STABLE_RUN_MS = 30_000;
+    @VisibleForTesting
+    static final int CRASH_LOOP_THRESHOLD = 5;
+    @VisibleForTesting
+    static final long CRASH_LOOP_WINDOW_MS = 60_000;
+    @VisibleForTesting
+    static final long CIRCUIT_BREAKER_COOLDOWN_MS = 5 * 60_000;
+    @VisibleForTesting
+    static final long PACKAGE_UPDATE_WINDOW_MS = 10_000;
+
+    @ShellMainThread
+    private final ShellExecutor mShellExecutor;
+    private final LongSupplier mClock;
+    private final Random mRandom;
+    @ShellMainThread
+    private final ArrayMap<ControlledCarTaskView, RestartState> mStates = new ArrayMap<>();
+
+    ControlledTaskRestartScheduler(ShellExecutor shellExecutor) {
+        this(shellExecutor, SystemClock::uptimeMillis, new Random());
+    }
+
+    @VisibleForTesting
+    ControlledTaskRestartScheduler(ShellExecutor shellExecutor, LongSupplier clock,
+            Random random) {
+        mShellExecutor = shellExecutor;
+        mClock = clock;
+        mRandom = random;
+    }
+
+    /** Starts tracking {@code taskView}, its restarts are scheduled until it's removed. */
+    @ShellMainThread
+    void add(ControlledCarTaskView taskView) {
+        if (!mStates.containsKey(taskView)) {
+            mStates.put(taskView, new RestartState(
+                    String.valueOf(taskView.getConfig().mActivityIntent.getComponent())));
+        }
+    }
+
+    /** Requests the activity of {@code taskView} to be (re)started. */
+    @ShellMainThread
+    void requestRestart(ControlledCarTaskView taskView, String reason) {
+        RestartState state = mStates.get(taskView);
+        if (state == null) {
+            if (DBG) Log.d(TAG, "Ignoring restart request of a removed task view: " + reason);
+            return;
+        }
+        state.mRequests++;
+        long now = mClock.getAsLong();
+        if (state.mBreakerOpenUntil > now) {
+            state.mDeferredByBreaker++;
+            Log.w(TAG, "Crash loop detected, deferring the restart of " + state.mName + " by "
+                    + (state.mBreakerOpenUntil - now) + "ms, reason=" + reason);
+            deferUntilBreakerCloses(taskView, state, reason);
+            return;
+        }
+        if (state.mPendingRestart != null) {
+            state.mMerged++;
+            if (DBG) Log.d(TAG, "Merged restart request for " + state.mName + ": " + reason);
+            return;
+        }
+
+        long delayMs = computeDelay(state.mConsecutiveCrashes);
+        state.mLastDelayMs = delayMs;
+        state.mPendingRestart = () -> {
+            state.mPendingRestart = null;
+            if (taskView.getTaskId() != INVALID_TASK_ID) {
+                if (DBG) Log.d(TAG, state.mName + " is already running, skip restart");
+                return;
+            }
+            if (taskView.isEmbeddedTaskParked()) {
+                // It's restarted when it gets unparked.
+                if (DBG) Log.d(TAG, state.mName + " is parked, skip restart");
+                return;
+            }
+            state.mLaunches++;
+            state.mLastLaunchTime = mClock.getAsLong();
+            taskView.startActivity();
+        };
+        if (DBG) {
+            Log.d(TAG, "Restarting " + state.mName + " in " + delayMs + "ms, reason=" + reason);
+        }
+        if (delayMs == 0) {
+            // Still posted so that the triggers of the same message loop iteration are merged.
+            mShellExecutor.execute(state.mPendingRestart);
+        } else {
+            mShellExecutor.executeDelayed(state.mPendingRestart, delayMs);
+        }
+    }
+
+    /** Called when the task of {@code taskView} appeared. */
+    @ShellMainThread
+    void onTaskAppeared(ControlledCarTaskView taskView) {
+        RestartState state = mStates.get(taskView);
+        if (state != null) {
+            state.mLastAppearedTime = mClock.getAsLong();
+        }
+    }
+
+    /** Called when the task of {@code taskView} vanished, e.g. because it crashed. */
+    @ShellMainThread
+    void onTaskVanished(ControlledCarTaskView taskView) {
+        RestartState state = mStates.get(taskView);
+        if (state == null) {
+            // Removed on purpose, e.g. the task view was released.
+            return;
+        }
+        long now = mClock.getAsLong();
+        state.mCrashes++;
+        state.mLastCrashTime = now;
+        if (state.mLastAppearedTime > 0 && now - state.mLastAppearedTime >= STABLE_RUN_MS) {
+            state.mConsecutiveCrashes = 0;
+        }
+        state.mConsecutiveCrashes++;
+
+        state.mRecentCrashTimes.addLast(now);
+        while (!state.mRecentCrashTimes.isEmpty()
+                && now - state.mRecentCrashTimes.peekFirst() > CRASH_LOOP_WINDOW_MS) {
+            state.mRecentCrashTimes.removeFirst();
+        }
+        if (state.mRecentCrashTimes.size() >= CRASH_LOOP_THRESHOLD) {
+            Log.w(TAG, state.mName + " crashed " + state.mRecentCrashTimes.size() + " times in "
+                    + CRASH_LOOP_WINDOW_MS + "ms, opening the circuit breaker");
+            state.mBreakerOpenUntil = now + CIRCUIT_BREAKER_COOLDOWN_MS;
+            state.mBreakerTripTime = now;
+            state.mBreakerTrips++;
+            state.mRecentCrashTimes.clear();
+            if (state.mPendingRestart != null) {
+                cancelPendingRestart(state);
+                deferUntilBreakerCloses(taskView, state, "crash loop");
+            }
+        }
+    }
+
+    /**
+     * Called when a package {@code taskView} depends upon was replaced. If its task vanished
+     * shortly before, the update killed it, so that vanishing isn't counted as a crash.
+     */
+    @ShellMainThread
+    void onPackageReplaced(ControlledCarTaskView taskView) {
+        RestartState state = mStates.get(taskView);
+        long now = mClock.getAsLong();
+        if (state == null || state.mLastCrashTime == 0
+                || now - state.mLastCrashTime > PACKAGE_UPDATE_WINDOW_MS) {
+            return;
+        }
+        long crashTime = state.mLastCrashTime;
+        if (DBG) Log.d(TAG, state.mName + " vanished because of a package update");
+        state.mLastCrashTime = 0;
+        state.mCrashes--;
+        state.mConsecutiveCrashes = Math.max(0, state.mConsecutiveCrashes - 1);
+        state.mRecentCrashTimes.removeLastOccurrence(crashTime);
+        if (state.mBreakerTripTime == crashTime && state.mBreakerOpenUntil > now) {
+            // The update opened the circuit breaker, the deferred restart runs right away.
+            state.mBreakerOpenUntil = 0;
+            state.mBreakerTrips--;
+            if (state.mDeferredRestart != null) {
+                mShellExecutor.removeCallbacks(state.mDeferredRestart);
+                mShellExecutor.execute(state.mDeferredRestart);
+            }
+        }
+    }
+
+    /** Forgets {@code taskView} and cancels its pending restart if any. */
+    @ShellMainThread
+    void remove(ControlledCarTaskView taskView) {
+        RestartState state = mStates.remove(taskView);
+        if (state != null) {
+            cancelPendingRestart(state);
+            cancelDeferredRestart(state);
+        }
+    }
+
+    /** Cancels all the pending restarts and forgets all the task views. */
+    @ShellMainThread
+    void clear() {
+        for (int i = mStates.size() - 1; i >= 0; --i) {
+            cancelPendingRestart(mStates.valueAt(i));
+            cancelDeferredRestart(mStates.valueAt(i));
+        }
+        mStates.clear();
+    }
+
+    @VisibleForTesting
+    boolean hasPendingRestart(ControlledCarTaskView taskView) {
+        RestartState state = mStates.get(taskView);
+        return state != null && state.mPendingRestart != null;
+    }
+
+    @VisibleForTesting
+    boolean hasDeferredRestart(ControlledCarTaskView taskView) {
+        RestartState state = mStates.get(taskView);
+        return state != null && state.mDeferredRestart != null;
+    }
+
+    /** Requests the restart again once the circuit breaker closes, unless it already will. */
+    private void deferUntilBreakerCloses(ControlledCarTaskView taskView, RestartState state,
+            String reason) {
+        if (state.mDeferredRestart != null) {
+            return;
+        }
+        state.mDeferredRestart = () -> {
+            state.mDeferredRestart = null;
+            requestRestart(taskView, "circuit breaker closed, " + reason);
+        };
+        mShellExecutor.executeDelayed(state.mDeferredRestart,
+                Math.max(0, state.mBreakerOpenUntil - mClock.getAsLong()));
+    }
+
+    private void cancelPendingRestart(RestartState state) {
+        if (state.mPendingRestart != null) {
+            mShellExecutor.removeCallbacks(state.mPendingRestart);
+            state.mPendingRestart = null;
+        }
+    }
+
+    private void cancelDeferredRestart(RestartState state) {
+        if (state.mDeferredRestart != null) {
+            mShellExecutor.removeCallbacks(state.mDeferredRestart);
+            state.mDeferredRestart = null;
+        }
+    }
+
+    private long computeDelay(int consecutiveCrashes) {
+        if (consecutiveCrashes <= 1) {
+            return 0;
+        }
+        long backoff = BASE_BACKOFF_MS << Math.min(consecutiveCrashes - 2, 16);
+        backoff = Math.min(backoff, MAX_BACKOFF_MS);
+        float jitter = (mRandom.nextFloat() * 2 - 1) * JITTER_RATIO;
+        return Math.max(0, (long) (backoff * (1 + jitter)));
+    }
+
+    @ShellMainThread
+    void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("ControlledTaskRestartScheduler:");
+        long now = mClock.getAsLong();
+        for (int i = 0; i < mStates.size(); i++) {
+            RestartState state = mStates.valueAt(i);
+            writer.print(prefix);
+            writer.print("  ");
+            writer.print(state.mName);
+            writer.print(": requests=");
+            writer.print(state.mRequests);
+            writer.print(", launches=");
+            writer.print(state.mLaunches);
+            writer.print(", merged=");
+            writer.print(state.mMerged);
+            writer.print(", crashes=");
+            writer.print(state.mCrashes);
+            writer.print(", consecutiveCrashes=");
+            writer.print(state.mConsecutiveCrashes);
+            writer.print(", lastDelayMs=");
+            writer.print(state.mLastDelayMs);
+            writer.print(", breakerTrips=");
+            writer.print(state.mBreakerTrips);
+            writer.print(", deferredByBreaker=");
+            writer.print(state.mDeferredByBreaker);
+            writer.print(", breakerOpenForMs=");
+            writer.print(Math.max(0, state.mBreakerOpenUntil - now));
+            writer.print(", pending=");
+            writer.print(state.mPendingRestart != null);
+            writer.print(", deferred=");
+            writer.print(state.mDeferredRestart != null);
+            writer.print(", msSinceLastLaunch=");
+            writer.println(state.mLastLaunchTime > 0 ? now - state.mLastLaunchTime : -1);
+        }
+    }
+
+    private static final class RestartState {
+        final String mName;
+        final ArrayDeque<Long> mRecentCrashTimes = new ArrayDeque<>();
+        Runnable mPendingRestart;
+        // Requests the restart again once the circuit breaker closes.
+        Runnable mDeferredRestart;
+        int mConsecutiveCrashes;
+        long mLastAppearedTime;
+        long mLastLaunchTime;
+        // The time of the last vanishing counted as a crash, 0 once it's discounted.
+        long mLastCrashTime;
+        long mBreakerOpenUntil;
+        long mBreakerTripTime;
+        long mLastDelayMs;
+        // Statistics
+        int mRequests;
+        int mLaunches;
+        int mMerged;
+        int mCrashes;
+        int mBreakerTrips;
+        int mDeferredByBreaker;
+
+        RestartState(String name) {
+            mName = name;
+        }
+    }
+}
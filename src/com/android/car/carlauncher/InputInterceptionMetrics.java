@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher;
+
+import android.os.Trace;
+import android.util.ArrayMap;
+import android.view.MotionEvent;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the latency added by {@link TaskViewInputInterceptor} on the input path.
+ *
+ * <p>All the latencies are measured from the event timestamp, which uses the same monotonic clock
+ * as {@link System#nanoTime()}. Everything is expected to be called on the main thread.
+ */
+final class InputInterceptionMetrics {
+    private static final String TRACE_COUNTER_RECEIPT = "CarLauncher#spyReceiptLatencyUs";
+    private static final String TRACE_COUNTER_PILFER = "CarLauncher#spyPilferLatencyUs";
+    private static final String TRACE_COUNTER_DISPATCH = "CarLauncher#spyDispatchLatencyUs";
+
+    private final LatencyHistogram mReceiptLatency = new LatencyHistogram("eventToSpyReceipt");
+    private final LatencyHistogram mPilferLatency = new LatencyHistogram("eventToPilfer");
+    private final LatencyHistogram mDispatchLatency = new LatencyHistogram("eventToHostDispatch");
+    // Worst receipt latency of a whole gesture, split by whether the gesture got intercepted.
+    private final LatencyHistogram mInterceptedGestures =
+            new LatencyHistogram("interceptedGestures");
+    private final LatencyHistogram mPassedThroughGestures =
+            new LatencyHistogram("passedThroughGestures");
+    private final ArrayMap<String, Integer> mLongPressCaptures = new ArrayMap<>();
+
+    private long mGestureMaxReceiptLatencyNanos;
+    private boolean mGestureIntercepted;
+
+    /** Called as soon as the spy window receives {@code event}. */
+    void onEventReceived(MotionEvent event) {
+        long latencyNanos = System.nanoTime() - event.getEventTimeNanos();
+        mReceiptLatency.record(latencyNanos);
+        traceCounter(TRACE_COUNTER_RECEIPT, latencyNanos);
+
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            mGestureMaxReceiptLatencyNanos = 0;
+            mGestureIntercepted = false;
+        }
+        mGestureMaxReceiptLatencyNanos = Math.max(mGestureMaxReceiptLatencyNanos, latencyNanos);
+    }
+
+    /** Called right after the pointers of {@code event} are pilfered. */
+    void onPointersPilfered(MotionEvent event) {
+        long latencyNanos = System.nanoTime() - event.getEventTimeNanos();
+        mPilferLatency.record(latencyNanos);
+        traceCounter(TRACE_COUNTER_PILFER, latencyNanos);
+        mGestureIntercepted = true;
+    }
+
+    /** Called right after {@code event} is dispatched to the host activity. */
+    void onDispatchedToHost(MotionEvent event) {
+        long latencyNanos = System.nanoTime() - event.getEventTimeNanos();
+        mDispatchLatency.record(latencyNanos);
+        traceCounter(TRACE_COUNTER_DISPATCH, latencyNanos);
+    }
+
+    /** Called when a long press over {@code taskView} has been captured. */
+    void onLongPressCaptured(ControlledCarTaskView taskView) {
+        String key = taskView.getConfig().mActivityIntent.getComponent() != null
+                ? taskView.getConfig().mActivityIntent.getComponent().flattenToShortString()
+                : taskView.getConfig().mActivityIntent.toString();
+        Integer count = mLongPressCaptures.get(key);
+        mLongPressCaptures.put(key, count == null ? 1 : count + 1);
+        mGestureIntercepted = true;
+    }
+
+    /** Called when the current gesture ends, i.e. on {@code ACTION_UP} or {@code ACTION_CANCEL}. */
+    void onGestureEnded() {
+        if (mGestureIntercepted) {
+            mInterceptedGestures.record(mGestureMaxReceiptLatencyNanos);
+        } else {
+            mPassedThroughGestures.record(mGestureMaxReceiptLatencyNanos);
+        }
+        mGestureMaxReceiptLatencyNanos = 0;
+        mGestureIntercepted = false;
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        String innerPrefix = prefix + "  ";
+        writer.print(prefix);
+        writer.println("InputInterceptionMetrics:");
+        mReceiptLatency.dump(innerPrefix, writer);
+        mPilferLatency.dump(innerPrefix, writer);
+        mDispatchLatency.dump(innerPrefix, writer);
+        mInterceptedGestures.dump(innerPrefix, writer);
+        mPassedThroughGestures.dump(innerPrefix, writer);
+        writer.print(innerPrefix);
+        writer.println("longPressCaptures:");
+        for (int i = 0; i < mLongPressCaptures.size(); i++) {
+            writer.print(innerPrefix);
+            writer.print("  ");
+            writer.print(mLongPressCaptures.keyAt(i));
+            writer.print('=');
+            writer.println(mLongPressCaptures.valueAt(i));
+        }
+    }
+
+    long getInterceptedGestureCount() {
+        return mInterceptedGestures.getCount();
+    }
+
+    long getPassedThroughGestureCount() {
+        return mPassedThroughGestures.getCount();
+    }
+
+    int getLongPressCaptureCount(String component) {
+        Integer count = mLongPressCaptures.get(component);
+        return count == null ? 0 : count;
+    }
+
+    private static void traceCounter(String name, long latencyNanos) {
+        if (Trace.isEnabled()) {
+            Trace.setCounter(name, TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        }
+    }
+}
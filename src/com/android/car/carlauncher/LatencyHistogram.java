@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed-bucket latency histogram meant for dumpsys. Bucket boundaries grow exponentially from
+ * 250us to 64ms, everything above goes into an overflow bucket.
+ *
+ * <p>This class is not thread-safe, callers are expected to record & dump on the same thread.
+ */
+public final class LatencyHistogram {
+    private static final long[] BUCKET_UPPER_BOUNDS_US =
+            {250, 500, 1_000, 2_000, 4_000, 8_000, 16_000, 32_000, 64_000};
+
+    private final String mName;
+    // The last bucket is the overflow bucket.
+    private final int[] mBuckets = new int[BUCKET_UPPER_BOUNDS_US.length + 1];
+    private long mCount;
+    private long mSumUs;
+    private long mMaxUs;
+
+    public LatencyHistogram(String name) {
+        mName = name;
+    }
+
+    /** Records a latency sample given in nanoseconds. Negative samples are ignored. */
+    public void record(long latencyNanos) {
+        if (latencyNanos < 0) {
+            return;
+        }
+        long latencyUs = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+        int bucket = 0;
+        while (bucket < BUCKET_UPPER_BOUNDS_US.length
+                && latencyUs > BUCKET_UPPER_BOUNDS_US[bucket]) {
+            bucket++;
+        }
+        mBuckets[bucket]++;
+        mCount++;
+        mSumUs += latencyUs;
+        mMaxUs = Math.max(mMaxUs, latencyUs);
+    }
+
+    /** Returns the number of recorded samples. */
+    public long getCount() {
+        return mCount;
+    }
+
+    /** Dumps the histogram in a single line. */
+    public void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.print(mName);
+        writer.print(": count=");
+        writer.print(mCount);
+        if (mCount == 0) {
+            writer.println();
+            return;
+        }
+        writer.print(", avgUs=");
+        writer.print(mSumUs / mCount);
+        writer.print(", maxUs=");
+        writer.print(mMaxUs);
+        writer.print(", buckets={");
+        for (int i = 0; i < mBuckets.length; i++) {
+            if (i > 0) {
+                writer.print(", ");
+            }
+            writer.print(i < BUCKET_UPPER_BOUNDS_US.length
+                    ? "<=" + BUCKET_UPPER_BOUNDS_US[i] : ">" + BUCKET_UPPER_BOUNDS_US[i - 1]);
+            writer.print(':');
+            writer.print(mBuckets[i]);
+        }
+        writer.println('}');
+    }
+}
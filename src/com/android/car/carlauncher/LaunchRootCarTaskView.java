@@ -20,7 +20,6 @@ import static android.app.WindowConfiguration.ACTIVITY_TYPE_STANDARD;
 import static android.app.WindowConfiguration.WINDOWING_MODE_FULLSCREEN;
 import static android.app.WindowConfiguration.WINDOWING_MODE_MULTI_WINDOW;
 import static android.app.WindowConfiguration.WINDOWING_MODE_UNDEFINED;
-import static android.view.Display.DEFAULT_DISPLAY;
 
 import static com.android.car.carlauncher.TaskViewManager.DBG;
 
@@ -137,7 +136,7 @@ final class LaunchRootCarTaskView extends CarTaskView {
         super.onCarTaskViewInitialized();
         mShellTaskOrganizer.getExecutor().execute(() -> {
             // Should run on shell's executor
-            mShellTaskOrganizer.createRootTask(DEFAULT_DISPLAY,
+            mShellTaskOrganizer.createRootTask(mContext.getDisplayId(),
                     WINDOWING_MODE_MULTI_WINDOW,
                     mRootTaskListenerWrapper);
         });
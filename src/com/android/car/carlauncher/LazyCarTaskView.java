@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher;
+
+import static com.android.car.carlauncher.TaskViewManager.DBG;
+
+import android.annotation.MainThread;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import com.android.wm.shell.common.ShellExecutor;
+import com.android.wm.shell.common.annotations.ShellMainThread;
+
+import java.util.function.Supplier;
+
+/**
+ * A {@link CarTaskView} registered lazily through {@link TaskViewManager}. It only holds what is
+ * needed to create the {@link CarTaskView} until its container becomes visible, so that the
+ * panels which are off-screen or collapsed don't hold a surface and a task.
+ *
+ * <p>Once created, the embedded task can be parked when the container stays hidden for the park
+ * timeout: the task is hidden, which stops the app and lets it trim its UI memory, and the task
+ * isn't composed anymore. It's shown again when the container becomes visible.
+ */
+final class LazyCarTaskView implements ViewTreeObserver.OnGlobalLayoutListener {
+    private static final String TAG = LazyCarTaskView.class.getSimpleName();
+
+    /** Interface to park & unpark the embedded task of a {@link CarTaskView}. */
+    interface Parker {
+        @ShellMainThread
+        void setEmbeddedTaskParked(CarTaskView taskView, boolean parked);
+    }
+
+    private final View mContainer;
+    private final ShellExecutor mShellExecutor;
+    private final long mParkTimeoutMs;
+    private final Supplier<CarTaskView> mFactory;
+    private final Parker mParker;
+    private final Runnable mParkRunnable = this::park;
+
+    // Accessed on the main thread only.
+    private boolean mContainerVisible;
+    private boolean mReleased;
+    @ShellMainThread
+    private CarTaskView mTaskView;
+    @ShellMainThread
+    private boolean mParked;
+
+    /**
+     * @param factory creates the {@link CarTaskView} on the shell thread.
+     * @param parkTimeoutMs how long the container needs to stay hidden before the embedded task
+     *                      is parked, or {@link TaskViewManager#NO_PARKING}.
+     */
+    @MainThread
+    LazyCarTaskView(View container, ShellExecutor shellExecutor, long parkTimeoutMs,
+            Supplier<CarTaskView> factory, Parker parker) {
+        mContainer = container;
+        mShellExecutor = shellExecutor;
+        mParkTimeoutMs = parkTimeoutMs;
+        mFactory = factory;
+        mParker = parker;
+        mContainer.getViewTreeObserver().addOnGlobalLayoutListener(this);
+        onGlobalLayout();
+    }
+
+    @Override
+    public void onGlobalLayout() {
+        boolean visible = mContainer.isShown()
+                && mContainer.getWidth() > 0 && mContainer.getHeight() > 0;
+        if (visible == mContainerVisible || mReleased) {
+            return;
+        }
+        mContainerVisible = visible;
+        if (DBG) Log.d(TAG, "Container " + mContainer + " visible=" + visible);
+        if (visible) {
+            mShellExecutor.removeCallbacks(mParkRunnable);
+            mShellExecutor.execute(this::materializeOrUnpark);
+        } else if (mParkTimeoutMs >= 0) {
+            mShellExecutor.executeDelayed(mParkRunnable, mParkTimeoutMs);
+        }
+    }
+
+    @ShellMainThread
+    private void materializeOrUnpark() {
+        if (mTaskView == null) {
+            mTaskView = mFactory.get();
+            return;
+        }
+        if (mParked) {
+            mParked = false;
+            mParker.setEmbeddedTaskParked(mTaskView, /* parked= */ false);
+        }
+    }
+
+    @ShellMainThread
+    private void park() {
+        if (mTaskView == null || mParked) {
+            return;
+        }
+        if (DBG) Log.d(TAG, "Parking the embedded task of " + mTaskView);
+        mParked = true;
+        mParker.setEmbeddedTaskParked(mTaskView, /* parked= */ true);
+    }
+
+    /** Returns the {@link CarTaskView} if it was created already. */
+    @ShellMainThread
+    CarTaskView getTaskView() {
+        return mTaskView;
+    }
+
+    /** Stops tracking the container, the {@link CarTaskView} is released by its manager. */
+    @MainThread
+    void release() {
+        mReleased = true;
+        mContainer.getViewTreeObserver().removeOnGlobalLayoutListener(this);
+        mShellExecutor.removeCallbacks(mParkRunnable);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Configuration;
+import android.graphics.Rect;
+
+import androidx.annotation.Nullable;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Stores the bounds of the maps card per screen configuration, so that the map can be launched on
+ * them in the next session before the card is laid out.
+ *
+ * <p>The preferences are accessed off the main thread, since the first access blocks until the
+ * whole file is loaded.
+ */
+final class MapLaunchBoundsStore {
+    private static final String STARTUP_PREFS_NAME = "car_launcher_startup";
+    private static final String PREF_MAP_LAUNCH_BOUNDS_PREFIX = "map_launch_bounds_";
+
+    private final Supplier<SharedPreferences> mPreferences;
+    private final Executor mExecutor;
+
+    MapLaunchBoundsStore(Context context) {
+        // Device protected storage as the launcher can be started before the user is unlocked.
+        this(() -> context.createDeviceProtectedStorageContext()
+                        .getSharedPreferences(STARTUP_PREFS_NAME, Context.MODE_PRIVATE),
+                ForkJoinPool.commonPool());
+    }
+
+    @VisibleForTesting
+    MapLaunchBoundsStore(Supplier<SharedPreferences> preferences, Executor executor) {
+        mPreferences = preferences;
+        mExecutor = executor;
+    }
+
+    /**
+     * Loads the bounds saved for {@code config}, the future completes with {@code null} if there
+     * are none.
+     */
+    CompletableFuture<Rect> load(Configuration config) {
+        String key = getKey(config);
+        return CompletableFuture.supplyAsync(() -> {
+            String bounds = mPreferences.get().getString(key, /* defValue= */ null);
+            return bounds == null ? null : Rect.unflattenFromString(bounds);
+        }, mExecutor);
+    }
+
+    /** Saves the {@code bounds} of the maps card for {@code config}, unless they are empty. */
+    void save(Configuration config, @Nullable Rect bounds) {
+        if (bounds == null || bounds.isEmpty()) {
+            return;
+        }
+        String key = getKey(config);
+        String flattenedBounds = bounds.flattenToString();
+        mExecutor.execute(() -> mPreferences.get().edit()
+                .putString(key, flattenedBounds)
+                .apply());
+    }
+
+    private static String getKey(Configuration config) {
+        // The bounds depend on the layout, which differs between the screen configurations.
+        return PREF_MAP_LAUNCH_BOUNDS_PREFIX + config.screenWidthDp + "x" + config.screenHeightDp
+                + "_" + config.densityDpi;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher;
+
+import android.app.ActivityManager;
+import android.os.SystemClock;
+import android.util.ArrayMap;
+import android.view.SurfaceControl;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.wm.shell.ShellTaskOrganizer;
+
+import java.io.PrintWriter;
+
+/**
+ * Instrumentation of the task events handled by {@link TaskViewManager}, dumped through
+ * {@code dumpsys activity}:
+ * <ul>
+ *   <li>the count & the handling latency histogram of each callback,
+ *   <li>the count of the events dropped by each callback, e.g. when CarActivityManager is null,
+ *   <li>the current & max size of the launch root stack,
+ *   <li>a ring buffer of the most recent events.
+ * </ul>
+ *
+ * <p>This class is not thread-safe, it is meant to be used on the shell main thread.
+ */
+final class TaskEventMetrics {
+    static final String ROOT_TASK_LISTENER = "rootTask";
+    static final String FULLSCREEN_TASK_LISTENER = "fullscreenTask";
+    static final String TASK_STACK_LISTENER = "taskStack";
+    static final String CAR_ACTIVITY_MANAGER = "carActivityManager";
+
+    static final String ON_TASK_APPEARED = ".onTaskAppeared";
+    static final String ON_TASK_INFO_CHANGED = ".onTaskInfoChanged";
+    static final String ON_TASK_VANISHED = ".onTaskVanished";
+    static final String ON_BACK_PRESSED_ON_TASK_ROOT = ".onBackPressedOnTaskRoot";
+
+    @VisibleForTesting
+    static final int RECENT_EVENTS_CAPACITY = 64;
+    private static final int NO_LATENCY = -1;
+
+    private final ArrayMap<String, LatencyHistogram> mLatencies = new ArrayMap<>();
+    private final ArrayMap<String, Integer> mDroppedCounts = new ArrayMap<>();
+    // Preallocated so that recording an event doesn't allocate.
+    private final RecentEvent[] mRecentEvents = new RecentEvent[RECENT_EVENTS_CAPACITY];
+    private int mNextRecentEvent;
+    private long mTotalEvents;
+    private int mLaunchRootStackSize;
+    private int mMaxLaunchRootStackSize;
+    private long mLaunchRootStackSizeChanges;
+
+    TaskEventMetrics() {
+        for (int i = 0; i < mRecentEvents.length; i++) {
+            mRecentEvents[i] = new RecentEvent();
+        }
+    }
+
+    /**
+     * Records that {@code callback} handled an event of {@code taskId}, which started at
+     * {@code startNanos} as given by {@link System#nanoTime()}.
+     */
+    void onEventHandled(String callback, int taskId, long startNanos) {
+        long latencyNanos = System.nanoTime() - startNanos;
+        LatencyHistogram histogram = mLatencies.get(callback);
+        if (histogram == null) {
+            histogram = new LatencyHistogram(callback);
+            mLatencies.put(callback, histogram);
+        }
+        histogram.record(latencyNanos);
+        addRecentEvent(callback, taskId, latencyNanos / 1000, /* dropped= */ false);
+    }
+
+    /** Records that {@code callback} dropped an event of {@code taskId}. */
+    void onEventDropped(String callback, int taskId) {
+        Integer count = mDroppedCounts.get(callback);
+        mDroppedCounts.put(callback, count == null ? 1 : count + 1);
+        addRecentEvent(callback, taskId, NO_LATENCY, /* dropped= */ true);
+    }
+
+    /** Records the size of the launch root stack, if it changed. */
+    void onLaunchRootStackSizeChanged(int size) {
+        if (size == mLaunchRootStackSize) {
+            return;
+        }
+        mLaunchRootStackSize = size;
+        mMaxLaunchRootStackSize = Math.max(mMaxLaunchRootStackSize, size);
+        mLaunchRootStackSizeChanges++;
+    }
+
+    /**
+     * Wraps {@code delegate} to record the events it handles under {@code name}, e.g.
+     * {@link #ROOT_TASK_LISTENER}.
+     */
+    ShellTaskOrganizer.TaskListener instrument(String name,
+            ShellTaskOrganizer.TaskListener delegate) {
+        return new InstrumentedTaskListener(name, delegate);
+    }
+
+    @VisibleForTesting
+    long getEventCount(String callback) {
+        LatencyHistogram histogram = mLatencies.get(callback);
+        return histogram == null ? 0 : histogram.getCount();
+    }
+
+    @VisibleForTesting
+    int getDroppedCount(String callback) {
+        Integer count = mDroppedCounts.get(callback);
+        return count == null ? 0 : count;
+    }
+
+    @VisibleForTesting
+    int getMaxLaunchRootStackSize() {
+        return mMaxLaunchRootStackSize;
+    }
+
+    private void addRecentEvent(String callback, int taskId, long latencyUs, boolean dropped) {
+        RecentEvent event = mRecentEvents[mNextRecentEvent];
+        event.mUptimeMs = SystemClock.uptimeMillis();
+        event.mCallback = callback;
+        event.mTaskId = taskId;
+        event.mLatencyUs = latencyUs;
+        event.mDropped = dropped;
+        event.mLaunchRootStackSize = mLaunchRootStackSize;
+        mNextRecentEvent = (mNextRecentEvent + 1) % mRecentEvents.length;
+        mTotalEvents++;
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("TaskEventMetrics:");
+        String innerPrefix = prefix + "  ";
+        writer.print(innerPrefix);
+        writer.print("launchRootStackSize=");
+        writer.print(mLaunchRootStackSize);
+        writer.print(", maxLaunchRootStackSize=");
+        writer.print(mMaxLaunchRootStackSize);
+        writer.print(", launchRootStackSizeChanges=");
+        writer.println(mLaunchRootStackSizeChanges);
+        for (int i = 0; i < mLatencies.size(); i++) {
+            mLatencies.valueAt(i).dump(innerPrefix, writer);
+        }
+        for (int i = 0; i < mDroppedCounts.size(); i++) {
+            writer.print(innerPrefix);
+            writer.print(mDroppedCounts.keyAt(i));
+            writer.print(": dropped=");
+            writer.println(mDroppedCounts.valueAt(i));
+        }
+        int recentEvents = (int) Math.min(mTotalEvents, mRecentEvents.length);
+        writer.print(innerPrefix);
+        writer.print("Recent events (");
+        writer.print(recentEvents);
+        writer.print(" of ");
+        writer.print(mTotalEvents);
+        writer.println("):");
+        long now = SystemClock.uptimeMillis();
+        for (int i = recentEvents; i > 0; --i) {
+            RecentEvent event = mRecentEvents[
+                    (mNextRecentEvent - i + mRecentEvents.length) % mRecentEvents.length];
+            writer.print(innerPrefix);
+            writer.print("  -");
+            writer.print(now - event.mUptimeMs);
+            writer.print("ms ");
+            writer.print(event.mCallback);
+            writer.print(" taskId=");
+            writer.print(event.mTaskId);
+            if (event.mDropped) {
+                writer.print(" dropped");
+            } else {
+                writer.print(" latencyUs=");
+                writer.print(event.mLatencyUs);
+            }
+            writer.print(" launchRootStackSize=");
+            writer.println(event.mLaunchRootStackSize);
+        }
+    }
+
+    private static final class RecentEvent {
+        long mUptimeMs;
+        String mCallback;
+        int mTaskId;
+        long mLatencyUs;
+        boolean mDropped;
+        int mLaunchRootStackSize;
+    }
+
+    private final class InstrumentedTaskListener implements ShellTaskOrganizer.TaskListener {
+        private final ShellTaskOrganizer.TaskListener mDelegate;
+        private final String mOnTaskAppeared;
+        private final String mOnTaskInfoChanged;
+        private final String mOnTaskVanished;
+        private final String mOnBackPressedOnTaskRoot;
+
+        InstrumentedTaskListener(String name, ShellTaskOrganizer.TaskListener delegate) {
+            mDelegate = delegate;
+            mOnTaskAppeared = name + ON_TASK_APPEARED;
+            mOnTaskInfoChanged = name + ON_TASK_INFO_CHANGED;
+            mOnTaskVanished = name + ON_TASK_VANISHED;
+            mOnBackPressedOnTaskRoot = name + ON_BACK_PRESSED_ON_TASK_ROOT;
+        }
+
+        @Override
+        public void onTaskAppeared(ActivityManager.RunningTaskInfo taskInfo,
+                SurfaceControl leash) {
+            long startNanos = System.nanoTime();
+            mDelegate.onTaskAppeared(taskInfo, leash);
+            onEventHandled(mOnTaskAppeared, taskInfo.taskId, startNanos);
+        }
+
+        @Override
+        public void onTaskInfoChanged(ActivityManager.RunningTaskInfo taskInfo) {
+            long startNanos = System.nanoTime();
+            mDelegate.onTaskInfoChanged(taskInfo);
+            onEventHandled(mOnTaskInfoChanged, taskInfo.taskId, startNanos);
+        }
+
+        @Override
+        public void onTaskVanished(ActivityManager.RunningTaskInfo taskInfo) {
+            long startNanos = System.nanoTime();
+            mDelegate.onTaskVanished(taskInfo);
+            onEventHandled(mOnTaskVanished, taskInfo.taskId, startNanos);
+        }
+
+        @Override
+        public void onBackPressedOnTaskRoot(ActivityManager.RunningTaskInfo taskInfo) {
+            long startNanos = System.nanoTime();
+            mDelegate.onBackPressedOnTaskRoot(taskInfo);
+            onEventHandled(mOnBackPressedOnTaskRoot, taskInfo.taskId, startNanos);
+        }
+
+        @Override
+        public void attachChildSurfaceToTask(int taskId, SurfaceControl.Builder b) {
+            mDelegate.attachChildSurfaceToTask(taskId, b);
+        }
+
+        @Override
+        public void reparentChildSurfaceToTask(int taskId, SurfaceControl sc,
+                SurfaceControl.Transaction t) {
+            mDelegate.reparentChildSurfaceToTask(taskId, sc, t);
+        }
+
+        @Override
+        public void dump(PrintWriter pw, String prefix) {
+            mDelegate.dump(pw, prefix);
+        }
+
+        @Override
+        public String toString() {
+            return mDelegate.toString();
+        }
+    }
+}
@@ -0,0 +1,480 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher;
+
+import static android.app.ActivityTaskManager.INVALID_TASK_ID;
+import static android.app.WindowConfiguration.WINDOWING_MODE_MULTI_WINDOW;
+import static android.view.Display.DEFAULT_DISPLAY;
+
+import static com.android.car.carlauncher.TaskViewManager.DBG;
+import static com.android.wm.shell.ShellTaskOrganizer.TASK_LISTENER_TYPE_FULLSCREEN;
+
+import android.app.ActivityManager;
+import android.app.ActivityTaskManager;
+import android.app.TaskInfo;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.SurfaceControl;
+import android.window.TaskAppearedInfo;
+import android.window.WindowContainerTransaction;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.launcher3.icons.IconProvider;
+import com.android.wm.shell.ShellTaskOrganizer;
+import com.android.wm.shell.common.HandlerExecutor;
+import com.android.wm.shell.common.ShellExecutor;
+import com.android.wm.shell.common.SyncTransactionQueue;
+import com.android.wm.shell.common.TransactionPool;
+import com.android.wm.shell.common.annotations.ShellMainThread;
+import com.android.wm.shell.startingsurface.StartingWindowController;
+import com.android.wm.shell.startingsurface.phone.PhoneStartingWindowTypeAlgorithm;
+import com.android.wm.shell.sysui.ShellCommandHandler;
+import com.android.wm.shell.sysui.ShellController;
+import com.android.wm.shell.sysui.ShellInit;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shares a single {@link ShellTaskOrganizer} and the shell infrastructure around it, i.e. the
+ * {@link SyncTransactionQueue}, {@link TransactionPool} and {@link StartingWindowController},
+ * between the {@link TaskViewManager}s of the process, e.g. the ones hosting task views on the
+ * cluster or passenger displays.
+ *
+ * <p>The organizer is registered when the first host is added and unregistered when the last
+ * one is removed. The fullscreen task events are routed to the host of the display of the task,
+ * or to the host of the default display if there is none. When the hosts change, the tasks are
+ * handed over to their new host silently, as they are still alive.
+ *
+ * <p>The embedded tasks of a host which is recreated, e.g. on a theme or density change, can be
+ * retained by the hub until the new host adopts them, so that they aren't restarted. The organizer
+ * stays registered meanwhile, even if there is no host left.
+ */
+final class TaskOrganizerHub {
+    private static final String TAG = TaskOrganizerHub.class.getSimpleName();
+    // How long a retained task waits for a new host to adopt it before it's removed.
+    @VisibleForTesting
+    static final long RETAINED_TASK_TIMEOUT_MS = 10_000;
+
+    @ShellMainThread
+    private static TaskOrganizerHub sInstance;
+
+    private final ShellTaskOrganizer mTaskOrganizer;
+    private final SyncTransactionQueue mSyncQueue;
+    private final ShellInit mShellInit;
+    private final ShellExecutor mShellExecutor;
+    private final boolean mShared;
+    // In the order they were added, the latest host of a display receives its task events.
+    @ShellMainThread
+    private final List<TaskViewManager> mHosts = new ArrayList<>();
+    @ShellMainThread
+    private final SparseArray<FullscreenTask> mFullscreenTasks = new SparseArray<>();
+    @ShellMainThread
+    private final List<RetainedTask> mRetainedTasks = new ArrayList<>();
+    @ShellMainThread
+    private boolean mShellInitialized;
+    @ShellMainThread
+    private boolean mRegistered;
+
+    private final ShellTaskOrganizer.TaskListener mFullscreenTaskRouter =
+            new ShellTaskOrganizer.TaskListener() {
+                @Override
+                public void onTaskAppeared(ActivityManager.RunningTaskInfo taskInfo,
+                        SurfaceControl leash) {
+                    TaskViewManager host = getHostForDisplay(taskInfo.displayId);
+                    mFullscreenTasks.put(taskInfo.taskId,
+                            new FullscreenTask(host, taskInfo, leash));
+                    if (host == null) {
+                        // Reported to the next host which is added.
+                        Log.w(TAG, "No host for task " + taskInfo.taskId + " on display "
+                                + taskInfo.displayId);
+                        return;
+                    }
+                    host.getFullscreenTaskListener().onTaskAppeared(taskInfo, leash);
+                }
+
+                @Override
+                public void onTaskInfoChanged(ActivityManager.RunningTaskInfo taskInfo) {
+                    FullscreenTask task = mFullscreenTasks.get(taskInfo.taskId);
+                    if (task == null) {
+                        if (DBG) Log.d(TAG, "onTaskInfoChanged for unknown task " + taskInfo);
+                        return;
+                    }
+                    task.mTaskInfo = taskInfo;
+                    TaskViewManager host = getHostForDisplay(taskInfo.displayId);
+                    if (host != task.mHost) {
+                        // The task moved to another display, hands it over to its new host.
+                        handOverFullscreenTask(task, host);
+                    }
+                    if (task.mHost != null) {
+                        task.mHost.getFullscreenTaskListener().onTaskInfoChanged(taskInfo);
+                    }
+                }
+
+                @Override
+                public void onTaskVanished(ActivityManager.RunningTaskInfo taskInfo) {
+                    FullscreenTask task = mFullscreenTasks.get(taskInfo.taskId);
+                    if (task == null) {
+                        if (DBG) Log.d(TAG, "onTaskVanished for unknown task " + taskInfo);
+                        return;
+                    }
+                    mFullscreenTasks.remove(taskInfo.taskId);
+                    if (task.mHost != null) {
+                        task.mHost.getFullscreenTaskListener().onTaskVanished(taskInfo);
+                    }
+                }
+
+                @Override
+                public void attachChildSurfaceToTask(int taskId, SurfaceControl.Builder b) {
+                    getFullscreenTask(taskId).mHost.getFullscreenTaskListener()
+                            .attachChildSurfaceToTask(taskId, b);
+                }
+
+                @Override
+                public void reparentChildSurfaceToTask(int taskId, SurfaceControl sc,
+                        SurfaceControl.Transaction t) {
+                    getFullscreenTask(taskId).mHost.getFullscreenTaskListener()
+                            .reparentChildSurfaceToTask(taskId, sc, t);
+                }
+            };
+
+    /**
+     * Returns the hub shared by the {@link TaskViewManager}s of the process, creating it if
+     * needed.
+     */
+    @ShellMainThread
+    static TaskOrganizerHub getInstance(Context context, HandlerExecutor handlerExecutor) {
+        if (sInstance == null) {
+            // The application context as the hub can outlive the host which created it.
+            Context appContext = context.getApplicationContext();
+            ShellTaskOrganizer taskOrganizer = new ShellTaskOrganizer(handlerExecutor);
+            TransactionPool transactionPool = new TransactionPool();
+            ShellInit shellInit = new ShellInit(handlerExecutor);
+            new StartingWindowController(appContext, shellInit,
+                    new ShellController(shellInit, new ShellCommandHandler(), handlerExecutor),
+                    taskOrganizer,
+                    handlerExecutor,
+                    new PhoneStartingWindowTypeAlgorithm(),
+                    new IconProvider(appContext),
+                    transactionPool);
+            sInstance = new TaskOrganizerHub(taskOrganizer,
+                    new SyncTransactionQueue(transactionPool, handlerExecutor), shellInit,
+                    handlerExecutor, /* shared= */ true);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    TaskOrganizerHub(ShellTaskOrganizer taskOrganizer, SyncTransactionQueue syncQueue,
+            ShellInit shellInit, ShellExecutor shellExecutor, boolean shared) {
+        mTaskOrganizer = taskOrganizer;
+        mSyncQueue = syncQueue;
+        mShellInit = shellInit;
+        mShellExecutor = shellExecutor;
+        mShared = shared;
+    }
+
+    ShellTaskOrganizer getTaskOrganizer() {
+        return mTaskOrganizer;
+    }
+
+    SyncTransactionQueue getSyncQueue() {
+        return mSyncQueue;
+    }
+
+    /** Adds a host, the organizer is registered when the first one is added. */
+    @ShellMainThread
+    void addHost(TaskViewManager host) {
+        if (mHosts.contains(host)) {
+            throw new IllegalStateException("Host already added: " + host);
+        }
+        mHosts.add(host);
+        if (mRegistered) {
+            // The fullscreen tasks of its display, or of the hosts which were removed meanwhile,
+            // are handed over.
+            handOverFullscreenTasks();
+            return;
+        }
+        if (!mShellInitialized) {
+            mShellInit.init();
+            mTaskOrganizer.addListenerForType(mFullscreenTaskRouter,
+                    TASK_LISTENER_TYPE_FULLSCREEN);
+            mShellInitialized = true;
+        }
+        // The existing tasks are reported to mFullscreenTaskRouter during the registration, so
+        // it's done once the host is added.
+        List<TaskAppearedInfo> taskAppearedInfos = mTaskOrganizer.registerOrganizer();
+        mRegistered = true;
+        cleanUpExistingTaskViewTasks(taskAppearedInfos);
+    }
+
+    /**
+     * Removes a host, its fullscreen tasks are handed over to the remaining hosts. The organizer
+     * is unregistered when the last one is removed, unless tasks are retained.
+     */
+    @ShellMainThread
+    void removeHost(TaskViewManager host) {
+        if (!mHosts.remove(host)) {
+            return;
+        }
+        if (mHosts.isEmpty() && mRetainedTasks.isEmpty()) {
+            unregisterOrganizer();
+            return;
+        }
+        handOverFullscreenTasks();
+    }
+
+    @ShellMainThread
+    private void unregisterOrganizer() {
+        mFullscreenTasks.clear();
+        mTaskOrganizer.unregisterOrganizer();
+        mRegistered = false;
+        if (mShared && sInstance == this) {
+            sInstance = null;
+        }
+    }
+
+    /** Hands the fullscreen tasks over to the host of their display, if it changed. */
+    @ShellMainThread
+    private void handOverFullscreenTasks() {
+        for (int i = mFullscreenTasks.size() - 1; i >= 0; --i) {
+            FullscreenTask task = mFullscreenTasks.valueAt(i);
+            TaskViewManager host = getHostForDisplay(task.mTaskInfo.displayId);
+            // The tasks of a removed host are kept without a host until one is added.
+            if (host != task.mHost && (host != null || !mHosts.contains(task.mHost))) {
+                handOverFullscreenTask(task, host);
+            }
+        }
+    }
+
+    /**
+     * Hands {@code task} over to {@code host}, or to no host if it's {@code null}. The task is
+     * alive, so it isn't reported as vanished and appeared again, only as appeared if no host
+     * reported it yet.
+     */
+    @ShellMainThread
+    private void handOverFullscreenTask(FullscreenTask task, TaskViewManager host) {
+        if (DBG) Log.d(TAG, "Handing task " + task.mTaskInfo.taskId + " over to " + host);
+        if (task.mHost != null) {
+            task.mHost.releaseFullscreenTask(task.mTaskInfo);
+        }
+        task.mHost = host;
+        if (host == null) {
+            return;
+        }
+        if (task.mReported) {
+            host.adoptFullscreenTask(task.mTaskInfo, task.mLeash);
+        } else {
+            task.mReported = true;
+            host.getFullscreenTaskListener().onTaskAppeared(task.mTaskInfo, task.mLeash);
+        }
+    }
+
+    /**
+     * Keeps the task embedded in {@code taskView}, which is being released with its host, alive
+     * until a {@link CarTaskView} of the next host adopts it through {@link #adoptRetainedTask}.
+     * The task is removed if it isn't adopted within {@link #RETAINED_TASK_TIMEOUT_MS}.
+     *
+     * @param activityIntent the intent the task was started with, it identifies the task.
+     */
+    @ShellMainThread
+    void retainTask(Intent activityIntent, int displayId, CarTaskView taskView) {
+        int taskId = taskView.getTaskId();
+        if (taskId == INVALID_TASK_ID) {
+            return;
+        }
+        if (DBG) Log.d(TAG, "Retaining task " + taskId + " of " + activityIntent);
+        RetainedTask task = new RetainedTask(activityIntent, displayId);
+        // The task is routed to the RetainedTask, which keeps its latest info and leash.
+        mTaskOrganizer.removeListener(taskView);
+        mTaskOrganizer.addListenerForTaskId(task, taskId);
+        mRetainedTasks.add(task);
+        mShellExecutor.executeDelayed(task.mExpiry, RETAINED_TASK_TIMEOUT_MS);
+    }
+
+    /** Returns whether a task started with {@code activityIntent} on the display is retained. */
+    @ShellMainThread
+    boolean hasRetainedTask(Intent activityIntent, int displayId) {
+        return findRetainedTask(activityIntent, displayId) != null;
+    }
+
+    /**
+     * Moves the retained task started with {@code activityIntent} on the display into
+     * {@code taskView}, which receives it through {@link CarTaskView#onTaskAppeared}.
+     *
+     * @return whether there was such a retained task.
+     */
+    @ShellMainThread
+    boolean adoptRetainedTask(Intent activityIntent, int displayId, CarTaskView taskView) {
+        RetainedTask task = findRetainedTask(activityIntent, displayId);
+        if (task == null) {
+            return false;
+        }
+        if (DBG) Log.d(TAG, "Task " + task.mTaskInfo.taskId + " adopted by " + taskView);
+        mRetainedTasks.remove(task);
+        mShellExecutor.removeCallbacks(task.mExpiry);
+        mTaskOrganizer.removeListener(task);
+        mTaskOrganizer.addListenerForTaskId(taskView, task.mTaskInfo.taskId);
+        return true;
+    }
+
+    @ShellMainThread
+    private RetainedTask findRetainedTask(Intent activityIntent, int displayId) {
+        for (int i = 0; i < mRetainedTasks.size(); i++) {
+            RetainedTask task = mRetainedTasks.get(i);
+            if (task.mDisplayId == displayId && task.mActivityIntent.filterEquals(activityIntent)
+                    && task.mTaskInfo != null) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    @ShellMainThread
+    private void dropRetainedTask(RetainedTask task, boolean removeTask) {
+        if (!mRetainedTasks.remove(task)) {
+            return;
+        }
+        mShellExecutor.removeCallbacks(task.mExpiry);
+        mTaskOrganizer.removeListener(task);
+        if (removeTask && task.mTaskInfo != null) {
+            Log.i(TAG, "Removing task " + task.mTaskInfo.taskId + " which wasn't adopted");
+            WindowContainerTransaction wct = new WindowContainerTransaction();
+            wct.removeTask(task.mTaskInfo.token);
+            mSyncQueue.queue(wct);
+        }
+        if (mHosts.isEmpty() && mRetainedTasks.isEmpty()) {
+            unregisterOrganizer();
+        }
+    }
+
+    @ShellMainThread
+    private TaskViewManager getHostForDisplay(int displayId) {
+        TaskViewManager defaultDisplayHost = null;
+        for (int i = mHosts.size() - 1; i >= 0; --i) {
+            TaskViewManager host = mHosts.get(i);
+            if (host.getDisplayId() == displayId) {
+                return host;
+            }
+            if (defaultDisplayHost == null && host.getDisplayId() == DEFAULT_DISPLAY) {
+                defaultDisplayHost = host;
+            }
+        }
+        if (defaultDisplayHost != null) {
+            return defaultDisplayHost;
+        }
+        return mHosts.isEmpty() ? null : mHosts.get(mHosts.size() - 1);
+    }
+
+    private FullscreenTask getFullscreenTask(int taskId) {
+        FullscreenTask task = mFullscreenTasks.get(taskId);
+        if (task == null || task.mHost == null) {
+            throw new IllegalArgumentException("There is no surface for taskId=" + taskId);
+        }
+        return task;
+    }
+
+    private static void cleanUpExistingTaskViewTasks(List<TaskAppearedInfo> taskAppearedInfos) {
+        ActivityTaskManager atm = ActivityTaskManager.getInstance();
+        for (TaskAppearedInfo taskAppearedInfo : taskAppearedInfos) {
+            TaskInfo taskInfo = taskAppearedInfo.getTaskInfo();
+            // Only TaskView tasks have WINDOWING_MODE_MULTI_WINDOW.
+            if (taskInfo.getWindowingMode() == WINDOWING_MODE_MULTI_WINDOW) {
+                if (DBG) Log.d(TAG, "Found the dangling task, removing: " + taskInfo.taskId);
+                atm.removeTask(taskInfo.taskId);
+            }
+        }
+    }
+
+    @ShellMainThread
+    void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.print("TaskOrganizerHub: shared=");
+        writer.print(mShared);
+        writer.print(", registered=");
+        writer.print(mRegistered);
+        writer.print(", fullscreenTasks=");
+        writer.print(mFullscreenTasks.size());
+        writer.print(", retainedTasks=");
+        writer.println(mRetainedTasks.size());
+        for (int i = 0; i < mHosts.size(); i++) {
+            TaskViewManager host = mHosts.get(i);
+            int tasks = 0;
+            for (int j = 0; j < mFullscreenTasks.size(); j++) {
+                if (mFullscreenTasks.valueAt(j).mHost == host) {
+                    tasks++;
+                }
+            }
+            writer.print(prefix);
+            writer.print("  host on display ");
+            writer.print(host.getDisplayId());
+            writer.print(": fullscreenTasks=");
+            writer.println(tasks);
+        }
+    }
+
+    /** A task retained by the hub between the release of its host and the adoption. */
+    private final class RetainedTask implements ShellTaskOrganizer.TaskListener {
+        final Intent mActivityIntent;
+        final int mDisplayId;
+        final Runnable mExpiry = () -> dropRetainedTask(this, /* removeTask= */ true);
+        ActivityManager.RunningTaskInfo mTaskInfo;
+
+        RetainedTask(Intent activityIntent, int displayId) {
+            mActivityIntent = activityIntent;
+            mDisplayId = displayId;
+        }
+
+        @Override
+        public void onTaskAppeared(ActivityManager.RunningTaskInfo taskInfo,
+                SurfaceControl leash) {
+            // The leash is handed to the adopting CarTaskView by the organizer.
+            mTaskInfo = taskInfo;
+        }
+
+        @Override
+        public void onTaskInfoChanged(ActivityManager.RunningTaskInfo taskInfo) {
+            mTaskInfo = taskInfo;
+        }
+
+        @Override
+        public void onTaskVanished(ActivityManager.RunningTaskInfo taskInfo) {
+            if (DBG) Log.d(TAG, "Retained task " + taskInfo.taskId + " vanished");
+            dropRetainedTask(this, /* removeTask= */ false);
+        }
+    }
+
+    private static final class FullscreenTask {
+        // Null while there is no host to route the task to.
+        TaskViewManager mHost;
+        ActivityManager.RunningTaskInfo mTaskInfo;
+        final SurfaceControl mLeash;
+        // Whether a host reported the task as appeared, after which it's handed over silently.
+        boolean mReported;
+
+        FullscreenTask(TaskViewManager host, ActivityManager.RunningTaskInfo taskInfo,
+                SurfaceControl leash) {
+            mHost = host;
+            mTaskInfo = taskInfo;
+            mLeash = leash;
+            mReported = host != null;
+        }
+    }
+}
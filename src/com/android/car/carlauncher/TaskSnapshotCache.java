@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher;
+
+import static com.android.car.carlauncher.TaskViewManager.DBG;
+
+import android.annotation.Nullable;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.SurfaceControl;
+import android.view.View;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.wm.shell.common.annotations.ShellMainThread;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the last frame of the tasks embedded in {@link ControlledCarTaskView}s, so that it can be
+ * shown as a placeholder while the task is (re)started, until the task draws its first frame.
+ *
+ * <p>The frames are captured at {@link #CAPTURE_SCALE} of the task view size and kept as RGB_565
+ * bitmaps in a bounded memory cache. They are also written to the cache directory, which is used
+ * when the process was restarted meanwhile. The placeholder is stretched to the task view size.
+ *
+ * <p>A task is captured at most once per {@link #MIN_CAPTURE_INTERVAL_MS}, since the capture blocks
+ * the shell main thread. The conversion, compression and disk write run on a background thread.
+ */
+final class TaskSnapshotCache {
+    private static final String TAG = TaskSnapshotCache.class.getSimpleName();
+    private static final String SNAPSHOT_DIR = "task_snapshots";
+    private static final String SNAPSHOT_SUFFIX = ".webp";
+    private static final int SNAPSHOT_QUALITY = 80;
+    @VisibleForTesting
+    static final float CAPTURE_SCALE = 0.5f;
+    private static final int MAX_MEMORY_BYTES = 4 * 1024 * 1024;
+    @VisibleForTesting
+    static final long MIN_CAPTURE_INTERVAL_MS = 30_000;
+
+    @ShellMainThread
+    private static TaskSnapshotCache sInstance;
+
+    private final File mSnapshotDir;
+    // Serializes the disk reads & writes, off the shell main thread.
+    private final Executor mDiskExecutor;
+    private final Executor mMainExecutor;
+    private final LongSupplier mClock;
+    private final Function<SurfaceControl, SurfaceControl.ScreenshotHardwareBuffer> mScreenshotter;
+    // Sized in bytes, it's thread-safe.
+    private final LruCache<String, Bitmap> mSnapshots = new LruCache<String, Bitmap>(
+            MAX_MEMORY_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap snapshot) {
+            return snapshot.getAllocationByteCount();
+        }
+    };
+    @ShellMainThread
+    private final ArrayMap<View, Placeholder> mPlaceholders = new ArrayMap<>();
+    // The uptime of the last capture by key, to throttle the captures.
+    @ShellMainThread
+    private final ArrayMap<String, Long> mCaptureTimes = new ArrayMap<>();
+    // Incremented on each invalidation, so that the disk reads started before are dropped.
+    @ShellMainThread
+    private int mGeneration;
+    @ShellMainThread
+    private int mCaptures;
+    @ShellMainThread
+    private int mThrottledCaptures;
+    @ShellMainThread
+    private int mMemoryHits;
+    @ShellMainThread
+    private int mDiskHits;
+    @ShellMainThread
+    private int mMisses;
+
+    /** Returns the cache shared by the {@link TaskViewManager}s of the process. */
+    @ShellMainThread
+    static TaskSnapshotCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TaskSnapshotCache(
+                    new File(context.getApplicationContext().getCacheDir(), SNAPSHOT_DIR),
+                    Executors.newSingleThreadExecutor(runnable -> new Thread(() -> {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }, TAG)),
+                    context.getMainExecutor(), SystemClock::uptimeMillis,
+                    leash -> SurfaceControl.captureLayers(
+                            new SurfaceControl.LayerCaptureArgs.Builder(leash)
+                                    .setFrameScale(CAPTURE_SCALE)
+                                    .build()));
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    TaskSnapshotCache(File snapshotDir, Executor diskExecutor, Executor mainExecutor,
+            LongSupplier clock,
+            Function<SurfaceControl, SurfaceControl.ScreenshotHardwareBuffer> screenshotter) {
+        mSnapshotDir = snapshotDir;
+        mDiskExecutor = diskExecutor;
+        mMainExecutor = mainExecutor;
+        mClock = clock;
+        mScreenshotter = screenshotter;
+    }
+
+    /**
+     * Captures the current frame of the task of {@code leash}, which is shown in a task view of
+     * {@code width} x {@code height}. It should be called while the task is still visible, e.g.
+     * before it gets hidden. It's skipped if the task was captured less than
+     * {@link #MIN_CAPTURE_INTERVAL_MS} ago.
+     */
+    @ShellMainThread
+    void capture(String key, SurfaceControl leash, int width, int height) {
+        if (!leash.isValid() || width <= 0 || height <= 0) {
+            return;
+        }
+        long now = mClock.getAsLong();
+        Long lastCaptureTime = mCaptureTimes.get(key);
+        if (lastCaptureTime != null && now - lastCaptureTime < MIN_CAPTURE_INTERVAL_MS) {
+            mThrottledCaptures++;
+            return;
+        }
+        SurfaceControl.ScreenshotHardwareBuffer buffer = mScreenshotter.apply(leash);
+        if (buffer == null) {
+            Log.w(TAG, "Failed to capture the task of " + key);
+            return;
+        }
+        Bitmap hardwareBitmap = buffer.asBitmap();
+        if (hardwareBitmap == null) {
+            buffer.getHardwareBuffer().close();
+            return;
+        }
+        mCaptures++;
+        mCaptureTimes.put(key, now);
+        int scaledWidth = Math.max(1, Math.round(width * CAPTURE_SCALE));
+        int scaledHeight = Math.max(1, Math.round(height * CAPTURE_SCALE));
+        mDiskExecutor.execute(() -> {
+            Bitmap snapshot;
+            try {
+                // Copies the hardware bitmap to a compact software one, scaled to the task view.
+                Bitmap scaled = Bitmap.createScaledBitmap(hardwareBitmap, scaledWidth,
+                        scaledHeight, /* filter= */ true);
+                snapshot = scaled.copy(Bitmap.Config.RGB_565, /* isMutable= */ false);
+                if (scaled != hardwareBitmap) {
+                    scaled.recycle();
+                }
+            } finally {
+                // The graphics memory of the capture is released right away, not on GC.
+                hardwareBitmap.recycle();
+                buffer.getHardwareBuffer().close();
+            }
+            if (snapshot == null) {
+                return;
+            }
+            mSnapshots.put(key, snapshot);
+            writeToDisk(key, snapshot);
+        });
+    }
+
+    /**
+     * Drops the frame of {@code key}, from memory and disk, e.g. once the package of the task was
+     * replaced and its UI may have changed.
+     */
+    @ShellMainThread
+    void invalidate(String key) {
+        mGeneration++;
+        mCaptureTimes.remove(key);
+        mSnapshots.remove(key);
+        // After the pending captures of the key, which would put it back otherwise.
+        mDiskExecutor.execute(() -> {
+            mSnapshots.remove(key);
+            File file = getSnapshotFile(key);
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "Failed to delete " + file);
+            }
+        });
+    }
+
+    /**
+     * Shows the last captured frame of {@code key} over {@code view} until
+     * {@link #hidePlaceholder} is called. Nothing is shown if there is no such frame.
+     */
+    @ShellMainThread
+    void showPlaceholder(String key, View view) {
+        hidePlaceholder(view);
+        Placeholder placeholder = new Placeholder(view);
+        mPlaceholders.put(view, placeholder);
+        Bitmap snapshot = mSnapshots.get(key);
+        if (snapshot != null) {
+            mMemoryHits++;
+            placeholder.show(snapshot);
+            return;
+        }
+        int generation = mGeneration;
+        mDiskExecutor.execute(() -> {
+            Bitmap diskSnapshot = readFromDisk(key);
+            mMainExecutor.execute(() -> {
+                if (diskSnapshot == null || generation != mGeneration) {
+                    mMisses++;
+                    return;
+                }
+                mDiskHits++;
+                mSnapshots.put(key, diskSnapshot);
+                // Only shown if the placeholder wasn't hidden or replaced meanwhile.
+                if (mPlaceholders.get(view) == placeholder) {
+                    placeholder.show(diskSnapshot);
+                }
+            });
+        });
+    }
+
+    /** Hides the placeholder shown over {@code view}, if any. */
+    @ShellMainThread
+    void hidePlaceholder(View view) {
+        Placeholder placeholder = mPlaceholders.remove(view);
+        if (placeholder != null) {
+            placeholder.hide();
+        }
+    }
+
+    @VisibleForTesting
+    boolean isPlaceholderShown(View view) {
+        Placeholder placeholder = mPlaceholders.get(view);
+        return placeholder != null && placeholder.mDrawable != null;
+    }
+
+    @VisibleForTesting
+    void putSnapshot(String key, Bitmap snapshot) {
+        mSnapshots.put(key, snapshot);
+    }
+
+    private void writeToDisk(String key, Bitmap snapshot) {
+        if (!mSnapshotDir.isDirectory() && !mSnapshotDir.mkdirs()) {
+            Log.w(TAG, "Failed to create " + mSnapshotDir);
+            return;
+        }
+        File file = getSnapshotFile(key);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            snapshot.compress(Bitmap.CompressFormat.WEBP_LOSSY, SNAPSHOT_QUALITY, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + file, e);
+        }
+    }
+
+    @Nullable
+    private Bitmap readFromDisk(String key) {
+        File file = getSnapshotFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        return BitmapFactory.decodeFile(file.getPath(), options);
+    }
+
+    @VisibleForTesting
+    File getSnapshotFile(String key) {
+        return new File(mSnapshotDir, key + SNAPSHOT_SUFFIX);
+    }
+
+    @ShellMainThread
+    void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.print("TaskSnapshotCache: snapshots=");
+        writer.print(mSnapshots.snapshot().size());
+        writer.print(", memoryBytes=");
+        writer.print(mSnapshots.size());
+        writer.print(", captures=");
+        writer.print(mCaptures);
+        writer.print(", throttledCaptures=");
+        writer.print(mThrottledCaptures);
+        writer.print(", memoryHits=");
+        writer.print(mMemoryHits);
+        writer.print(", diskHits=");
+        writer.print(mDiskHits);
+        writer.print(", misses=");
+        writer.print(mMisses);
+        writer.print(", placeholdersShown=");
+        writer.println(mPlaceholders.size());
+    }
+
+    /** The snapshot drawn over a task view, through its {@link android.view.ViewOverlay}. */
+    private static final class Placeholder implements View.OnLayoutChangeListener {
+        private final View mView;
+        @Nullable
+        private BitmapDrawable mDrawable;
+
+        Placeholder(View view) {
+            mView = view;
+        }
+
+        void show(Bitmap snapshot) {
+            if (DBG) Log.d(TAG, "Showing the placeholder over " + mView);
+            mDrawable = new BitmapDrawable(mView.getResources(), snapshot);
+            mDrawable.setBounds(0, 0, mView.getWidth(), mView.getHeight());
+            mView.getOverlay().add(mDrawable);
+            mView.addOnLayoutChangeListener(this);
+        }
+
+        void hide() {
+            if (mDrawable == null) {
+                return;
+            }
+            mView.removeOnLayoutChangeListener(this);
+            mView.getOverlay().remove(mDrawable);
+            mDrawable = null;
+        }
+
+        @Override
+        public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                int oldLeft, int oldTop, int oldRight, int oldBottom) {
+            if (mDrawable != null) {
+                mDrawable.setBounds(0, 0, right - left, bottom - top);
+            }
+        }
+    }
+}
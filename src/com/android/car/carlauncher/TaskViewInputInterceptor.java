@@ -27,6 +27,7 @@ import android.app.Application;
 import android.content.Context;
 import android.graphics.PixelFormat;
 import android.graphics.Rect;
+import android.graphics.Region;
 import android.hardware.input.InputManager;
 import android.os.Bundle;
 import android.util.Log;
@@ -34,13 +35,16 @@ import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.view.WindowManager;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.wm.shell.TaskView;
 
+import java.io.PrintWriter;
 import java.util.List;
 
 /**
@@ -53,6 +57,10 @@ import java.util.List;
  *   <li>The long press interception will only occur when the corresponding {@link
  *       ControlledCarTaskViewConfig#mCaptureLongPress} is set.
  * </ul>
+ *
+ * <p>The spy window is only touchable over the union of the bounds of the visible task views
+ * which capture gestures or long presses, so that touches on unrelated apps aren't dispatched to
+ * the host process. The window is removed altogether when no such task view is visible.
  */
 public final class TaskViewInputInterceptor {
 
@@ -70,8 +78,18 @@ public final class TaskViewInputInterceptor {
     private final Application.ActivityLifecycleCallbacks mActivityLifecycleCallbacks =
             new ActivityLifecycleHandler();
 
+    private final ViewTreeObserver.OnGlobalLayoutListener mHostLayoutListener =
+            this::updateSpyWindow;
+    private final ViewTreeObserver.OnComputeInternalInsetsListener mSpyWindowInsetsListener =
+            this::computeSpyWindowInsets;
+    // The region over which the spy window is touchable, in screen coordinates.
+    private final Region mTouchableRegion = new Region();
+    private final Region mTmpRegion = new Region();
+    private final InputInterceptionMetrics mMetrics = new InputInterceptionMetrics();
+
     private View mSpyWindow;
     private boolean mInitialized = false;
+    private boolean mIntercepting = false;
 
     TaskViewInputInterceptor(Activity hostActivity, TaskViewManager taskViewManager) {
         mHostActivity = hostActivity;
@@ -116,26 +134,88 @@ public final class TaskViewInputInterceptor {
         if (DBG) {
             Log.d(TAG, "Start intercepting gestures");
         }
-        if (mSpyWindow != null) {
+        if (mIntercepting) {
             Log.d(TAG, "Already intercepting gestures");
             return;
         }
-        createAndAddSpyWindow();
+        mIntercepting = true;
+        mHostActivity.getWindow().getDecorView().getViewTreeObserver()
+                .addOnGlobalLayoutListener(mHostLayoutListener);
+        updateSpyWindow();
     }
 
     private void stopInterceptingGestures() {
         if (DBG) {
             Log.d(TAG, "Stop intercepting gestures");
         }
-        if (mSpyWindow == null) {
+        if (!mIntercepting) {
             Log.d(TAG, "Already not intercepting gestures");
             return;
         }
-        removeSpyWindow();
+        mIntercepting = false;
+        mHostActivity.getWindow().getDecorView().getViewTreeObserver()
+                .removeOnGlobalLayoutListener(mHostLayoutListener);
+        mTouchableRegion.setEmpty();
+        if (mSpyWindow != null) {
+            removeSpyWindow();
+        }
+    }
+
+    /**
+     * Recomputes the region covered by the capturing task views and adds, updates or removes the
+     * spy window accordingly.
+     */
+    @MainThread
+    void updateSpyWindow() {
+        if (!mIntercepting) {
+            return;
+        }
+        mTmpRegion.setEmpty();
+        List<ControlledCarTaskView> taskViewList = mTaskViewManager.getControlledTaskViews();
+        for (int i = taskViewList.size() - 1; i >= 0; --i) {
+            ControlledCarTaskView tv = taskViewList.get(i);
+            ControlledCarTaskViewConfig config = tv.getConfig();
+            if (!(config.mCaptureGestures || config.mCaptureLongPress) || !tv.isShown()) {
+                continue;
+            }
+            tv.getBoundsOnScreen(sTmpBounds);
+            mTmpRegion.union(sTmpBounds);
+        }
+
+        if (mTmpRegion.isEmpty()) {
+            mTouchableRegion.setEmpty();
+            if (mSpyWindow != null) {
+                if (DBG) {
+                    Log.d(TAG, "No capturing task view is visible, removing the spy window");
+                }
+                removeSpyWindow();
+            }
+            return;
+        }
+        if (mSpyWindow != null && mTouchableRegion.equals(mTmpRegion)) {
+            return;
+        }
+        mTouchableRegion.set(mTmpRegion);
+        if (DBG) {
+            Log.d(TAG, "Spy window touchable region: " + mTouchableRegion);
+        }
+        if (mSpyWindow == null) {
+            createAndAddSpyWindow();
+        } else {
+            // Triggers a traversal so that the new touchable region is picked up.
+            mSpyWindow.requestLayout();
+        }
+    }
+
+    private void computeSpyWindowInsets(ViewTreeObserver.InternalInsetsInfo inoutInfo) {
+        inoutInfo.setTouchableInsets(ViewTreeObserver.InternalInsetsInfo.TOUCHABLE_INSETS_REGION);
+        inoutInfo.touchableRegion.set(mTouchableRegion);
     }
 
     private void createAndAddSpyWindow() {
         mSpyWindow = new GestureSpyView(mHostActivity);
+        mSpyWindow.getViewTreeObserver().addOnComputeInternalInsetsListener(
+                mSpyWindowInsetsListener);
         WindowManager.LayoutParams p =
                 new WindowManager.LayoutParams(
                         ViewGroup.LayoutParams.MATCH_PARENT,
@@ -157,10 +237,36 @@ public final class TaskViewInputInterceptor {
             Log.e(TAG, "Spy window is not present");
             return;
         }
+        mSpyWindow.getViewTreeObserver().removeOnComputeInternalInsetsListener(
+                mSpyWindowInsetsListener);
         mWm.removeView(mSpyWindow);
         mSpyWindow = null;
     }
 
+    /** Dumps the state & the input latency metrics of the interceptor. */
+    @MainThread
+    void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("TaskViewInputInterceptor:");
+        String innerPrefix = prefix + "  ";
+        writer.print(innerPrefix);
+        writer.print("initialized=");
+        writer.print(mInitialized);
+        writer.print(", intercepting=");
+        writer.print(mIntercepting);
+        writer.print(", spyWindowAdded=");
+        writer.println(mSpyWindow != null);
+        writer.print(innerPrefix);
+        writer.print("touchableRegion=");
+        writer.println(mTouchableRegion);
+        mMetrics.dump(innerPrefix, writer);
+    }
+
+    @VisibleForTesting
+    InputInterceptionMetrics getMetrics() {
+        return mMetrics;
+    }
+
     private final class GestureSpyView extends View {
         private boolean mConsumingCurrentEventStream = false;
         private boolean mActionDownInsideTaskView = false;
@@ -173,6 +279,7 @@ public final class TaskViewInputInterceptor {
 
         @Override
         public boolean dispatchTouchEvent(MotionEvent event) {
+            mMetrics.onEventReceived(event);
             boolean justToggled = false;
             mGestureDetector.onTouchEvent(event);
 
@@ -207,6 +314,7 @@ public final class TaskViewInputInterceptor {
                 if (mConsumingCurrentEventStream) {
                     // Disable the propagation when consuming events.
                     mInputManager.pilferPointers(getViewRootImpl().getInputToken());
+                    mMetrics.onPointersPilfered(event);
 
                     if (justToggled) {
                         // When just toggled from DOWN to MOVE, dispatch a DOWN event as DOWN event
@@ -217,6 +325,7 @@ public final class TaskViewInputInterceptor {
                         cloneEvent.recycle();
                     }
                     TaskViewInputInterceptor.this.mHostActivity.dispatchTouchEvent(event);
+                    mMetrics.onDispatchedToHost(event);
                 }
             }
 
@@ -225,10 +334,17 @@ public final class TaskViewInputInterceptor {
                 if (mConsumingCurrentEventStream) {
                     // Disable the propagation when handling manually.
                     mInputManager.pilferPointers(getViewRootImpl().getInputToken());
+                    mMetrics.onPointersPilfered(event);
                     TaskViewInputInterceptor.this.mHostActivity.dispatchTouchEvent(event);
+                    mMetrics.onDispatchedToHost(event);
                 }
                 mConsumingCurrentEventStream = false;
             }
+
+            if (event.getAction() == MotionEvent.ACTION_UP
+                    || event.getAction() == MotionEvent.ACTION_CANCEL) {
+                mMetrics.onGestureEnded();
+            }
             return false;
         }
     }
@@ -243,6 +359,7 @@ public final class TaskViewInputInterceptor {
                         Log.d(TAG, "Long press captured for taskView: " + tv);
                     }
                     mInputManager.pilferPointers(mSpyWindow.getViewRootImpl().getInputToken());
+                    mMetrics.onLongPressCaptured(tv);
                     if (tv.getOnLongClickListener() != null) {
                         tv.getOnLongClickListener().onLongClick(tv);
                     }
@@ -17,20 +17,20 @@
 package com.android.car.carlauncher;
 
 import static android.app.ActivityTaskManager.INVALID_TASK_ID;
-import static android.app.WindowConfiguration.WINDOWING_MODE_MULTI_WINDOW;
 import static android.car.user.CarUserManager.USER_LIFECYCLE_EVENT_TYPE_SWITCHING;
 import static android.car.user.CarUserManager.USER_LIFECYCLE_EVENT_TYPE_UNLOCKED;
 
 import static com.android.car.carlauncher.CarLauncher.TAG;
-import static com.android.wm.shell.ShellTaskOrganizer.TASK_LISTENER_TYPE_FULLSCREEN;
+import static com.android.car.carlauncher.TaskEventMetrics.FULLSCREEN_TASK_LISTENER;
+import static com.android.car.carlauncher.TaskEventMetrics.ROOT_TASK_LISTENER;
+import static com.android.car.carlauncher.TaskEventMetrics.TASK_STACK_LISTENER;
 
+import android.annotation.MainThread;
 import android.annotation.NonNull;
 import android.annotation.Nullable;
 import android.app.Activity;
 import android.app.ActivityManager;
-import android.app.ActivityTaskManager;
 import android.app.Application.ActivityLifecycleCallbacks;
-import android.app.TaskInfo;
 import android.app.TaskStackListener;
 import android.car.Car;
 import android.car.app.CarActivityManager;
@@ -41,28 +41,26 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Bundle;
+import android.os.HandlerThread;
+import android.os.PatternMatcher;
 import android.os.UserManager;
+import android.util.ArrayMap;
+import android.util.ArraySet;
 import android.util.Log;
 import android.util.Slog;
 import android.view.SurfaceControl;
-import android.window.TaskAppearedInfo;
+import android.view.View;
 import android.window.WindowContainerTransaction;
 
 import com.android.car.carlauncher.taskstack.TaskStackChangeListeners;
 import com.android.internal.annotations.VisibleForTesting;
-import com.android.launcher3.icons.IconProvider;
 import com.android.wm.shell.ShellTaskOrganizer;
 import com.android.wm.shell.common.HandlerExecutor;
 import com.android.wm.shell.common.SyncTransactionQueue;
-import com.android.wm.shell.common.TransactionPool;
 import com.android.wm.shell.common.annotations.ShellMainThread;
-import com.android.wm.shell.fullscreen.FullscreenTaskListener;
-import com.android.wm.shell.startingsurface.StartingWindowController;
-import com.android.wm.shell.startingsurface.phone.PhoneStartingWindowTypeAlgorithm;
-import com.android.wm.shell.sysui.ShellCommandHandler;
-import com.android.wm.shell.sysui.ShellController;
 import com.android.wm.shell.sysui.ShellInit;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -76,6 +74,8 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 public final class TaskViewManager {
     static final boolean DBG = Log.isLoggable(TAG, Log.DEBUG);
+    /** Passed as the park timeout so that a lazily created task view is never parked. */
+    public static final long NO_PARKING = -1;
     private static final String SCHEME_PACKAGE = "package";
 
     private final AtomicReference<CarActivityManager> mCarActivityManagerRef =
@@ -84,10 +84,26 @@ public final class TaskViewManager {
     private final HandlerExecutor mShellExecutor;
     private final SyncTransactionQueue mSyncQueue;
     private final ShellTaskOrganizer mTaskOrganizer;
+    private final TaskOrganizerHub mTaskOrganizerHub;
+    private final CarConnectionHub mCarConnectionHub;
+    // The connection the task monitor is held for, it's shared with the other managers.
+    @ShellMainThread
+    private int mTaskMonitorConnection = CarConnectionHub.NO_CONNECTION;
+    private final ShellTaskOrganizer.TaskListener mFullscreenTaskListener;
+    private final CarFullscreenTaskMonitorListener mCarFullscreenTaskListener;
+    @ShellMainThread
+    private final TaskEventMetrics mTaskEventMetrics = new TaskEventMetrics();
     private TaskViewInputInterceptor mTaskViewInputInterceptor;
     private final int mHostTaskId;
     private final LinkedHashMap<Integer, ActivityManager.RunningTaskInfo> mLaunchRootStack =
             new LinkedHashMap<>();
+    // Runs the binder calls to CarActivityManager off the shell thread.
+    private final HandlerThread mTaskEventThread;
+    private final CarActivityManagerForwarder mCarActivityManagerForwarder;
+    @ShellMainThread
+    private final ControlledTaskRestartScheduler mRestartScheduler;
+    @ShellMainThread
+    private final TaskSnapshotCache mSnapshotCache;
 
     // All TaskView are bound to the Host Activity if it exists.
     @ShellMainThread
@@ -96,6 +112,14 @@ public final class TaskViewManager {
     private final List<SemiControlledCarTaskView> mSemiControlledTaskViews = new ArrayList<>();
     @ShellMainThread
     private LaunchRootCarTaskView mLaunchRootCarTaskView = null;
+    private final List<LazyCarTaskView> mLazyTaskViews = new ArrayList<>();
+    // The ControlledCarTaskViews to restart when a package they depend upon is replaced.
+    @ShellMainThread
+    private final ArrayMap<String, List<ControlledCarTaskView>> mDependingPackageTaskViews =
+            new ArrayMap<>();
+    // The package names mPackageBroadcastReceiver is registered for, it isn't registered if empty.
+    @ShellMainThread
+    private ArraySet<String> mRegisteredPackageNames = new ArraySet<>();
 
     private CarUserManager mCarUserManager;
     private Activity mContext;
@@ -121,14 +145,10 @@ public final class TaskViewManager {
                     // remains blank.
                     mSyncQueue.runInSync(t -> t.show(leash));
 
-                    CarActivityManager carAm = mCarActivityManagerRef.get();
-                    if (carAm != null) {
-                        carAm.onTaskAppeared(taskInfo);
-                        mLaunchRootStack.put(taskInfo.taskId, taskInfo);
-                    } else {
-                        Log.w(TAG, "CarActivityManager is null, skip onTaskAppeared: TaskInfo"
-                                + " = " + taskInfo);
-                    }
+                    // Replayed to CarActivityManager once it's ready if it isn't yet.
+                    mCarActivityManagerForwarder.onTaskAppeared(taskInfo);
+                    mLaunchRootStack.put(taskInfo.taskId, taskInfo);
+                    mTaskEventMetrics.onLaunchRootStackSizeChanged(mLaunchRootStack.size());
                 }
 
                 @Override
@@ -151,18 +171,12 @@ public final class TaskViewManager {
 
                     // Uncontrolled apps by default launch in the launch root so nothing needs to
                     // be done here for them.
-                    CarActivityManager carAm = mCarActivityManagerRef.get();
-                    if (carAm != null) {
-                        carAm.onTaskInfoChanged(taskInfo);
-                        if (taskInfo.isVisible && mLaunchRootStack.containsKey(taskInfo.taskId)) {
-                            // Remove the task and insert again so that it jumps to the end of
-                            // the queue.
-                            mLaunchRootStack.remove(taskInfo.taskId);
-                            mLaunchRootStack.put(taskInfo.taskId, taskInfo);
-                        }
-                    } else {
-                        Log.w(TAG, "CarActivityManager is null, skip onTaskInfoChanged: TaskInfo"
-                                + " = " + taskInfo);
+                    mCarActivityManagerForwarder.onTaskInfoChanged(taskInfo);
+                    if (taskInfo.isVisible && mLaunchRootStack.containsKey(taskInfo.taskId)) {
+                        // Remove the task and insert again so that it jumps to the end of
+                        // the queue.
+                        mLaunchRootStack.remove(taskInfo.taskId);
+                        mLaunchRootStack.put(taskInfo.taskId, taskInfo);
                     }
                 }
 
@@ -177,16 +191,11 @@ public final class TaskViewManager {
                         }
                     }
 
-                    CarActivityManager carAm = mCarActivityManagerRef.get();
-                    if (carAm != null) {
-                        carAm.onTaskVanished(taskInfo);
-                        if (mLaunchRootStack.containsKey(taskInfo.taskId)) {
-                            mLaunchRootStack.remove(taskInfo.taskId);
-                        }
-                    } else {
-                        Log.w(TAG, "CarActivityManager is null, skip onTaskAppeared: TaskInfo"
-                                + " = " + taskInfo);
+                    mCarActivityManagerForwarder.onTaskVanished(taskInfo);
+                    if (mLaunchRootStack.containsKey(taskInfo.taskId)) {
+                        mLaunchRootStack.remove(taskInfo.taskId);
                     }
+                    mTaskEventMetrics.onLaunchRootStackSizeChanged(mLaunchRootStack.size());
                 }
 
                 @Override
@@ -220,47 +229,50 @@ public final class TaskViewManager {
     private final TaskStackListener mTaskStackListener = new TaskStackListener() {
         @Override
         public void onTaskFocusChanged(int taskId, boolean focused) {
+            long startNanos = System.nanoTime();
             boolean hostFocused = taskId == mHostTaskId && focused;
             if (DBG) {
                 Log.d(TAG, "onTaskFocusChanged: taskId=" + taskId
                         + ", hostFocused=" + hostFocused);
             }
-            if (!hostFocused) {
-                return;
-            }
-
-            for (int i = mControlledTaskViews.size() - 1; i >= 0; --i) {
-                ControlledCarTaskView taskView = mControlledTaskViews.get(i);
-                if (taskView.getTaskId() == INVALID_TASK_ID) {
-                    // If the task in TaskView is crashed when host is in background,
-                    // We'd like to restart it when host becomes foreground and focused.
-                    taskView.startActivity();
+            if (hostFocused) {
+                for (int i = mControlledTaskViews.size() - 1; i >= 0; --i) {
+                    ControlledCarTaskView taskView = mControlledTaskViews.get(i);
+                    if (taskView.getTaskId() == INVALID_TASK_ID) {
+                        // If the task in TaskView is crashed when host is in background,
+                        // We'd like to restart it when host becomes foreground and focused.
+                        mRestartScheduler.requestRestart(taskView, "host focused");
+                    }
                 }
             }
+            mTaskEventMetrics.onEventHandled(TASK_STACK_LISTENER + ".onTaskFocusChanged", taskId,
+                    startNanos);
         }
 
         @Override
         public void onActivityRestartAttempt(ActivityManager.RunningTaskInfo task,
                 boolean homeTaskVisible, boolean clearedTask, boolean wasVisible) {
+            long startNanos = System.nanoTime();
             if (DBG) {
                 Log.d(TAG, "onActivityRestartAttempt: taskId=" + task.taskId
                         + ", homeTaskVisible=" + homeTaskVisible + ", wasVisible=" + wasVisible);
             }
-            if (mHostTaskId != task.taskId) {
-                return;
-            }
-            WindowContainerTransaction wct = new WindowContainerTransaction();
-            for (int i = mControlledTaskViews.size() - 1; i >= 0; --i) {
-                // showEmbeddedTasks() will restart the crashed tasks too.
-                mControlledTaskViews.get(i).showEmbeddedTask(wct);
-            }
-            if (mLaunchRootCarTaskView != null) {
-                mLaunchRootCarTaskView.showEmbeddedTask(wct);
-            }
-            for (int i = mSemiControlledTaskViews.size() - 1; i >= 0; --i) {
-                mSemiControlledTaskViews.get(i).showEmbeddedTask(wct);
+            if (mHostTaskId == task.taskId) {
+                WindowContainerTransaction wct = new WindowContainerTransaction();
+                for (int i = mControlledTaskViews.size() - 1; i >= 0; --i) {
+                    // showEmbeddedTasks() will restart the crashed tasks too.
+                    showEmbeddedTaskIfNotParked(mControlledTaskViews.get(i), wct);
+                }
+                if (mLaunchRootCarTaskView != null) {
+                    mLaunchRootCarTaskView.showEmbeddedTask(wct);
+                }
+                for (int i = mSemiControlledTaskViews.size() - 1; i >= 0; --i) {
+                    showEmbeddedTaskIfNotParked(mSemiControlledTaskViews.get(i), wct);
+                }
+                mSyncQueue.queue(wct);
             }
-            mSyncQueue.queue(wct);
+            mTaskEventMetrics.onEventHandled(TASK_STACK_LISTENER + ".onActivityRestartAttempt",
+                    task.taskId, startNanos);
         }
     };
 
@@ -277,7 +289,7 @@ public final class TaskViewManager {
             for (int i = mControlledTaskViews.size() - 1; i >= 0; --i) {
                 ControlledCarTaskView taskView = mControlledTaskViews.get(i);
                 if (taskView.getTaskId() == INVALID_TASK_ID) {
-                    taskView.startActivity();
+                    mRestartScheduler.requestRestart(taskView, "user unlocked");
                 }
             }
         }
@@ -286,7 +298,7 @@ public final class TaskViewManager {
         // So try to release the resource explicitly.
         if (event.getEventType() == USER_LIFECYCLE_EVENT_TYPE_SWITCHING
                 && mContext.getUserId() == event.getPreviousUserId()) {
-            release();
+            release(/* retainTasks= */ false);
         }
     };
 
@@ -295,68 +307,85 @@ public final class TaskViewManager {
         public void onReceive(Context context, Intent intent) {
             if (DBG) Log.d(TAG, "onReceive: intent=" + intent);
 
+            String packageName = intent.getData().getSchemeSpecificPart();
+            List<ControlledCarTaskView> taskViews = mDependingPackageTaskViews.get(packageName);
+            if (taskViews == null) {
+                return;
+            }
+            // The last frames may show the UI of the previous version.
+            for (int i = taskViews.size() - 1; i >= 0; --i) {
+                taskViews.get(i).invalidateSnapshot();
+            }
+            if (Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction())) {
+                return;
+            }
+            // Even in the background, so that the update isn't counted as crashes.
+            for (int i = taskViews.size() - 1; i >= 0; --i) {
+                mRestartScheduler.onPackageReplaced(taskViews.get(i));
+            }
             if (!isHostVisible()) {
                 return;
             }
-
-            String packageName = intent.getData().getSchemeSpecificPart();
-            for (int i = mControlledTaskViews.size() - 1; i >= 0; --i) {
-                ControlledCarTaskView taskView = mControlledTaskViews.get(i);
-                if (taskView.getTaskId() == INVALID_TASK_ID
-                        && taskView.getDependingPackageNames().contains(packageName)) {
-                    taskView.startActivity();
+            for (int i = taskViews.size() - 1; i >= 0; --i) {
+                ControlledCarTaskView taskView = taskViews.get(i);
+                if (taskView.getTaskId() == INVALID_TASK_ID) {
+                    mRestartScheduler.requestRestart(taskView, "package replaced");
                 }
             }
         }
     };
 
+    /**
+     * Creates a {@link TaskViewManager} for the task views of {@code context}, which can be on any
+     * display. The {@link ShellTaskOrganizer} and the shell infrastructure around it are shared
+     * with the other {@link TaskViewManager}s of the process.
+     */
     public TaskViewManager(Activity context, HandlerExecutor handlerExecutor) {
-        this(context, handlerExecutor, new ShellTaskOrganizer(handlerExecutor),
-                new TransactionPool(), new ShellCommandHandler(), new ShellInit(handlerExecutor));
-    }
-
-    private TaskViewManager(Activity context, HandlerExecutor handlerExecutor,
-                    ShellTaskOrganizer taskOrganizer, TransactionPool transactionPool,
-                    ShellCommandHandler shellCommandHandler, ShellInit shellinit) {
-        this(context, handlerExecutor, taskOrganizer,
-                new SyncTransactionQueue(transactionPool, handlerExecutor),
-                shellinit,
-                new StartingWindowController(context, shellinit,
-                        new ShellController(shellinit, shellCommandHandler, handlerExecutor),
-                        taskOrganizer,
-                        handlerExecutor,
-                        new PhoneStartingWindowTypeAlgorithm(),
-                        new IconProvider(context),
-                        transactionPool));
+        this(context, handlerExecutor, TaskOrganizerHub.getInstance(context, handlerExecutor),
+                CarConnectionHub.getInstance(context));
     }
 
     @VisibleForTesting
     TaskViewManager(Activity context, HandlerExecutor handlerExecutor,
                     ShellTaskOrganizer shellTaskOrganizer, SyncTransactionQueue syncQueue,
-                    ShellInit shellInit, StartingWindowController startingWindowController) {
+                    ShellInit shellInit) {
+        this(context, handlerExecutor, new TaskOrganizerHub(shellTaskOrganizer, syncQueue,
+                shellInit, handlerExecutor, /* shared= */ false),
+                new CarConnectionHub(context, Runnable::run, /* eventHandler= */ null));
+    }
+
+    private TaskViewManager(Activity context, HandlerExecutor handlerExecutor,
+            TaskOrganizerHub taskOrganizerHub, CarConnectionHub carConnectionHub) {
         if (DBG) Slog.d(TAG, "TaskViewManager(): " + context);
         mContext = context;
         mShellExecutor = handlerExecutor;
-        mTaskOrganizer = shellTaskOrganizer;
+        mTaskOrganizerHub = taskOrganizerHub;
+        mCarConnectionHub = carConnectionHub;
+        mTaskOrganizer = taskOrganizerHub.getTaskOrganizer();
         mHostTaskId = mContext.getTaskId();
-        mSyncQueue = syncQueue;
+        mSyncQueue = taskOrganizerHub.getSyncQueue();
         mTaskViewInputInterceptor = new TaskViewInputInterceptor(context, this);
+        mRestartScheduler = new ControlledTaskRestartScheduler(handlerExecutor);
+        mSnapshotCache = TaskSnapshotCache.getInstance(context);
+        mTaskEventThread = new HandlerThread(TAG + "-TaskEvents");
+        mTaskEventThread.start();
+        mCarActivityManagerForwarder = new CarActivityManagerForwarder(mCarActivityManagerRef,
+                new HandlerExecutor(mTaskEventThread.getThreadHandler()), mTaskEventMetrics,
+                mShellExecutor);
+        mCarFullscreenTaskListener = new CarFullscreenTaskMonitorListener(
+                mCarActivityManagerForwarder, mSyncQueue);
+        mFullscreenTaskListener = mTaskEventMetrics.instrument(FULLSCREEN_TASK_LISTENER,
+                mCarFullscreenTaskListener);
 
         initCar();
-        shellInit.init();
-        initTaskOrganizer(mCarActivityManagerRef);
+        mTaskOrganizerHub.addHost(this);
         mContext.registerActivityLifecycleCallbacks(mActivityLifecycleCallbacks);
     }
 
-    private void initCar() {
-        Car.createCar(/* context= */ mContext, /* handler= */ null,
-                Car.CAR_WAIT_TIMEOUT_WAIT_FOREVER,
-                (car, ready) -> {
-                    if (!ready) {
-                        Log.w(TAG, "CarService looks crashed");
-                        mCarActivityManagerRef.set(null);
-                        return;
-                    }
+    private final CarConnectionHub.Listener mCarConnectionListener =
+            new CarConnectionHub.Listener() {
+                @Override
+                public void onCarReady(Car car) {
                     setCarUserManager((CarUserManager) car.getCarManager(Car.CAR_USER_SERVICE));
                     UserLifecycleEventFilter filter = new UserLifecycleEventFilter.Builder()
                             .addEventType(USER_LIFECYCLE_EVENT_TYPE_UNLOCKED)
@@ -365,16 +394,27 @@ public final class TaskViewManager {
                             mUserLifecycleListener);
                     CarActivityManager carAM = (CarActivityManager) car.getCarManager(
                             Car.CAR_ACTIVITY_SERVICE);
-                    mCarActivityManagerRef.set(carAM);
 
-                    carAM.registerTaskMonitor();
-                });
+                    // A stale connection is ignored, its registration was lost with it.
+                    mCarConnectionHub.releaseTaskMonitor(mTaskMonitorConnection);
+                    mTaskMonitorConnection = mCarConnectionHub.acquireTaskMonitor();
+                    // The car connects asynchronously, so the organizer may have reported tasks
+                    // already. They are replayed to carAM.
+                    mCarActivityManagerForwarder.setCarActivityManager(carAM);
+                }
 
-        TaskStackChangeListeners.getInstance().registerTaskStackListener(mTaskStackListener);
+                @Override
+                public void onCarLost() {
+                    mCarActivityManagerForwarder.setCarActivityManager(null);
+                }
+            };
 
-        IntentFilter packageIntentFilter = new IntentFilter(Intent.ACTION_PACKAGE_REPLACED);
-        packageIntentFilter.addDataScheme(SCHEME_PACKAGE);
-        mContext.registerReceiver(mPackageBroadcastReceiver, packageIntentFilter);
+    private void initCar() {
+        mCarConnectionHub.addListener(mShellExecutor, mCarConnectionListener);
+
+        // The focus changes are bursty during app launches & only the latest state matters.
+        TaskStackChangeListeners.getInstance().registerCoalescingTaskStackListener(
+                mTaskStackListener);
     }
 
     // TODO(b/239958124A): Remove this method when unit tests for TaskViewManager have been added.
@@ -385,12 +425,35 @@ public final class TaskViewManager {
         mCarUserManager = carUserManager;
     }
 
-    private void initTaskOrganizer(AtomicReference<CarActivityManager> carActivityManagerRef) {
-        FullscreenTaskListener fullscreenTaskListener = new CarFullscreenTaskMonitorListener(
-                carActivityManagerRef, mSyncQueue);
-        mTaskOrganizer.addListenerForType(fullscreenTaskListener, TASK_LISTENER_TYPE_FULLSCREEN);
-        List<TaskAppearedInfo> taskAppearedInfos = mTaskOrganizer.registerOrganizer();
-        cleanUpExistingTaskViewTasks(taskAppearedInfos);
+    /** Returns the id of the display the task views of this manager are on. */
+    int getDisplayId() {
+        return mContext.getDisplayId();
+    }
+
+    /**
+     * Returns the listener of the fullscreen tasks which {@link TaskOrganizerHub} routes to this
+     * manager.
+     */
+    ShellTaskOrganizer.TaskListener getFullscreenTaskListener() {
+        return mFullscreenTaskListener;
+    }
+
+    /**
+     * Takes over a fullscreen task which {@link TaskOrganizerHub} hands over from another
+     * manager. The task is alive, so it isn't reported as appeared.
+     */
+    @ShellMainThread
+    void adoptFullscreenTask(ActivityManager.RunningTaskInfo taskInfo, SurfaceControl leash) {
+        mCarFullscreenTaskListener.adoptTask(taskInfo, leash);
+    }
+
+    /**
+     * Gives up a fullscreen task which {@link TaskOrganizerHub} hands over to another manager.
+     * The task is alive, so it isn't reported as vanished.
+     */
+    @ShellMainThread
+    void releaseFullscreenTask(ActivityManager.RunningTaskInfo taskInfo) {
+        mCarFullscreenTaskListener.releaseTask(taskInfo);
     }
 
     /**
@@ -406,18 +469,129 @@ public final class TaskViewManager {
             Executor callbackExecutor,
             ControlledCarTaskViewConfig controlledCarTaskViewConfig,
             ControlledCarTaskViewCallbacks taskViewCallbacks) {
+        mShellExecutor.execute(() -> createControlledCarTaskViewNow(callbackExecutor,
+                controlledCarTaskViewConfig, taskViewCallbacks));
+    }
+
+    /**
+     * Registers a {@link ControlledCarTaskView} which is only created, and its activity started,
+     * once {@code container} becomes visible. {@link ControlledCarTaskViewCallbacks} is expected
+     * to add the {@link ControlledCarTaskView} to {@code container} when it's created.
+     *
+     * @param parkTimeoutMs how long {@code container} needs to stay hidden before the embedded task
+     *                      is parked, i.e. hidden until {@code container} is visible again, or
+     *                      {@link #NO_PARKING}.
+     * @see #createControlledCarTaskView(Executor, ControlledCarTaskViewConfig,
+     * ControlledCarTaskViewCallbacks)
+     */
+    @MainThread
+    public void createControlledCarTaskViewLazily(
+            View container,
+            Executor callbackExecutor,
+            ControlledCarTaskViewConfig controlledCarTaskViewConfig,
+            ControlledCarTaskViewCallbacks taskViewCallbacks,
+            long parkTimeoutMs) {
+        mLazyTaskViews.add(new LazyCarTaskView(container, mShellExecutor, parkTimeoutMs,
+                () -> createControlledCarTaskViewNow(callbackExecutor,
+                        controlledCarTaskViewConfig, taskViewCallbacks),
+                this::setEmbeddedTaskParked));
+    }
+
+    @ShellMainThread
+    private ControlledCarTaskView createControlledCarTaskViewNow(
+            Executor callbackExecutor,
+            ControlledCarTaskViewConfig controlledCarTaskViewConfig,
+            ControlledCarTaskViewCallbacks taskViewCallbacks) {
+        ControlledCarTaskView taskView = new ControlledCarTaskView(mContext, mTaskOrganizer,
+                mSyncQueue, callbackExecutor, controlledCarTaskViewConfig, taskViewCallbacks,
+                mContext.getSystemService(UserManager.class), this);
+        mControlledTaskViews.add(taskView);
+        mRestartScheduler.add(taskView);
+        addDependingPackageNames(taskView);
+        updatePackageBroadcastReceiver();
+
+        if (controlledCarTaskViewConfig.mCaptureGestures
+                || controlledCarTaskViewConfig.mCaptureLongPress) {
+            mTaskViewInputInterceptor.init();
+        }
+        return taskView;
+    }
+
+    @ShellMainThread
+    private void setEmbeddedTaskParked(CarTaskView taskView, boolean parked) {
+        WindowContainerTransaction wct = new WindowContainerTransaction();
+        if (parked) {
+            if (taskView instanceof ControlledCarTaskView) {
+                ((ControlledCarTaskView) taskView).captureSnapshot();
+            }
+            taskView.parkEmbeddedTask(wct);
+        } else {
+            // For a ControlledCarTaskView, this also restarts the task if it crashed meanwhile.
+            taskView.showEmbeddedTask(wct);
+        }
+        mSyncQueue.queue(wct);
+    }
+
+    @ShellMainThread
+    private static void showEmbeddedTaskIfNotParked(CarTaskView taskView,
+            WindowContainerTransaction wct) {
+        if (!taskView.isEmbeddedTaskParked()) {
+            taskView.showEmbeddedTask(wct);
+        }
+    }
+
+    /**
+     * Refreshes the package names the {@link ControlledCarTaskView}s depend upon. It should be
+     * called when the result of {@link ControlledCarTaskViewCallbacks#getDependingPackageNames()}
+     * changes, as it is only queried when the {@link ControlledCarTaskView} is created otherwise.
+     */
+    public void refreshDependingPackageNames() {
         mShellExecutor.execute(() -> {
-            ControlledCarTaskView taskView = new ControlledCarTaskView(mContext, mTaskOrganizer,
-                    mSyncQueue, callbackExecutor, controlledCarTaskViewConfig, taskViewCallbacks,
-                    mContext.getSystemService(UserManager.class), this);
-            mControlledTaskViews.add(taskView);
-
-            if (controlledCarTaskViewConfig.mCaptureGestures
-                    || controlledCarTaskViewConfig.mCaptureLongPress) {
-                mTaskViewInputInterceptor.init();
+            mDependingPackageTaskViews.clear();
+            for (int i = 0; i < mControlledTaskViews.size(); i++) {
+                addDependingPackageNames(mControlledTaskViews.get(i));
             }
+            updatePackageBroadcastReceiver();
         });
+    }
+
+    @ShellMainThread
+    private void addDependingPackageNames(ControlledCarTaskView taskView) {
+        for (String packageName : taskView.getDependingPackageNames()) {
+            List<ControlledCarTaskView> taskViews = mDependingPackageTaskViews.get(packageName);
+            if (taskViews == null) {
+                taskViews = new ArrayList<>();
+                mDependingPackageTaskViews.put(packageName, taskViews);
+            }
+            taskViews.add(taskView);
+        }
+    }
 
+    /**
+     * (Re)registers {@link #mPackageBroadcastReceiver} for the depending package names only, so
+     * that the replacements of the other packages, e.g. during bulk app updates, don't wake it.
+     */
+    @ShellMainThread
+    private void updatePackageBroadcastReceiver() {
+        ArraySet<String> packageNames = new ArraySet<>(mDependingPackageTaskViews.keySet());
+        if (packageNames.equals(mRegisteredPackageNames)) {
+            return;
+        }
+        if (!mRegisteredPackageNames.isEmpty()) {
+            mContext.unregisterReceiver(mPackageBroadcastReceiver);
+        }
+        mRegisteredPackageNames = packageNames;
+        if (packageNames.isEmpty()) {
+            return;
+        }
+        IntentFilter packageIntentFilter = new IntentFilter(Intent.ACTION_PACKAGE_REPLACED);
+        packageIntentFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageIntentFilter.addDataScheme(SCHEME_PACKAGE);
+        for (int i = 0; i < packageNames.size(); i++) {
+            packageIntentFilter.addDataSchemeSpecificPart(packageNames.valueAt(i),
+                    PatternMatcher.PATTERN_LITERAL);
+        }
+        mContext.registerReceiver(mPackageBroadcastReceiver, packageIntentFilter);
     }
 
     /**
@@ -434,7 +608,8 @@ public final class TaskViewManager {
                 throw new IllegalStateException("Cannot create more than one launch root task");
             }
             mLaunchRootCarTaskView = new LaunchRootCarTaskView(mContext, mTaskOrganizer,
-                    mSyncQueue, callbackExecutor, taskViewCallbacks, mRootTaskListener);
+                    mSyncQueue, callbackExecutor, taskViewCallbacks,
+                    mTaskEventMetrics.instrument(ROOT_TASK_LISTENER, mRootTaskListener));
         });
     }
 
@@ -447,22 +622,44 @@ public final class TaskViewManager {
      */
     public void createSemiControlledTaskView(Executor callbackExecutor,
             SemiControlledCarTaskViewCallbacks taskViewCallbacks) {
-        mShellExecutor.execute(() -> {
-            if (mLaunchRootCarTaskView == null) {
-                throw new IllegalStateException("Cannot create a semi controlled taskview without a"
-                        + " launch root taskview");
-            }
-            SemiControlledCarTaskView taskView = new SemiControlledCarTaskView(mContext,
-                    mTaskOrganizer, mSyncQueue, callbackExecutor, taskViewCallbacks);
-            mSemiControlledTaskViews.add(taskView);
-        });
+        mShellExecutor.execute(() -> createSemiControlledTaskViewNow(callbackExecutor,
+                taskViewCallbacks));
+    }
+
+    /**
+     * Registers a {@link SemiControlledCarTaskView} which is only created once {@code container}
+     * becomes visible, see {@link #createControlledCarTaskViewLazily}.
+     */
+    @MainThread
+    public void createSemiControlledTaskViewLazily(View container, Executor callbackExecutor,
+            SemiControlledCarTaskViewCallbacks taskViewCallbacks, long parkTimeoutMs) {
+        mLazyTaskViews.add(new LazyCarTaskView(container, mShellExecutor, parkTimeoutMs,
+                () -> createSemiControlledTaskViewNow(callbackExecutor, taskViewCallbacks),
+                this::setEmbeddedTaskParked));
+    }
+
+    @ShellMainThread
+    private SemiControlledCarTaskView createSemiControlledTaskViewNow(Executor callbackExecutor,
+            SemiControlledCarTaskViewCallbacks taskViewCallbacks) {
+        if (mLaunchRootCarTaskView == null) {
+            throw new IllegalStateException("Cannot create a semi controlled taskview without a"
+                    + " launch root taskview");
+        }
+        SemiControlledCarTaskView taskView = new SemiControlledCarTaskView(mContext,
+                mTaskOrganizer, mSyncQueue, callbackExecutor, taskViewCallbacks);
+        mSemiControlledTaskViews.add(taskView);
+        return taskView;
     }
 
     /**
      * Releases {@link TaskViewManager} and unregisters the underlying {@link ShellTaskOrganizer}.
      * It also removes all TaskViews which are created by this {@link TaskViewManager}.
+     *
+     * @param retainTasks whether the tasks of the {@link ControlledCarTaskView}s are kept alive by
+     *                    {@link TaskOrganizerHub} for the {@link TaskViewManager} of the recreated
+     *                    host to adopt them.
      */
-    private void release() {
+    private void release(boolean retainTasks) {
         mShellExecutor.execute(() -> {
             if (DBG) Slog.d(TAG, "TaskViewManager.release");
 
@@ -470,16 +667,28 @@ public final class TaskViewManager {
                 mCarUserManager.removeListener(mUserLifecycleListener);
             }
             TaskStackChangeListeners.getInstance().unregisterTaskStackListener(mTaskStackListener);
-            mContext.unregisterReceiver(mPackageBroadcastReceiver);
+            mDependingPackageTaskViews.clear();
+            updatePackageBroadcastReceiver();
+
+            mCarActivityManagerForwarder.setCarActivityManager(null);
+            // Only unregistered once the other managers released it too.
+            mCarConnectionHub.releaseTaskMonitor(mTaskMonitorConnection);
+            mTaskMonitorConnection = CarConnectionHub.NO_CONNECTION;
+            mCarConnectionHub.removeListener(mCarConnectionListener);
 
-            CarActivityManager carAM = mCarActivityManagerRef.get();
-            if (carAM != null) {
-                carAM.unregisterTaskMonitor();
-                mCarActivityManagerRef.set(null);
+            for (int i = mLazyTaskViews.size() - 1; i >= 0; --i) {
+                mLazyTaskViews.get(i).release();
             }
+            mLazyTaskViews.clear();
 
+            mRestartScheduler.clear();
             for (int i = mControlledTaskViews.size() - 1; i >= 0; --i) {
-                mControlledTaskViews.get(i).release();
+                ControlledCarTaskView taskView = mControlledTaskViews.get(i);
+                if (retainTasks) {
+                    mTaskOrganizerHub.retainTask(taskView.getConfig().mActivityIntent,
+                            getDisplayId(), taskView);
+                }
+                taskView.release();
             }
             mControlledTaskViews.clear();
 
@@ -494,11 +703,63 @@ public final class TaskViewManager {
             }
 
             mContext.unregisterActivityLifecycleCallbacks(mActivityLifecycleCallbacks);
-            mTaskOrganizer.unregisterOrganizer();
+            mTaskOrganizerHub.removeHost(this);
             mTaskViewInputInterceptor.release();
+            mTaskEventThread.quitSafely();
         });
     }
 
+    /**
+     * Requests the activity of the given {@link ControlledCarTaskView} to be (re)started through
+     * the {@link ControlledTaskRestartScheduler}.
+     */
+    @ShellMainThread
+    void requestRestart(ControlledCarTaskView taskView, String reason) {
+        mRestartScheduler.requestRestart(taskView, reason);
+    }
+
+    /**
+     * Returns whether the task of a {@link ControlledCarTaskView} like {@code taskView} was
+     * retained when the previous host was released.
+     */
+    @ShellMainThread
+    boolean hasRetainedTask(ControlledCarTaskView taskView) {
+        return mTaskOrganizerHub.hasRetainedTask(taskView.getConfig().mActivityIntent,
+                getDisplayId());
+    }
+
+    /**
+     * Moves the task retained for a {@link ControlledCarTaskView} like {@code taskView} into it.
+     *
+     * @return whether there was such a retained task.
+     */
+    @ShellMainThread
+    boolean adoptRetainedTask(ControlledCarTaskView taskView) {
+        return mTaskOrganizerHub.adoptRetainedTask(taskView.getConfig().mActivityIntent,
+                getDisplayId(), taskView);
+    }
+
+    @ShellMainThread
+    TaskSnapshotCache getSnapshotCache() {
+        return mSnapshotCache;
+    }
+
+    @ShellMainThread
+    void onControlledTaskAppeared(ControlledCarTaskView taskView) {
+        mRestartScheduler.onTaskAppeared(taskView);
+    }
+
+    @ShellMainThread
+    void onControlledTaskVanished(ControlledCarTaskView taskView) {
+        mRestartScheduler.onTaskVanished(taskView);
+    }
+
+    /** Stops restarting {@code taskView}, so that its task removal isn't counted as a crash. */
+    @ShellMainThread
+    void onControlledTaskViewReleased(ControlledCarTaskView taskView) {
+        mRestartScheduler.remove(taskView);
+    }
+
     boolean isHostVisible() {
         // This code relies on Activity#isVisibleForAutofill() instead of maintaining a custom
         // activity state.
@@ -518,7 +779,15 @@ public final class TaskViewManager {
                 public void onActivityResumed(@NonNull Activity activity) {}
 
                 @Override
-                public void onActivityPaused(@NonNull Activity activity) {}
+                public void onActivityPaused(@NonNull Activity activity) {
+                    // The embedded tasks are still visible, their last frame is captured to be
+                    // shown while they are restarted, if they need to.
+                    mShellExecutor.execute(() -> {
+                        for (int i = mControlledTaskViews.size() - 1; i >= 0; --i) {
+                            mControlledTaskViews.get(i).captureSnapshot();
+                        }
+                    });
+                }
 
                 @Override
                 public void onActivityStopped(@NonNull Activity activity) {}
@@ -529,20 +798,40 @@ public final class TaskViewManager {
 
                 @Override
                 public void onActivityDestroyed(@NonNull Activity activity) {
-                    release();
+                    // The controlled tasks are kept alive when the host is recreated, e.g. on a
+                    // theme or density change, instead of being restarted.
+                    release(/* retainTasks= */ activity.isChangingConfigurations());
                 }
             };
 
-    private static void cleanUpExistingTaskViewTasks(List<TaskAppearedInfo> taskAppearedInfos) {
-        ActivityTaskManager atm = ActivityTaskManager.getInstance();
-        for (TaskAppearedInfo taskAppearedInfo : taskAppearedInfos) {
-            TaskInfo taskInfo = taskAppearedInfo.getTaskInfo();
-            // Only TaskView tasks have WINDOWING_MODE_MULTI_WINDOW.
-            if (taskInfo.getWindowingMode() == WINDOWING_MODE_MULTI_WINDOW) {
-                if (DBG) Slog.d(TAG, "Found the dangling task, removing: " + taskInfo.taskId);
-                atm.removeTask(taskInfo.taskId);
-            }
-        }
+    /** Dumps the state of the {@link TaskViewManager} and of the task views it manages. */
+    public void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("TaskViewManager:");
+        String innerPrefix = prefix + "  ";
+        writer.print(innerPrefix);
+        writer.print("hostTaskId=");
+        writer.print(mHostTaskId);
+        writer.print(", displayId=");
+        writer.print(getDisplayId());
+        writer.print(", controlledTaskViews=");
+        writer.print(mControlledTaskViews.size());
+        writer.print(", semiControlledTaskViews=");
+        writer.print(mSemiControlledTaskViews.size());
+        writer.print(", lazyTaskViews=");
+        writer.print(mLazyTaskViews.size());
+        writer.print(", launchRootTaskView=");
+        writer.print(mLaunchRootCarTaskView != null);
+        writer.print(", launchRootStackSize=");
+        writer.print(mLaunchRootStack.size());
+        writer.print(", dependingPackages=");
+        writer.println(mRegisteredPackageNames);
+        mTaskOrganizerHub.dump(innerPrefix, writer);
+        mCarConnectionHub.dump(innerPrefix, writer);
+        mRestartScheduler.dump(innerPrefix, writer);
+        mSnapshotCache.dump(innerPrefix, writer);
+        mTaskEventMetrics.dump(innerPrefix, writer);
+        mTaskViewInputInterceptor.dump(innerPrefix, writer);
     }
 
     @VisibleForTesting
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher.homescreen;
+
+import android.os.Trace;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chooses which of the {@link HomeCardInterface.Model}s of a card is displayed.
+ *
+ * <p>The models declare their {@link Policy}, otherwise they have the default priority and
+ * aren't sticky. Among the models with content, i.e. a card header, the one with the highest
+ * priority is displayed, and between models of the same priority the one updated last.
+ * A sticky model stays displayed until it has no content or a model of a higher priority has
+ * content.
+ *
+ * <p>The models with content are kept ordered, so that each update re-arbitrates in O(log n).
+ * The changes of the displayed model are traced.
+ */
+@MainThread
+public final class CardModelArbiter {
+    private static final String TAG = "CardModelArbiter";
+
+    /** The priority of the models which don't declare a {@link Policy}. */
+    public static final int PRIORITY_DEFAULT = 0;
+    /** The priority of the models which take over the card, e.g. an ongoing call. */
+    public static final int PRIORITY_HIGH = 100;
+
+    /** Declares how a model is arbitrated. */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.TYPE)
+    @Inherited
+    public @interface Policy {
+        /** The models of a higher priority are displayed first. */
+        int priority() default PRIORITY_DEFAULT;
+
+        /**
+         * Whether the model stays displayed when a model of the same priority is updated with
+         * content.
+         */
+        boolean sticky() default false;
+    }
+
+    // The policies by model class, the models without a policy are mapped to the default one.
+    private static final Map<Class<?>, Policy> sPolicies = new ConcurrentHashMap<>();
+    private static final Policy DEFAULT_POLICY = DefaultPolicy.class.getAnnotation(Policy.class);
+
+    // From the highest priority and the latest update.
+    private static final Comparator<Entry> ORDER = Comparator
+            .comparingInt((Entry entry) -> -entry.mPriority)
+            .thenComparingLong(entry -> -entry.mUpdateSequence);
+
+    private final String mName;
+    private final Map<HomeCardInterface.Model, Entry> mEntries = new ArrayMap<>();
+    private final TreeSet<Entry> mModelsWithContent = new TreeSet<>(ORDER);
+    @Nullable
+    private Entry mWinner;
+    private long mUpdateSequence;
+
+    /**
+     * @param name identifies the card in the traces
+     */
+    public CardModelArbiter(String name) {
+        mName = name;
+    }
+
+    /**
+     * Re-arbitrates after {@code model} was updated.
+     *
+     * @return whether the card must be updated, i.e. the displayed model changed or was updated
+     */
+    public boolean onModelUpdated(HomeCardInterface.Model model) {
+        Entry entry = mEntries.get(model);
+        if (entry == null) {
+            entry = new Entry(model, getPolicy(model.getClass()));
+            mEntries.put(model, entry);
+        }
+        // Removed before its sequence changes, since it's part of the ordering.
+        if (entry.mHasContent) {
+            mModelsWithContent.remove(entry);
+        }
+        entry.mHasContent = model.getCardHeader() != null;
+        if (entry.mHasContent) {
+            entry.mUpdateSequence = ++mUpdateSequence;
+            mModelsWithContent.add(entry);
+        }
+
+        Entry winner = mModelsWithContent.isEmpty() ? null : mModelsWithContent.first();
+        if (winner != null && mWinner != null && mWinner.mHasContent && mWinner.mSticky
+                && mWinner.mPriority >= winner.mPriority) {
+            winner = mWinner;
+        }
+        if (winner != mWinner) {
+            traceWinnerChange(mWinner, winner);
+            mWinner = winner;
+            return true;
+        }
+        return winner != null && winner == entry;
+    }
+
+    /** Returns the model to display, or {@code null} if no model has content. */
+    @Nullable
+    public HomeCardInterface.Model getDisplayedModel() {
+        return mWinner == null ? null : mWinner.mModel;
+    }
+
+    /** Forgets the models, e.g. once they are destroyed. */
+    public void clear() {
+        mEntries.clear();
+        mModelsWithContent.clear();
+        mWinner = null;
+    }
+
+    private void traceWinnerChange(@Nullable Entry previous, @Nullable Entry winner) {
+        boolean debug = Log.isLoggable(TAG, Log.DEBUG);
+        if (!debug && !Trace.isEnabled()) {
+            return;
+        }
+        String change = mName + ": " + getName(previous) + " -> " + getName(winner);
+        if (debug) {
+            Log.d(TAG, change);
+        }
+        Trace.beginSection(change);
+        Trace.endSection();
+    }
+
+    private static String getName(@Nullable Entry entry) {
+        return entry == null ? "none" : entry.mModel.getClass().getSimpleName();
+    }
+
+    private static Policy getPolicy(Class<?> modelClass) {
+        return sPolicies.computeIfAbsent(modelClass, c -> {
+            Policy policy = c.getAnnotation(Policy.class);
+            return policy == null ? DEFAULT_POLICY : policy;
+        });
+    }
+
+    private static final class Entry {
+        final HomeCardInterface.Model mModel;
+        final int mPriority;
+        final boolean mSticky;
+        boolean mHasContent;
+        long mUpdateSequence;
+
+        Entry(HomeCardInterface.Model model, Policy policy) {
+            mModel = model;
+            mPriority = policy.priority();
+            mSticky = policy.sticky();
+        }
+    }
+
+    @Policy
+    private static final class DefaultPolicy {}
+}
@@ -16,9 +16,14 @@
 
 package com.android.car.carlauncher.homescreen;
 
+import android.content.pm.ActivityInfo;
+import android.content.res.Configuration;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
+import android.text.TextUtils;
+import android.util.Log;
 import android.util.Size;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -27,6 +32,7 @@ import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import androidx.collection.ArraySet;
 import androidx.fragment.app.Fragment;
 
 import com.android.car.apps.common.CrossfadeImageView;
@@ -36,9 +42,13 @@ import com.android.car.carlauncher.homescreen.ui.CardHeader;
 import com.android.car.carlauncher.homescreen.ui.DescriptiveTextView;
 import com.android.car.carlauncher.homescreen.ui.DescriptiveTextWithControlsView;
 import com.android.car.carlauncher.homescreen.ui.TextBlockView;
+import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.ArrayUtils;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 /**
  * Abstract class for a {@link Fragment} that implements the Home App's View interface.
  *
@@ -48,11 +58,47 @@ import com.android.internal.util.ArrayUtils;
  * {@link DescriptiveTextWithControlsView}: card_content_descriptive_text, card_content_button_trio
  * {@link DescriptiveTextView}: card_content_descriptive_text, card_content_tap_for_more_text
  * {@link TextBlockView}: card_content_text_block, card_content_tap_for_more_text
+ *
+ * The updates can be called from any thread. Only the latest header and content received within
+ * a frame are applied, once, on the next Choreographer frame.
  */
 public class HomeCardFragment extends Fragment implements HomeCardInterface.View {
 
     private static final String TAG = "HomeFragment";
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
     private HomeCardInterface.Presenter mPresenter;
+    // Whether the presenter was told that the view is created, it's kept across view recreations.
+    private boolean mPresenterStarted;
+    // The configuration the views were inflated with.
+    private Configuration mInflatedConfiguration;
+    private boolean mReinflatePending;
+    // The last header & content shown, which are rebound when the views are re-inflated.
+    private CardHeader mHeader;
+    private CardContent mContent;
+    private boolean mCardHidden;
+    // Whether mContent is bound to the current views.
+    private boolean mContentBound;
+    // The content views shown while binding a content, which hideAllViews() leaves visible.
+    private final ArraySet<View> mShownContentViews = new ArraySet<>();
+    private int mUnchangedUpdateCount;
+    // The updates received since the last frame, only the latest ones are applied.
+    private final Object mPendingLock = new Object();
+    @GuardedBy("mPendingLock")
+    private CardHeader mPendingHeader;
+    @GuardedBy("mPendingLock")
+    private CardContent mPendingContent;
+    @GuardedBy("mPendingLock")
+    private boolean mPendingHide;
+    @GuardedBy("mPendingLock")
+    private boolean mFrameScheduled;
+    @GuardedBy("mPendingLock")
+    private Choreographer mChoreographer;
+    @GuardedBy("mPendingLock")
+    private int mUpdateCount;
+    @GuardedBy("mPendingLock")
+    private int mSkippedUpdateCount;
+    private final Choreographer.FrameCallback mFrameCallback =
+            frameTimeNanos -> applyPendingUpdates();
     private Size mSize;
     private View mCardBackground;
     private CrossfadeImageView mCardBackgroundImage;
@@ -87,9 +133,21 @@ public class HomeCardFragment extends Fragment implements HomeCardInterface.View
         mPresenter = presenter;
     }
 
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        synchronized (mPendingLock) {
+            mChoreographer = Choreographer.getInstance();
+            if (mPendingHeader != null || mPendingContent != null || mPendingHide) {
+                scheduleFrameLocked();
+            }
+        }
+    }
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
             Bundle savedInstanceState) {
+        mInflatedConfiguration = new Configuration(getResources().getConfiguration());
         mRootView = inflater.inflate(R.layout.card_fragment, container, false);
         mCardTitle = mRootView.findViewById(R.id.card_name);
         mCardIcon = mRootView.findViewById(R.id.card_icon);
@@ -99,16 +157,103 @@ public class HomeCardFragment extends Fragment implements HomeCardInterface.View
     @Override
     public void onViewCreated(View view, Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
-        mPresenter.onViewCreated();
         mRootView.setOnClickListener(v -> mPresenter.onViewClicked(v));
+        if (!mPresenterStarted) {
+            mPresenterStarted = true;
+            mPresenter.onViewCreated();
+            return;
+        }
+        // The views were re-inflated, the models are still alive and won't resend their state.
+        if (mHeader != null) {
+            applyHeaderView(mHeader);
+            if (mContent != null) {
+                applyContentView(mContent);
+            }
+        } else if (mCardHidden) {
+            applyHideCard();
+        }
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        if (mReinflatePending) {
+            mReinflatePending = false;
+            reinflate();
+        }
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        if (mRootView == null || mInflatedConfiguration == null) {
+            return;
+        }
+        int changes = mInflatedConfiguration.diff(newConfig);
+        if ((changes & getLayoutChangingConfigurations()) == 0) {
+            // The views keep their resources, e.g. on a mcc or mnc change.
+            return;
+        }
+        if (DEBUG) {
+            Log.d(TAG, "Re-inflating " + this + " for the changes "
+                    + Configuration.configurationDiffToString(changes));
+        }
+        if (getParentFragmentManager().isStateSaved()) {
+            mReinflatePending = true;
+            return;
+        }
+        reinflate();
+    }
+
+    /**
+     * Returns the {@link ActivityInfo} configuration changes which the resources of the card
+     * depend on, the views are re-inflated when one of them changes. It's only called for the
+     * changes handled by the activity, the others recreate it anyway.
+     */
+    protected int getLayoutChangingConfigurations() {
+        return ~(ActivityInfo.CONFIG_MCC | ActivityInfo.CONFIG_MNC);
+    }
+
+    /**
+     * Re-inflates the views of the card only, the presenter and its models are kept alive and the
+     * last header and content are rebound to the new views.
+     */
+    private void reinflate() {
+        getParentFragmentManager().beginTransaction()
+                .detach(this)
+                .attach(this)
+                .commitNow();
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mRootView = null;
+        mContentBound = false;
+        mCardBackground = null;
+        mCardBackgroundImage = null;
+        mTextBlockLayoutView = null;
+        mDescriptiveTextOnlyLayoutView = null;
+        mDescriptiveTextWithControlsLayoutView = null;
+        mSize = null;
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (mPresenter != null) {
+        synchronized (mPendingLock) {
+            if (mFrameScheduled) {
+                mChoreographer.removeFrameCallback(mFrameCallback);
+                mFrameScheduled = false;
+            }
+        }
+        if (mPresenter != null && mPresenterStarted) {
             mPresenter.onViewDestroyed();
         }
+        mPresenterStarted = false;
+        mHeader = null;
+        mContent = null;
+        mCardHidden = false;
         mSize = null;
     }
 
@@ -132,8 +277,19 @@ public class HomeCardFragment extends Fragment implements HomeCardInterface.View
      */
     @Override
     public void hideCard() {
-        hideAllViews();
-        mRootView.setVisibility(View.GONE);
+        synchronized (mPendingLock) {
+            mUpdateCount++;
+            if (mPendingHeader != null) {
+                mSkippedUpdateCount++;
+            }
+            if (mPendingContent != null) {
+                mSkippedUpdateCount++;
+            }
+            mPendingHeader = null;
+            mPendingContent = null;
+            mPendingHide = true;
+            scheduleFrameLocked();
+        }
     }
 
     /**
@@ -141,19 +297,135 @@ public class HomeCardFragment extends Fragment implements HomeCardInterface.View
      */
     @Override
     public void updateHeaderView(CardHeader header) {
-        requireActivity().runOnUiThread(() -> {
-            mRootView.setVisibility(View.VISIBLE);
-            mCardTitle.setText(header.getCardTitle());
-            mCardIcon.setImageDrawable(header.getCardIcon());
-        });
+        synchronized (mPendingLock) {
+            mUpdateCount++;
+            if (mPendingHeader != null || mPendingHide) {
+                mSkippedUpdateCount++;
+            }
+            mPendingHeader = header;
+            mPendingHide = false;
+            scheduleFrameLocked();
+        }
     }
 
     @Override
     public final void updateContentView(CardContent content) {
-        requireActivity().runOnUiThread(() -> {
-            hideAllViews();
-            updateContentViewInternal(content);
-        });
+        synchronized (mPendingLock) {
+            mUpdateCount++;
+            if (mPendingContent != null) {
+                mSkippedUpdateCount++;
+            }
+            mPendingContent = content;
+            mPendingHide = false;
+            scheduleFrameLocked();
+        }
+    }
+
+    /**
+     * Returns the number of updates which were replaced by a later one before being applied.
+     */
+    public int getSkippedUpdateCount() {
+        synchronized (mPendingLock) {
+            return mSkippedUpdateCount;
+        }
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        synchronized (mPendingLock) {
+            writer.print(prefix);
+            writer.print("updates=");
+            writer.print(mUpdateCount);
+            writer.print(", skippedUpdates=");
+            writer.print(mSkippedUpdateCount);
+            writer.print(", frameScheduled=");
+            writer.print(mFrameScheduled);
+        }
+        writer.print(", unchangedUpdates=");
+        writer.println(mUnchangedUpdateCount);
+    }
+
+    @GuardedBy("mPendingLock")
+    private void scheduleFrameLocked() {
+        // Scheduled once the fragment is created otherwise.
+        if (!mFrameScheduled && mChoreographer != null) {
+            mFrameScheduled = true;
+            mChoreographer.postFrameCallback(mFrameCallback);
+        }
+    }
+
+    /**
+     * Applies the latest updates received since the last frame, on the main thread.
+     */
+    @VisibleForTesting
+    void applyPendingUpdates() {
+        CardHeader header;
+        CardContent content;
+        boolean hide;
+        synchronized (mPendingLock) {
+            mFrameScheduled = false;
+            header = mPendingHeader;
+            content = mPendingContent;
+            hide = mPendingHide;
+            mPendingHeader = null;
+            mPendingContent = null;
+            mPendingHide = false;
+        }
+        if (hide) {
+            applyHideCard();
+            return;
+        }
+        if (header != null) {
+            applyHeaderView(header);
+        }
+        if (content != null) {
+            applyContentView(content);
+        }
+    }
+
+    private void applyHideCard() {
+        mHeader = null;
+        mContent = null;
+        mContentBound = false;
+        mCardHidden = true;
+        if (mRootView == null) {
+            return;
+        }
+        hideAllViews();
+        mRootView.setVisibility(View.GONE);
+    }
+
+    private void applyHeaderView(CardHeader header) {
+        mHeader = header;
+        mCardHidden = false;
+        if (mRootView == null) {
+            return;
+        }
+        mRootView.setVisibility(View.VISIBLE);
+        setTextIfChanged(mCardTitle, header.getCardTitle());
+        setImageIfChanged(mCardIcon, header.getCardIcon());
+    }
+
+    private void applyContentView(CardContent content) {
+        // The same content object can be modified in place, in which case it's equal to itself.
+        if (mContentBound && content.equals(mContent) && !content.isModifiedSinceBound()) {
+            mUnchangedUpdateCount++;
+            return;
+        }
+        mContent = content;
+        mContentBound = false;
+        if (mRootView == null) {
+            return;
+        }
+        // The content views are shown before the others are hidden, so that the views kept
+        // aren't hidden and shown again, which would relayout the whole card.
+        mShownContentViews.clear();
+        updateContentViewInternal(content);
+        hideAllViews();
+        mShownContentViews.clear();
+        mContentBound = true;
+        content.onBound();
     }
 
     /**
@@ -187,13 +459,13 @@ public class HomeCardFragment extends Fragment implements HomeCardInterface.View
 
     protected final void updateDescriptiveTextOnlyView(CharSequence primaryText,
             CharSequence secondaryText, Drawable optionalImage, CharSequence tapForMoreText) {
-        getDescriptiveTextOnlyLayoutView().setVisibility(View.VISIBLE);
-        mDescriptiveTextOnlyTitle.setText(primaryText);
-        mDescriptiveTextOnlySubtitle.setText(secondaryText);
-        mDescriptiveTextOnlyOptionalImage.setImageDrawable(optionalImage);
+        showContentView(getDescriptiveTextOnlyLayoutView());
+        setTextIfChanged(mDescriptiveTextOnlyTitle, primaryText);
+        setTextIfChanged(mDescriptiveTextOnlySubtitle, secondaryText);
+        setImageIfChanged(mDescriptiveTextOnlyOptionalImage, optionalImage);
         mDescriptiveTextOnlyOptionalImage.setVisibility(
                 optionalImage == null ? View.GONE : View.VISIBLE);
-        mDescriptiveTextOnlyTapForMore.setText(tapForMoreText);
+        setTextIfChanged(mDescriptiveTextOnlyTapForMore, tapForMoreText);
         mDescriptiveTextOnlyTapForMore.setVisibility(
                 tapForMoreText == null ? View.GONE : View.VISIBLE);
     }
@@ -203,10 +475,10 @@ public class HomeCardFragment extends Fragment implements HomeCardInterface.View
             DescriptiveTextWithControlsView.Control leftButton,
             DescriptiveTextWithControlsView.Control centerButton,
             DescriptiveTextWithControlsView.Control rightButton) {
-        getDescriptiveTextWithControlsLayoutView().setVisibility(View.VISIBLE);
-        mDescriptiveTextWithControlsTitle.setText(primaryText);
-        mDescriptiveTextWithControlsSubtitle.setText(secondaryText);
-        mDescriptiveTextWithControlsOptionalImage.setImageDrawable(optionalImage);
+        showContentView(getDescriptiveTextWithControlsLayoutView());
+        setTextIfChanged(mDescriptiveTextWithControlsTitle, primaryText);
+        setTextIfChanged(mDescriptiveTextWithControlsSubtitle, secondaryText);
+        setImageIfChanged(mDescriptiveTextWithControlsOptionalImage, optionalImage);
         mDescriptiveTextWithControlsOptionalImage.setVisibility(
                 optionalImage == null ? View.GONE : View.VISIBLE);
 
@@ -218,7 +490,7 @@ public class HomeCardFragment extends Fragment implements HomeCardInterface.View
     private void updateControlBarButton(DescriptiveTextWithControlsView.Control buttonContent,
             ImageButton buttonView) {
         if (buttonContent != null) {
-            buttonView.setImageDrawable(buttonContent.getIcon());
+            setImageIfChanged(buttonView, buttonContent.getIcon());
             if (buttonContent.getIcon() != null) {
                 // update the button view according to icon's selected state
                 buttonView.setSelected(
@@ -234,16 +506,56 @@ public class HomeCardFragment extends Fragment implements HomeCardInterface.View
     }
 
     protected final void updateTextBlock(CharSequence mainText, CharSequence tapForMoreText) {
-        getTextBlockLayoutView().setVisibility(View.VISIBLE);
-        mTextBlock.setText(mainText);
-        mTextBlockTapForMore.setText(tapForMoreText);
+        showContentView(getTextBlockLayoutView());
+        setTextIfChanged(mTextBlock, mainText);
+        setTextIfChanged(mTextBlockTapForMore, tapForMoreText);
         mTextBlockTapForMore.setVisibility(tapForMoreText == null ? View.GONE : View.VISIBLE);
     }
 
+    /**
+     * Hides the content views, except the ones shown for the content being bound. Child classes
+     * overriding it should hide their views with {@link #hideContentView(View)}.
+     */
     protected void hideAllViews() {
-        getTextBlockLayoutView().setVisibility(View.GONE);
-        getDescriptiveTextOnlyLayoutView().setVisibility(View.GONE);
-        getDescriptiveTextWithControlsLayoutView().setVisibility(View.GONE);
+        hideContentView(getTextBlockLayoutView());
+        hideContentView(getDescriptiveTextOnlyLayoutView());
+        hideContentView(getDescriptiveTextWithControlsLayoutView());
+    }
+
+    /**
+     * Shows a content view for the content being bound, it's left visible by
+     * {@link #hideAllViews()}.
+     */
+    protected final void showContentView(View view) {
+        mShownContentViews.add(view);
+        view.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Hides a content view, unless it's shown for the content being bound.
+     */
+    protected final void hideContentView(View view) {
+        if (!mShownContentViews.contains(view)) {
+            view.setVisibility(View.GONE);
+        }
+    }
+
+    /**
+     * Sets the text of the view unless it already has it, which would relayout the card.
+     */
+    protected static void setTextIfChanged(TextView view, CharSequence text) {
+        if (!TextUtils.equals(view.getText(), text == null ? "" : text)) {
+            view.setText(text);
+        }
+    }
+
+    /**
+     * Sets the image of the view unless it already has it, which would relayout the card.
+     */
+    protected static void setImageIfChanged(ImageView view, Drawable image) {
+        if (view.getDrawable() != image) {
+            view.setImageDrawable(image);
+        }
     }
 
     protected final View getRootView() {
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher.homescreen;
+
+import android.os.SystemClock;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.collection.ArraySet;
+
+import com.android.car.carlauncher.homescreen.assistive.AssistiveCard;
+import com.android.car.carlauncher.homescreen.audio.AudioCard;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the {@link HomeCardModule}s listed in {@code config_homeCardModuleClasses} and
+ * constructs them in parallel off the main thread.
+ *
+ * <p>The modules of this package are created by their registered factory. The other modules, e.g.
+ * the ones provided by an overlay, are created through their no-arg constructor, which is resolved
+ * once per process. The caller checks the container of each module, given by
+ * {@link HomeCardModule#getCardResId()}, once constructed.
+ */
+public final class HomeCardModuleRegistry {
+    private static final String TAG = "HomeCardModuleRegistry";
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    /** Creates a {@link HomeCardModule}. */
+    public interface Factory {
+        /** Creates the module, it's called off the main thread. */
+        HomeCardModule create();
+    }
+
+    private static final ArrayMap<String, Factory> sFactories = new ArrayMap<>();
+    private static final ConcurrentHashMap<String, Constructor<? extends HomeCardModule>>
+            sConstructors = new ConcurrentHashMap<>();
+
+    static {
+        register(AssistiveCard.class.getName(), AssistiveCard::new);
+        register(AudioCard.class.getName(), AudioCard::new);
+    }
+
+    private HomeCardModuleRegistry() {}
+
+    /** Registers the factory of the module {@code className}. */
+    @MainThread
+    public static void register(String className, Factory factory) {
+        sFactories.put(className, factory);
+    }
+
+    /**
+     * Constructs the modules {@code classNames} in parallel off the main thread. The modules
+     * which fail to be constructed are skipped. The container of the others needs to be checked
+     * by the caller.
+     */
+    @MainThread
+    public static CompletableFuture<Set<HomeCardModule>> createModules(String[] classNames) {
+        List<CompletableFuture<HomeCardModule>> futures = new ArrayList<>(classNames.length);
+        for (String className : classNames) {
+            Factory registeredFactory = sFactories.get(className);
+            Factory factory = registeredFactory != null
+                    ? registeredFactory
+                    : () -> createByConstructor(className);
+            // A module which fails to be created is skipped, the other cards are still shown.
+            futures.add(CompletableFuture.supplyAsync(() -> create(className, factory))
+                    .exceptionally(e -> {
+                        Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                        Log.w(TAG, "Unable to create HomeCardModule class " + className, cause);
+                        return null;
+                    }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(unused -> {
+                    Set<HomeCardModule> cardModules = new ArraySet<>(futures.size());
+                    for (CompletableFuture<HomeCardModule> future : futures) {
+                        HomeCardModule cardModule = future.join();
+                        if (cardModule != null) {
+                            cardModules.add(cardModule);
+                        }
+                    }
+                    return cardModules;
+                });
+    }
+
+    @Nullable
+    private static HomeCardModule create(String className, Factory factory) {
+        long startTime = SystemClock.uptimeMillis();
+        HomeCardModule cardModule = factory.create();
+        if (DEBUG) {
+            Log.d(TAG, "Initialization of HomeCardModule class " + className + " took "
+                    + (SystemClock.uptimeMillis() - startTime) + " ms");
+        }
+        return cardModule;
+    }
+
+    @Nullable
+    private static HomeCardModule createByConstructor(String className) {
+        try {
+            Constructor<? extends HomeCardModule> constructor = sConstructors.get(className);
+            if (constructor == null) {
+                constructor = Class.forName(className).asSubclass(HomeCardModule.class)
+                        .getDeclaredConstructor();
+                sConstructors.put(className, constructor);
+            }
+            return constructor.newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+            Log.w(TAG, "Unable to create HomeCardProvider class " + className, cause);
+            return null;
+        }
+    }
+}
@@ -18,6 +18,7 @@ package com.android.car.carlauncher.homescreen.assistive;
 
 import android.view.View;
 
+import com.android.car.carlauncher.homescreen.CardModelArbiter;
 import com.android.car.carlauncher.homescreen.CardPresenter;
 import com.android.car.carlauncher.homescreen.HomeCardInterface;
 
@@ -28,7 +29,7 @@ import java.util.List;
  */
 public class AssistiveCardPresenter extends CardPresenter {
 
-    private HomeCardInterface.Model mCurrentModel;
+    private final CardModelArbiter mArbiter = new CardModelArbiter("AssistiveCard");
     private List<HomeCardInterface.Model> mModels;
 
     @Override
@@ -57,6 +58,7 @@ public class AssistiveCardPresenter extends CardPresenter {
                 model.onDestroy(getFragment().requireContext());
             }
         }
+        mArbiter.clear();
     }
 
     /**
@@ -64,32 +66,19 @@ public class AssistiveCardPresenter extends CardPresenter {
      */
     @Override
     public void onViewClicked(View v) {
-        mCurrentModel.onClick(v);
+        HomeCardInterface.Model model = mArbiter.getDisplayedModel();
+        if (model != null) {
+            model.onClick(v);
+        }
     }
 
     /**
-     * Called when a Model is updated.
+     * Called when a Model is updated, the {@link CardModelArbiter} chooses the model displayed.
      */
     @Override
     public void onModelUpdated(HomeCardInterface.Model model) {
-        if (model.getCardHeader() == null) {
-            if (mCurrentModel != null && model.getClass() == mCurrentModel.getClass()) {
-                if (mModels != null) {
-                    // Check if any other models have content to display
-                    for (HomeCardInterface.Model candidate : mModels) {
-                        if (candidate.getCardHeader() != null) {
-                            mCurrentModel = candidate;
-                            super.onModelUpdated(candidate);
-                            return;
-                        }
-                    }
-                }
-            } else {
-                // Otherwise, another model is already on display,
-                return;
-            }
+        if (mArbiter.onModelUpdated(model)) {
+            super.onModelUpdated(mArbiter.getDisplayedModel());
         }
-        mCurrentModel = model;
-        super.onModelUpdated(model);
     }
 }
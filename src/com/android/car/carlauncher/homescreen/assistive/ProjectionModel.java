@@ -19,20 +19,26 @@ package com.android.car.carlauncher.homescreen.assistive;
 import android.car.Car;
 import android.car.CarProjectionManager;
 import android.car.projection.ProjectionStatus;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.graphics.drawable.Drawable;
 import android.icu.text.MessageFormat;
+import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.Log;
 import android.view.View;
 import android.widget.Toast;
 
 import androidx.annotation.Nullable;
 
+import com.android.car.carlauncher.CarConnectionHub;
 import com.android.car.carlauncher.R;
+import com.android.car.carlauncher.homescreen.CardModelArbiter;
 import com.android.car.carlauncher.homescreen.HomeCardInterface;
 import com.android.car.carlauncher.homescreen.ui.CardContent;
 import com.android.car.carlauncher.homescreen.ui.CardHeader;
@@ -43,7 +49,13 @@ import java.util.Map;
 
 /**
  * The {@link HomeCardInterface.Model} for projection status
+ *
+ * <p>The projection status is updated often while a phone is connected, so the label, icon and
+ * launch intent of the projection apps are resolved once and cached until the app is updated or
+ * removed, and the presenter is only notified when the card changes. While projecting, the card
+ * isn't taken over by the other assistive models.
  */
+@CardModelArbiter.Policy(sticky = true)
 public class ProjectionModel implements CarProjectionManager.ProjectionStatusListener,
         HomeCardInterface.Model {
 
@@ -51,39 +63,74 @@ public class ProjectionModel implements CarProjectionManager.ProjectionStatusLis
 
     private HomeCardInterface.Presenter mPresenter;
     @Nullable
-    private Car mCar;
+    private CarConnectionHub mCarConnectionHub;
     @Nullable
     private CarProjectionManager mCarProjectionManager;
     private PackageManager mPackageManager;
     private Resources mResources;
 
-    private CharSequence mAppName;
-    private Drawable mAppIcon;
+    // The resolved projection apps, by package name.
+    private final Map<String, ProjectionApp> mProjectionApps = new ArrayMap<>();
+    @Nullable
+    private ProjectionApp mProjectionApp;
     private CharSequence mLaunchMessage;
     private CharSequence mStatusMessage;
     private CharSequence mTapToLaunchText;
-    private Intent mIntent;
+    private CardHeader mCardHeader;
+    private CardContent mCardContent;
+
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String packageName = intent.getData() == null ? null
+                    : intent.getData().getSchemeSpecificPart();
+            if (mProjectionApps.remove(packageName) == null || mProjectionApp == null
+                    || !mProjectionApp.mPackageName.equals(packageName)) {
+                return;
+            }
+            // The label or the icon of the projection app may have changed.
+            ProjectionApp projectionApp = getProjectionApp(packageName);
+            if (projectionApp == null) {
+                clearProjectionApp();
+            } else {
+                setProjectionApp(projectionApp, mStatusMessage);
+            }
+        }
+    };
+
+    private final CarConnectionHub.Listener mCarConnectionListener =
+            new CarConnectionHub.Listener() {
+                @Override
+                public void onCarReady(Car car) {
+                    mCarProjectionManager = (CarProjectionManager)
+                            car.getCarManager(Car.PROJECTION_SERVICE);
+                    mCarProjectionManager.registerProjectionStatusListener(ProjectionModel.this);
+                }
+
+                @Override
+                public void onCarLost() {
+                    mCarProjectionManager = null;
+                    onProjectionStatusChanged(
+                            ProjectionStatus.PROJECTION_STATE_INACTIVE, null, null);
+                }
+            };
 
     @Override
     public void onCreate(Context context) {
-        mCar = Car.createCar(context.getApplicationContext(), null,
-                Car.CAR_WAIT_TIMEOUT_DO_NOT_WAIT,
-                (Car car, boolean ready) -> {
-                    if (ready) {
-                        mCarProjectionManager = (CarProjectionManager)
-                                car.getCarManager(Car.PROJECTION_SERVICE);
-                        mCarProjectionManager.registerProjectionStatusListener(this);
-                    } else {
-                        mCarProjectionManager = null;
-                        onProjectionStatusChanged(
-                                ProjectionStatus.PROJECTION_STATE_INACTIVE, null, null);
-                    }
-                });
+        mCarConnectionHub = CarConnectionHub.getInstance(context);
+        mCarConnectionHub.addListener(context.getMainExecutor(), mCarConnectionListener);
         mPackageManager = context.getPackageManager();
         mResources = context.getResources();
 
         mLaunchMessage = context.getResources().getString(R.string.projected_launch_text);
         mTapToLaunchText = context.getResources().getString(R.string.tap_to_launch_text);
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        context.registerReceiver(mPackageReceiver, filter);
     }
 
     @Override
@@ -92,30 +139,30 @@ public class ProjectionModel implements CarProjectionManager.ProjectionStatusLis
             mCarProjectionManager.unregisterProjectionStatusListener(this);
             mCarProjectionManager = null;
         }
-        if (mCar != null) {
-            mCar.disconnect();
-            mCar = null;
+        if (mCarConnectionHub != null) {
+            mCarConnectionHub.removeListener(mCarConnectionListener);
+            mCarConnectionHub = null;
         }
+        context.unregisterReceiver(mPackageReceiver);
     }
 
     @Override
     public CardHeader getCardHeader() {
-        return mAppName == null ? null : new CardHeader(mAppName, mAppIcon);
+        return mCardHeader;
     }
 
     @Override
     public CardContent getCardContent() {
-        return mAppName == null ? null : new DescriptiveTextView(mAppIcon, mLaunchMessage,
-                mStatusMessage, mTapToLaunchText);
+        return mCardContent;
     }
 
     @Override
     public void onClick(View v) {
-        if (mIntent.resolveActivity(v.getContext().getPackageManager()) != null) {
-            v.getContext().startActivity(mIntent);
+        Intent intent = mProjectionApp == null ? null : mProjectionApp.mIntent;
+        if (intent != null && intent.resolveActivity(v.getContext().getPackageManager()) != null) {
+            v.getContext().startActivity(intent);
         } else {
-            Log.e(TAG, "No activity component found to handle intent with action: "
-                    + mIntent.getAction());
+            Log.e(TAG, "No activity component found to handle intent: " + intent);
             Toast.makeText(v.getContext(),
                     mResources.getString(R.string.projected_onclick_launch_error_toast_text),
                     Toast.LENGTH_SHORT).show();
@@ -134,26 +181,60 @@ public class ProjectionModel implements CarProjectionManager.ProjectionStatusLis
             Log.d(TAG, "onProjectionStatusChanged state=" + state + " package=" + packageName);
         }
         if (state == ProjectionStatus.PROJECTION_STATE_INACTIVE || packageName == null) {
-            if (mAppName != null) {
-                mAppName = null;
-                mPresenter.onModelUpdated(this);
+            if (mProjectionApp != null) {
+                clearProjectionApp();
             }
             return;
         }
 
+        ProjectionApp projectionApp = getProjectionApp(packageName);
+        if (projectionApp == null) {
+            return;
+        }
+        String statusMessage = getStatusMessage(packageName, details);
+        if (projectionApp == mProjectionApp && TextUtils.equals(statusMessage, mStatusMessage)) {
+            // Only the details which aren't shown changed.
+            return;
+        }
+        setProjectionApp(projectionApp, statusMessage);
+    }
+
+    private void setProjectionApp(ProjectionApp projectionApp, CharSequence statusMessage) {
+        mProjectionApp = projectionApp;
+        mStatusMessage = statusMessage;
+        mCardHeader = projectionApp.mCardHeader;
+        mCardContent = new DescriptiveTextView(projectionApp.mIcon, mLaunchMessage, statusMessage,
+                mTapToLaunchText);
+        mPresenter.onModelUpdated(this);
+    }
+
+    private void clearProjectionApp() {
+        mProjectionApp = null;
+        mStatusMessage = null;
+        mCardHeader = null;
+        mCardContent = null;
+        mPresenter.onModelUpdated(this);
+    }
+
+    /** Returns the cached projection app, resolving it if needed. */
+    @Nullable
+    private ProjectionApp getProjectionApp(String packageName) {
+        ProjectionApp projectionApp = mProjectionApps.get(packageName);
+        if (projectionApp != null) {
+            return projectionApp;
+        }
         ApplicationInfo applicationInfo;
         try {
             applicationInfo = mPackageManager.getApplicationInfo(packageName, 0);
         } catch (PackageManager.NameNotFoundException e) {
             Log.e(TAG, "Could not load projection package information", e);
-            return;
+            return null;
         }
-
-        mAppName = applicationInfo.loadLabel(mPackageManager);
-        mAppIcon = applicationInfo.loadIcon(mPackageManager);
-        mStatusMessage = getStatusMessage(packageName, details);
-        mIntent = mPackageManager.getLaunchIntentForPackage(packageName);
-        mPresenter.onModelUpdated(this);
+        projectionApp = new ProjectionApp(packageName, applicationInfo.loadLabel(mPackageManager),
+                applicationInfo.loadIcon(mPackageManager),
+                mPackageManager.getLaunchIntentForPackage(packageName));
+        mProjectionApps.put(packageName, projectionApp);
+        return projectionApp;
     }
 
     @Nullable
@@ -204,4 +285,21 @@ public class ProjectionModel implements CarProjectionManager.ProjectionStatusLis
             return null;
         }
     }
+
+    /** The resolved label, icon and launch intent of a projection app. */
+    private static final class ProjectionApp {
+        final String mPackageName;
+        final Drawable mIcon;
+        @Nullable
+        final Intent mIntent;
+        final CardHeader mCardHeader;
+
+        ProjectionApp(String packageName, CharSequence name, Drawable icon,
+                @Nullable Intent intent) {
+            mPackageName = packageName;
+            mIcon = icon;
+            mIntent = intent;
+            mCardHeader = new CardHeader(name, icon);
+        }
+    }
 }
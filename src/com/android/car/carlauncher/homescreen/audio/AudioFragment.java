@@ -20,20 +20,21 @@ import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.text.TextUtils;
-import android.util.Size;
 import android.view.View;
 import android.view.ViewStub;
 import android.widget.Chronometer;
 import android.widget.TextView;
 
-import com.android.car.apps.common.BitmapUtils;
-import com.android.car.apps.common.ImageUtils;
 import com.android.car.carlauncher.R;
 import com.android.car.carlauncher.homescreen.HomeCardFragment;
 import com.android.car.carlauncher.homescreen.HomeCardInterface;
 import com.android.car.carlauncher.homescreen.ui.CardContent;
 import com.android.car.carlauncher.homescreen.ui.DescriptiveTextWithControlsView;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * {@link HomeCardInterface.View} for the audio card. Displays and controls the current audio source
@@ -45,6 +46,11 @@ public class AudioFragment extends HomeCardFragment {
     private Chronometer mChronometer;
     private View mChronometerSeparator;
     private float mBlurRadius;
+    private BackgroundBlurrer mBackgroundBlurrer;
+    private ExecutorService mBlurExecutor;
+    // Loaded once per view, so that its blurred image is cached.
+    private Drawable mDefaultBackground;
+    private Bitmap mBackgroundBitmap;
 
     // Views from card_content_media.xml, which is used only for the media card
     private View mMediaLayoutView;
@@ -61,6 +67,34 @@ public class AudioFragment extends HomeCardFragment {
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         mBlurRadius = getResources().getFloat(R.dimen.card_background_image_blur_radius);
+        mBlurExecutor = Executors.newSingleThreadExecutor();
+        mBackgroundBlurrer = new BackgroundBlurrer(requireContext(), mBlurExecutor,
+                requireContext().getMainExecutor());
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mBackgroundBlurrer.cancel();
+        mChronometer = null;
+        mChronometerSeparator = null;
+        mMediaLayoutView = null;
+        mDefaultBackground = null;
+        mBackgroundBitmap = null;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        // The late updates of the content are dropped instead of being rejected.
+        mBackgroundBlurrer.release();
+        mBlurExecutor.shutdown();
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        mBackgroundBlurrer.dump(prefix, writer);
     }
 
     @Override
@@ -86,8 +120,8 @@ public class AudioFragment extends HomeCardFragment {
     @Override
     protected void hideAllViews() {
         super.hideAllViews();
-        getCardBackground().setVisibility(View.GONE);
-        getMediaLayoutView().setVisibility(View.GONE);
+        hideContentView(getCardBackground());
+        hideContentView(getMediaLayoutView());
     }
 
     private Chronometer getChronometer() {
@@ -116,28 +150,48 @@ public class AudioFragment extends HomeCardFragment {
     private void updateBackgroundImage(Drawable image) {
         if (getCardSize() != null) {
             if (image == null) {
-                image = getContext().getDrawable(R.drawable.default_audio_background);
-            }
-            int maxDimen = Math.max(getCardBackgroundImage().getWidth(),
-                    getCardBackgroundImage().getHeight());
-            // Prioritize size of background image view. Otherwise, use size of whole card
-            if (maxDimen == 0) {
-                maxDimen = Math.max(getCardSize().getWidth(), getCardSize().getHeight());
+                if (mDefaultBackground == null) {
+                    mDefaultBackground = getContext().getDrawable(
+                            R.drawable.default_audio_background);
+                }
+                image = mDefaultBackground;
             }
-            Size scaledSize = new Size(maxDimen, maxDimen);
-            Bitmap imageBitmap = BitmapUtils.fromDrawable(image, scaledSize);
-            Bitmap blurredBackground = ImageUtils.blur(getContext(), imageBitmap, scaledSize,
-                    mBlurRadius);
+            // The previous image is kept until the new one is blurred, then cross-faded in.
+            showContentView(getCardBackground());
+            mBackgroundBlurrer.blur(image, getBackgroundSize(), mBlurRadius, blurred -> {
+                if (getRootView() == null || blurred == mBackgroundBitmap) {
+                    return;
+                }
+                mBackgroundBitmap = blurred;
+                getCardBackgroundImage().setImageBitmap(blurred, /* showAnimation= */ true);
+            });
+        }
+    }
+
+    /**
+     * Blurs the background of an upcoming artwork ahead of time, so that it's shown right away
+     * once the artwork is shown.
+     */
+    void prefetchBackgroundImage(Drawable image) {
+        if (getRootView() != null && getCardSize() != null) {
+            mBackgroundBlurrer.prefetch(image, getBackgroundSize(), mBlurRadius);
+        }
+    }
 
-            getCardBackgroundImage().setImageBitmap(blurredBackground, /* showAnimation= */ true);
-            getCardBackground().setVisibility(View.VISIBLE);
+    private int getBackgroundSize() {
+        int maxDimen = Math.max(getCardBackgroundImage().getWidth(),
+                getCardBackgroundImage().getHeight());
+        // Prioritize size of background image view. Otherwise, use size of whole card
+        if (maxDimen == 0) {
+            maxDimen = Math.max(getCardSize().getWidth(), getCardSize().getHeight());
         }
+        return maxDimen;
     }
 
     private void updateMediaView(CharSequence title, CharSequence subtitle) {
-        getMediaLayoutView().setVisibility(View.VISIBLE);
-        mMediaTitle.setText(title);
-        mMediaSubtitle.setText(subtitle);
+        showContentView(getMediaLayoutView());
+        setTextIfChanged(mMediaTitle, title);
+        setTextIfChanged(mMediaSubtitle, subtitle);
         mMediaSubtitle.setVisibility(TextUtils.isEmpty(subtitle) ? View.GONE : View.VISIBLE);
     }
 
@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher.homescreen.audio;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.LruCache;
+import android.util.Size;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+
+import com.android.car.apps.common.ImageUtils;
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Blurs the background images of the audio card off the main thread.
+ *
+ * <p>The images are downscaled by {@link #DOWNSCALE_FACTOR} before being blurred, the blur radius
+ * being relative to the image size, and are scaled back up by the image view. The results are
+ * cached by artwork, size and radius, so that the updates which don't change the artwork, e.g.
+ * play/pause or the call timer, don't blur again. The downscaled copies are drawn into bitmaps
+ * reused from a small pool.
+ *
+ * <p>Once {@link #release released}, e.g. when the blur executor is shut down, the requests are
+ * dropped.
+ */
+final class BackgroundBlurrer {
+    @VisibleForTesting
+    static final int DOWNSCALE_FACTOR = 4;
+    private static final int MAX_CACHE_BYTES = 1024 * 1024;
+    private static final int MAX_POOLED_BITMAPS = 2;
+    // The request id of the prefetches, whose result is only cached.
+    private static final int NO_REQUEST = -1;
+
+    /** Receives a blurred image, on the main thread. */
+    interface Callback {
+        /** Called with the blurred image, which mustn't be modified. */
+        void onBlurred(Bitmap blurred);
+    }
+
+    private final Context mContext;
+    private final Executor mBlurExecutor;
+    private final Executor mMainExecutor;
+    // Sized in bytes, it's thread-safe.
+    private final LruCache<Key, Bitmap> mCache = new LruCache<Key, Bitmap>(MAX_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(Key key, Bitmap blurred) {
+            return blurred.getAllocationByteCount();
+        }
+    };
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    private final ArrayDeque<Bitmap> mPool = new ArrayDeque<>(MAX_POOLED_BITMAPS);
+    // Only the result of the latest request is delivered.
+    @GuardedBy("mLock")
+    private int mLatestRequestId;
+    @GuardedBy("mLock")
+    private int mHits;
+    @GuardedBy("mLock")
+    private int mBlurs;
+    @MainThread
+    private boolean mReleased;
+
+    BackgroundBlurrer(Context context, Executor blurExecutor, Executor mainExecutor) {
+        mContext = context.getApplicationContext();
+        mBlurExecutor = blurExecutor;
+        mMainExecutor = mainExecutor;
+    }
+
+    /**
+     * Blurs {@code image} into a square of {@code size} pixels, before downscaling, with the
+     * given radius relative to the image size. The callback is called right away if the result
+     * is cached, otherwise once blurred unless another image is requested meanwhile.
+     */
+    @MainThread
+    void blur(Drawable image, int size, float radius, Callback callback) {
+        if (mReleased) {
+            return;
+        }
+        int scaledSize = Math.max(1, size / DOWNSCALE_FACTOR);
+        Key key = new Key(image, scaledSize, radius);
+        int requestId;
+        Bitmap cached = mCache.get(key);
+        synchronized (mLock) {
+            requestId = ++mLatestRequestId;
+            if (cached != null) {
+                mHits++;
+            }
+        }
+        if (cached != null) {
+            callback.onBlurred(cached);
+            return;
+        }
+        submit(image, key, requestId, callback);
+    }
+
+    /**
+     * Blurs {@code image} ahead of time into the cache, like {@link #blur}, without affecting the
+     * pending request.
+     */
+    @MainThread
+    void prefetch(Drawable image, int size, float radius) {
+        if (mReleased) {
+            return;
+        }
+        Key key = new Key(image, Math.max(1, size / DOWNSCALE_FACTOR), radius);
+        if (mCache.get(key) == null) {
+            submit(image, key, NO_REQUEST, /* callback= */ null);
+        }
+    }
+
+    private void submit(Drawable image, Key key, int requestId, @Nullable Callback callback) {
+        int scaledSize = key.mSize;
+        float radius = key.mRadius;
+        // The drawables aren't thread-safe, the background thread draws the bitmap or its own
+        // copy of the drawable, or else the drawable is drawn here, downscaled.
+        Bitmap artwork = image instanceof BitmapDrawable
+                ? ((BitmapDrawable) image).getBitmap() : null;
+        Drawable.ConstantState state = artwork == null ? image.getConstantState() : null;
+        Drawable imageCopy = state != null ? state.newDrawable(mContext.getResources()) : null;
+        Bitmap renderedOnMain = artwork == null && imageCopy == null
+                ? render(image, scaledSize) : null;
+        mBlurExecutor.execute(() -> {
+            if (requestId != NO_REQUEST && !isLatestRequest(requestId)) {
+                recycleToPool(renderedOnMain);
+                return;
+            }
+            Bitmap source = renderedOnMain;
+            if (source == null) {
+                source = artwork != null
+                        ? render(artwork, scaledSize)
+                        : render(imageCopy, scaledSize);
+            }
+            Bitmap blurred = ImageUtils.blur(mContext, source, new Size(scaledSize, scaledSize),
+                    radius);
+            if (blurred != source) {
+                recycleToPool(source);
+            }
+            mCache.put(key, blurred);
+            synchronized (mLock) {
+                mBlurs++;
+            }
+            if (callback == null) {
+                return;
+            }
+            mMainExecutor.execute(() -> {
+                if (isLatestRequest(requestId)) {
+                    callback.onBlurred(blurred);
+                }
+            });
+        });
+    }
+
+    /** Drops the pending request, if any, its callback isn't called. */
+    @MainThread
+    void cancel() {
+        synchronized (mLock) {
+            mLatestRequestId++;
+        }
+    }
+
+    /**
+     * Drops the pending and later requests and the cached images. It should be called before the
+     * blur executor is shut down.
+     */
+    @MainThread
+    void release() {
+        mReleased = true;
+        cancel();
+        mCache.evictAll();
+        synchronized (mLock) {
+            mPool.clear();
+        }
+    }
+
+    private boolean isLatestRequest(int requestId) {
+        synchronized (mLock) {
+            return requestId == mLatestRequestId;
+        }
+    }
+
+    private Bitmap render(Drawable image, int size) {
+        Bitmap bitmap = obtainFromPool(size);
+        image.setBounds(0, 0, size, size);
+        image.draw(new Canvas(bitmap));
+        return bitmap;
+    }
+
+    private Bitmap render(Bitmap image, int size) {
+        if (image.getConfig() == Bitmap.Config.HARDWARE) {
+            image = image.copy(Bitmap.Config.ARGB_8888, /* isMutable= */ false);
+        }
+        Bitmap bitmap = obtainFromPool(size);
+        new Canvas(bitmap).drawBitmap(image, /* src= */ null, new Rect(0, 0, size, size), mPaint);
+        return bitmap;
+    }
+
+    private Bitmap obtainFromPool(int size) {
+        synchronized (mLock) {
+            Bitmap bitmap;
+            while ((bitmap = mPool.poll()) != null) {
+                if (bitmap.getWidth() == size && bitmap.getHeight() == size) {
+                    bitmap.eraseColor(Color.TRANSPARENT);
+                    return bitmap;
+                }
+            }
+        }
+        return Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+    }
+
+    private void recycleToPool(@Nullable Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        synchronized (mLock) {
+            if (mPool.size() < MAX_POOLED_BITMAPS) {
+                mPool.offer(bitmap);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    int getBlurCount() {
+        synchronized (mLock) {
+            return mBlurs;
+        }
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        synchronized (mLock) {
+            writer.print(prefix);
+            writer.print("BackgroundBlurrer: cached=");
+            writer.print(mCache.snapshot().size());
+            writer.print(", cachedBytes=");
+            writer.print(mCache.size());
+            writer.print(", hits=");
+            writer.print(mHits);
+            writer.print(", blurs=");
+            writer.print(mBlurs);
+            writer.print(", pooled=");
+            writer.println(mPool.size());
+        }
+    }
+
+    /**
+     * Identifies a blurred image by its artwork, i.e. the bitmap and its generation for the
+     * bitmap drawables, which are often re-created around the same bitmap, or the drawable
+     * instance otherwise. The artwork is identified by its identity hash code, so that the cache
+     * doesn't keep the full size artworks alive.
+     */
+    private static final class Key {
+        private final int mArtworkId;
+        private final int mGenerationId;
+        private final int mSize;
+        private final float mRadius;
+
+        Key(Drawable image, int size, float radius) {
+            Bitmap bitmap = image instanceof BitmapDrawable
+                    ? ((BitmapDrawable) image).getBitmap() : null;
+            mArtworkId = System.identityHashCode(bitmap != null ? bitmap : image);
+            mGenerationId = bitmap != null ? bitmap.getGenerationId() : 0;
+            mSize = size;
+            mRadius = radius;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mArtworkId == other.mArtworkId && mGenerationId == other.mGenerationId
+                    && mSize == other.mSize && mRadius == other.mRadius;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mArtworkId, mGenerationId, mSize, mRadius);
+        }
+    }
+}
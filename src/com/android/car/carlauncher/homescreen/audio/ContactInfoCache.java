@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher.homescreen.audio;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.graphics.Bitmap;
+import android.graphics.ImageDecoder;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.LruCache;
+import android.util.Size;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+
+import com.android.car.telephony.common.TelecomUtils;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the contact info of the phone numbers and the decoded contact avatars, so that the call
+ * card shows the caller right away on the call state changes and for repeat callers.
+ *
+ * <p>The contact info is looked up again after {@link #LOOKUP_TTL_MS}, and both caches are
+ * cleared when the contacts change. The avatars are decoded off the main thread, downsampled to
+ * the card's image size.
+ */
+@MainThread
+final class ContactInfoCache {
+    private static final String TAG = "ContactInfoCache";
+    private static final boolean DEBUG = false;
+    private static final long LOOKUP_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final int MAX_LOOKUPS = 16;
+    private static final int MAX_AVATAR_CACHE_BYTES = 2 * 1024 * 1024;
+
+    private final Context mContext;
+    private final Clock mElapsedTimeClock;
+    private final Executor mDecodeExecutor;
+    private final int mAvatarSize;
+    private final LruCache<String, Lookup> mLookups = new LruCache<>(MAX_LOOKUPS);
+    private final LruCache<Uri, Bitmap> mAvatars = new LruCache<Uri, Bitmap>(
+            MAX_AVATAR_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(Uri uri, Bitmap avatar) {
+            return avatar.getAllocationByteCount();
+        }
+    };
+    // The avatars being decoded, shared by the callers which ask for the same avatar.
+    private final Map<Uri, CompletableFuture<Drawable>> mAvatarLoads = new ArrayMap<>();
+    private final ContentObserver mContactsObserver =
+            new ContentObserver(new Handler(Looper.getMainLooper())) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    invalidate();
+                }
+            };
+    private boolean mObservingContacts;
+    // Incremented on invalidation, so that the avatars decoded before aren't cached.
+    private int mGeneration;
+
+    ContactInfoCache(Context context, Clock elapsedTimeClock, Executor decodeExecutor,
+            int avatarSize) {
+        mContext = context;
+        mElapsedTimeClock = elapsedTimeClock;
+        mDecodeExecutor = decodeExecutor;
+        mAvatarSize = avatarSize;
+    }
+
+    /** Returns the contact info of {@code number} if it was looked up recently. */
+    @Nullable
+    TelecomUtils.PhoneNumberInfo getCachedPhoneNumberInfo(@Nullable String number) {
+        Lookup lookup = getFreshLookup(number);
+        return lookup != null && lookup.mFuture.isDone() ? lookup.mFuture.join() : null;
+    }
+
+    /**
+     * Looks up the contact info of {@code number}, reusing a recent or pending lookup of the same
+     * number. The contacts must be readable.
+     */
+    CompletableFuture<TelecomUtils.PhoneNumberInfo> getPhoneNumberInfo(@Nullable String number) {
+        Lookup lookup = getFreshLookup(number);
+        if (lookup != null) {
+            return lookup.mFuture;
+        }
+        if (!mObservingContacts) {
+            mContext.getContentResolver().registerContentObserver(
+                    ContactsContract.Contacts.CONTENT_URI, /* notifyForDescendants= */ true,
+                    mContactsObserver);
+            mObservingContacts = true;
+        }
+        lookup = new Lookup(TelecomUtils.getPhoneNumberInfo(mContext, number),
+                mElapsedTimeClock.millis());
+        mLookups.put(toKey(number), lookup);
+        return lookup.mFuture;
+    }
+
+    /** Returns the avatar at {@code avatarUri} if it's decoded already. */
+    @Nullable
+    Drawable getCachedAvatar(Uri avatarUri) {
+        Bitmap avatar = mAvatars.get(avatarUri);
+        return avatar == null ? null : new BitmapDrawable(mContext.getResources(), avatar);
+    }
+
+    /**
+     * Decodes the avatar at {@code avatarUri} off the main thread. The future completes on the
+     * main thread, with {@code null} if the avatar can't be decoded.
+     */
+    CompletableFuture<Drawable> loadAvatar(Uri avatarUri) {
+        Drawable cached = getCachedAvatar(avatarUri);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<Drawable> load = mAvatarLoads.get(avatarUri);
+        if (load != null) {
+            return load;
+        }
+        int generation = mGeneration;
+        load = CompletableFuture.supplyAsync(() -> decodeAvatar(avatarUri), mDecodeExecutor)
+                .handleAsync((avatar, e) -> {
+                    if (e != null) {
+                        Log.w(TAG, "Unable to load contact avatar from Uri: " + avatarUri, e);
+                    }
+                    // Otherwise the contacts changed meanwhile and the load was dropped.
+                    if (generation == mGeneration) {
+                        mAvatarLoads.remove(avatarUri);
+                        if (avatar != null) {
+                            mAvatars.put(avatarUri, avatar);
+                        }
+                    }
+                    return avatar == null ? null
+                            : new BitmapDrawable(mContext.getResources(), avatar);
+                }, mContext.getMainExecutor());
+        mAvatarLoads.put(avatarUri, load);
+        return load;
+    }
+
+    /** Stops observing the contacts and clears the caches. */
+    void release() {
+        if (mObservingContacts) {
+            mContext.getContentResolver().unregisterContentObserver(mContactsObserver);
+            mObservingContacts = false;
+        }
+        invalidate();
+    }
+
+    private void invalidate() {
+        if (DEBUG) Log.d(TAG, "Contacts changed, clearing the cache");
+        mGeneration++;
+        mLookups.evictAll();
+        mAvatars.evictAll();
+        mAvatarLoads.clear();
+    }
+
+    @Nullable
+    private Lookup getFreshLookup(@Nullable String number) {
+        Lookup lookup = mLookups.get(toKey(number));
+        if (lookup == null) {
+            return null;
+        }
+        if (lookup.mFuture.isCompletedExceptionally()
+                || mElapsedTimeClock.millis() - lookup.mLookupTimeMs > LOOKUP_TTL_MS) {
+            mLookups.remove(toKey(number));
+            return null;
+        }
+        return lookup;
+    }
+
+    @Nullable
+    private Bitmap decodeAvatar(Uri avatarUri) {
+        try {
+            return ImageDecoder.decodeBitmap(
+                    ImageDecoder.createSource(mContext.getContentResolver(), avatarUri),
+                    (decoder, info, source) -> decoder.setTargetSampleSize(
+                            getSampleSize(info.getSize())));
+        } catch (IOException e) {
+            // If the contact's avatar can't be decoded, the card shows a LetterTile instead.
+            if (DEBUG) Log.d(TAG, "Unable to decode contact avatar from Uri: " + avatarUri, e);
+            return null;
+        }
+    }
+
+    /** Returns the largest power of 2 sample size which keeps the avatar above the card size. */
+    private int getSampleSize(Size size) {
+        int minDimen = Math.min(size.getWidth(), size.getHeight());
+        int sampleSize = 1;
+        while (minDimen / (sampleSize * 2) >= mAvatarSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static String toKey(@Nullable String number) {
+        return number == null ? "" : number;
+    }
+
+    private static final class Lookup {
+        final CompletableFuture<TelecomUtils.PhoneNumberInfo> mFuture;
+        final long mLookupTimeMs;
+
+        Lookup(CompletableFuture<TelecomUtils.PhoneNumberInfo> future, long lookupTimeMs) {
+            mFuture = future;
+            mLookupTimeMs = lookupTimeMs;
+        }
+    }
+}
@@ -16,8 +16,10 @@
 
 package com.android.car.carlauncher.homescreen.audio;
 
+import android.graphics.drawable.Drawable;
 import android.view.View;
 
+import com.android.car.carlauncher.homescreen.CardModelArbiter;
 import com.android.car.carlauncher.homescreen.CardPresenter;
 import com.android.car.carlauncher.homescreen.HomeCardInterface;
 import com.android.car.media.common.PlaybackControlsActionBar;
@@ -28,11 +30,12 @@ import java.util.List;
  * The {@link CardPresenter} for an audio card.
  *
  * For the audio card, the {@link AudioFragment} implements the View and displays information on
- * media from a {@link MediaViewModel}.
+ * media from a {@link MediaViewModel}, unless a model of a higher priority, like the
+ * {@link InCallModel}, has content.
  */
 public class HomeAudioCardPresenter extends CardPresenter {
 
-    private HomeCardInterface.Model mCurrentModel;
+    private final CardModelArbiter mArbiter = new CardModelArbiter("HomeAudioCard");
     private List<HomeCardInterface.Model> mModelList;
     private MediaViewModel mMediaViewModel;
 
@@ -65,6 +68,7 @@ public class HomeAudioCardPresenter extends CardPresenter {
                 model.onDestroy(getFragment().requireContext());
             }
         }
+        mArbiter.clear();
     }
 
     /**
@@ -72,44 +76,35 @@ public class HomeAudioCardPresenter extends CardPresenter {
      */
     @Override
     public void onViewClicked(View v) {
-        mCurrentModel.onClick(v);
+        HomeCardInterface.Model model = mArbiter.getDisplayedModel();
+        if (model != null) {
+            model.onClick(v);
+        }
     }
 
     /**
      * Updates the View appropriately when a Model has new content.
      *
-     * If the updated model has content, it is displayed, regardless of what is currently shown on
-     * the card. Otherwise if the model on display is updating to empty content (eg. when a call
-     * ends, the InCallModel header and content are updated to null), default to showing the media
-     * model if it has content.
+     * The model displayed is chosen by the {@link CardModelArbiter}: if the updated model has
+     * content, it is displayed unless a model of a higher priority is displayed (eg. an ongoing
+     * call). Otherwise if the model on display is updating to empty content (eg. when a call
+     * ends), the card falls back to another model with content, or is hidden.
      */
     @Override
     public void onModelUpdated(HomeCardInterface.Model model) {
-        // Null card header indicates the model has no content to display
-        if (model.getCardHeader() == null) {
-            if (mCurrentModel != null && model.getClass() == mCurrentModel.getClass()) {
-                // If the model currently on display is updating to empty content, check if there
-                // is media content to display. If there is no media content the super method is
-                // called with empty content, which hides the card.
-                if (mMediaViewModel != null && mMediaViewModel.getCardHeader() != null) {
-                    mCurrentModel = mMediaViewModel;
-                    super.onModelUpdated(mMediaViewModel);
-                    return;
-                }
-            } else {
-                // Otherwise, another model is already on display, so don't update with this
-                // empty content since that would hide the card.
-                return;
-            }
-        } else if (mCurrentModel != null && mCurrentModel.getClass() == InCallModel.class
-                && model.getClass() != InCallModel.class) {
-            // If the Model has content, check if currentModel on display is an ongoing phone call.
-            // If there is any ongoing phone call, do not update the View
-            // if the model trying to update View is NOT a phone call.
-            return;
+        if (mArbiter.onModelUpdated(model)) {
+            super.onModelUpdated(mArbiter.getDisplayedModel());
+        }
+    }
+
+    /**
+     * Called by the {@link MediaViewModel} when the artwork of an upcoming track is fetched, so
+     * that the View prepares its background.
+     */
+    void onArtworkPrefetched(Drawable artwork) {
+        if (getFragment() instanceof AudioFragment) {
+            ((AudioFragment) getFragment()).prefetchBackgroundImage(artwork);
         }
-        mCurrentModel = model;
-        super.onModelUpdated(model);
     }
 
     void initializeControlsActionBar(View actionBar) {
@@ -25,6 +25,7 @@ import android.content.ServiceConnection;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.IBinder;
 import android.telecom.Call;
@@ -41,6 +42,7 @@ import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 
 import com.android.car.carlauncher.R;
+import com.android.car.carlauncher.homescreen.CardModelArbiter;
 import com.android.car.carlauncher.homescreen.HomeCardInterface;
 import com.android.car.carlauncher.homescreen.audio.telecom.InCallServiceImpl;
 import com.android.car.carlauncher.homescreen.ui.CardContent;
@@ -53,14 +55,16 @@ import com.android.car.ui.utils.CarUxRestrictionsUtil;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.ArrayUtils;
 
-import java.io.FileNotFoundException;
-import java.io.InputStream;
 import java.time.Clock;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * The {@link HomeCardInterface.Model} for ongoing phone calls.
+ * The {@link HomeCardInterface.Model} for ongoing phone calls, which takes over the card from the
+ * media.
  */
+@CardModelArbiter.Policy(priority = CardModelArbiter.PRIORITY_HIGH)
 public class InCallModel implements HomeCardInterface.Model, InCallServiceImpl.InCallListener {
 
     private static final String TAG = "InCallModel";
@@ -75,6 +79,9 @@ public class InCallModel implements HomeCardInterface.Model, InCallServiceImpl.I
 
     private Call mCurrentCall;
     private CompletableFuture<Void> mPhoneNumberInfoFuture;
+    private CompletableFuture<Void> mAvatarFuture;
+    private ExecutorService mAvatarExecutor;
+    private ContactInfoCache mContactInfoCache;
 
     private InCallServiceImpl mInCallService;
     private HomeCardInterface.Presenter mPresenter;
@@ -93,7 +100,7 @@ public class InCallModel implements HomeCardInterface.Model, InCallServiceImpl.I
         public void onServiceConnected(ComponentName name, IBinder service) {
             if (DEBUG) Log.d(TAG, "onServiceConnected: " + name + ", service: " + service);
             mInCallService = ((InCallServiceImpl.LocalBinder) service).getService();
-            mInCallService.addListener(InCallModel.this);
+            mInCallService.addListener(mContext.getMainExecutor(), InCallModel.this);
         }
 
         @Override
@@ -130,6 +137,10 @@ public class InCallModel implements HomeCardInterface.Model, InCallServiceImpl.I
         mDefaultDialerCardHeader = createCardHeader(mTelecomManager.getDefaultDialerPackage());
         mCardHeader = mDefaultDialerCardHeader;
 
+        mAvatarExecutor = Executors.newSingleThreadExecutor();
+        mContactInfoCache = new ContactInfoCache(context, mElapsedTimeClock, mAvatarExecutor,
+                context.getResources().getDimensionPixelSize(R.dimen.card_content_image_size));
+
         Intent intent = new Intent(context, InCallServiceImpl.class);
         intent.setAction(InCallServiceImpl.ACTION_LOCAL_BIND);
         context.getApplicationContext().bindService(intent, mInCallServiceConnection,
@@ -139,12 +150,20 @@ public class InCallModel implements HomeCardInterface.Model, InCallServiceImpl.I
     @Override
     public void onDestroy(Context context) {
         if (mInCallService != null) {
+            // Otherwise the service and the calls keep calling this model.
+            mInCallService.removeListener(this);
+            for (Call call : mInCallService.getCalls()) {
+                call.unregisterCallback(mCallback);
+            }
             context.getApplicationContext().unbindService(mInCallServiceConnection);
             mInCallService = null;
         }
         if (mPhoneNumberInfoFuture != null) {
             mPhoneNumberInfoFuture.cancel(/* mayInterruptIfRunning= */true);
         }
+        cancelAvatarLoad();
+        mContactInfoCache.release();
+        mAvatarExecutor.shutdown();
     }
 
     @Override
@@ -223,6 +242,7 @@ public class InCallModel implements HomeCardInterface.Model, InCallServiceImpl.I
         mCurrentCall = null;
         mCardHeader = null;
         mCardContent = null;
+        cancelAvatarLoad();
         mPresenter.onModelUpdated(this);
         if (call != null) {
             call.unregisterCallback(mCallback);
@@ -283,7 +303,8 @@ public class InCallModel implements HomeCardInterface.Model, InCallServiceImpl.I
     /**
      * Updates the model's content using the given {@link TelecomUtils.PhoneNumberInfo}. If there is
      * a corresponding contact, use the contact's name and avatar. If the contact doesn't have an
-     * avatar, use an icon with their first initial.
+     * avatar, use an icon with their first initial. The icon is also shown until the avatar is
+     * decoded, unless the avatar was decoded before.
      */
     @VisibleForTesting
     void updateModelWithContact(TelecomUtils.PhoneNumberInfo phoneNumberInfo,
@@ -305,20 +326,20 @@ public class InCallModel implements HomeCardInterface.Model, InCallServiceImpl.I
         } else {
             initials = TelecomUtils.getInitials(contactName);
         }
+        cancelAvatarLoad();
         Drawable contactImage = null;
-        if (phoneNumberInfo.getAvatarUri() != null) {
-            try {
-                InputStream inputStream = mContext.getContentResolver().openInputStream(
-                        phoneNumberInfo.getAvatarUri());
-                contactImage = Drawable.createFromStream(inputStream,
-                        phoneNumberInfo.getAvatarUri().toString());
-            } catch (FileNotFoundException e) {
-                // If no file is found for the contact's avatar URI, the icon will be set to a
-                // LetterTile below.
-                if (DEBUG) {
-                    Log.d(TAG, "Unable to find contact avatar from Uri: "
-                            + phoneNumberInfo.getAvatarUri(), e);
-                }
+        Uri avatarUri = phoneNumberInfo.getAvatarUri();
+        if (avatarUri != null) {
+            contactImage = mContactInfoCache.getCachedAvatar(avatarUri);
+            if (contactImage == null) {
+                // If the avatar can't be decoded, the icon stays a LetterTile.
+                String title = contactName;
+                mAvatarFuture = mContactInfoCache.loadAvatar(avatarUri).thenAccept(avatar -> {
+                    if (avatar != null && mCurrentCall != null) {
+                        mCardContent = createPhoneCardContent(avatar, title, callState);
+                        mPresenter.onModelUpdated(this);
+                    }
+                });
             }
         }
         if (contactImage == null) {
@@ -357,12 +378,25 @@ public class InCallModel implements HomeCardInterface.Model, InCallServiceImpl.I
         if (mPhoneNumberInfoFuture != null) {
             mPhoneNumberInfoFuture.cancel(/* mayInterruptIfRunning= */ true);
         }
-        mPhoneNumberInfoFuture = TelecomUtils.getPhoneNumberInfo(mContext,
-                        callDetails.getNumber())
+        // The contact of a repeat caller, or of the call whose state changed, is shown right away.
+        TelecomUtils.PhoneNumberInfo phoneNumberInfo =
+                mContactInfoCache.getCachedPhoneNumberInfo(callDetails.getNumber());
+        if (phoneNumberInfo != null) {
+            updateModelWithContact(phoneNumberInfo, callState);
+            return;
+        }
+        mPhoneNumberInfoFuture = mContactInfoCache.getPhoneNumberInfo(callDetails.getNumber())
                 .thenAcceptAsync(x -> updateModelWithContact(x, callState),
                         mContext.getMainExecutor());
     }
 
+    private void cancelAvatarLoad() {
+        if (mAvatarFuture != null) {
+            mAvatarFuture.cancel(/* mayInterruptIfRunning= */ false);
+            mAvatarFuture = null;
+        }
+    }
+
     private CardContent createPhoneCardContent(Drawable image, CharSequence title,
             @Call.CallState int callState) {
         switch (callState) {
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher.homescreen.audio;
+
+import android.content.Context;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.Size;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+
+import com.android.car.apps.common.imaging.ImageBinder;
+import com.android.car.media.common.MediaItemMetadata;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Fetches the artwork of the next items of the playback queue ahead of time, so that the media
+ * card can show the artwork of the next track as soon as it starts.
+ *
+ * <p>The artworks are fetched at the card's art size and kept in a cache capped to
+ * {@link #MAX_CACHE_BYTES}, the oldest artworks being evicted first. The
+ * {@link Listener} is told about each fetched artwork, e.g. to precompute its blurred background.
+ */
+@MainThread
+final class MediaArtworkPrefetcher {
+    @VisibleForTesting
+    static final int MAX_CACHE_BYTES = 4 * 1024 * 1024;
+
+    /** Told about the prefetched artworks. */
+    interface Listener {
+        /** Called when the artwork of an upcoming item is fetched. */
+        void onArtworkPrefetched(Drawable artwork);
+    }
+
+    private final Context mContext;
+    // Creates the binder fetching an artwork for the given client.
+    private final Function<Consumer<Drawable>, ImageBinder<MediaItemMetadata.ArtworkRef>>
+            mBinderFactory;
+    private final int mPrefetchCount;
+    private final Listener mListener;
+    // The fetched artworks, from the oldest to the newest.
+    private final List<Entry> mCache = new ArrayList<>();
+    // The artworks being fetched, their binders are kept until the fetch completes.
+    private final List<Entry> mFetches = new ArrayList<>();
+
+    MediaArtworkPrefetcher(Context context, Size maxArtSize, int prefetchCount,
+            Listener listener) {
+        this(context, client -> new ImageBinder<>(ImageBinder.PlaceholderType.NONE, maxArtSize,
+                client), prefetchCount, listener);
+    }
+
+    @VisibleForTesting
+    MediaArtworkPrefetcher(Context context,
+            Function<Consumer<Drawable>, ImageBinder<MediaItemMetadata.ArtworkRef>> binderFactory,
+            int prefetchCount, Listener listener) {
+        mContext = context;
+        mBinderFactory = binderFactory;
+        mPrefetchCount = prefetchCount;
+        mListener = listener;
+    }
+
+    /**
+     * Prefetches the artwork of the items following the active item {@code activeQueueItemId}
+     * in {@code queue}. Nothing is prefetched if the active item isn't in the queue.
+     */
+    void prefetch(@Nullable List<MediaItemMetadata> queue, long activeQueueItemId) {
+        List<MediaItemMetadata.ArtworkRef> upcoming = new ArrayList<>(mPrefetchCount);
+        if (queue != null) {
+            int activeIndex = -1;
+            for (int i = 0; i < queue.size(); i++) {
+                if (Objects.equals(queue.get(i).getQueueId(), activeQueueItemId)) {
+                    activeIndex = i;
+                    break;
+                }
+            }
+            for (int i = activeIndex + 1; activeIndex >= 0 && i < queue.size()
+                    && upcoming.size() < mPrefetchCount; i++) {
+                MediaItemMetadata.ArtworkRef artworkRef = queue.get(i).getArtworkKey();
+                if (artworkRef != null) {
+                    upcoming.add(artworkRef);
+                }
+            }
+        }
+        // Cancels the fetches which aren't needed anymore.
+        for (int i = mFetches.size() - 1; i >= 0; i--) {
+            Entry fetch = mFetches.get(i);
+            if (indexOf(upcoming, fetch.mArtworkRef) < 0) {
+                mFetches.remove(i);
+                fetch.mBinder.setImage(mContext, /* newArtRef= */ null);
+            }
+        }
+        for (MediaItemMetadata.ArtworkRef artworkRef : upcoming) {
+            if (find(mCache, artworkRef) != null || find(mFetches, artworkRef) != null) {
+                continue;
+            }
+            Entry fetch = new Entry(artworkRef);
+            fetch.mBinder = mBinderFactory.apply(drawable -> onFetched(fetch, drawable));
+            mFetches.add(fetch);
+            fetch.mBinder.setImage(mContext, artworkRef);
+        }
+    }
+
+    /** Returns the prefetched artwork of {@code artworkRef}, if any. */
+    @Nullable
+    Drawable getArtwork(@Nullable MediaItemMetadata.ArtworkRef artworkRef) {
+        if (artworkRef == null) {
+            return null;
+        }
+        Entry entry = find(mCache, artworkRef);
+        return entry == null ? null : entry.mArtwork;
+    }
+
+    /** Cancels the fetches and clears the cache. */
+    void release() {
+        for (Entry fetch : mFetches) {
+            fetch.mBinder.setImage(mContext, /* newArtRef= */ null);
+        }
+        mFetches.clear();
+        mCache.clear();
+    }
+
+    private void onFetched(Entry fetch, @Nullable Drawable artwork) {
+        if (artwork == null || !mFetches.remove(fetch)) {
+            // The placeholder, or the fetch was cancelled meanwhile.
+            return;
+        }
+        fetch.mBinder = null;
+        fetch.mArtwork = artwork;
+        mCache.add(fetch);
+        trimCache();
+        mListener.onArtworkPrefetched(artwork);
+    }
+
+    private void trimCache() {
+        int bytes = 0;
+        for (Entry entry : mCache) {
+            bytes += entry.getByteCount();
+        }
+        while (bytes > MAX_CACHE_BYTES && mCache.size() > 1) {
+            bytes -= mCache.remove(0).getByteCount();
+        }
+    }
+
+    private int indexOf(List<MediaItemMetadata.ArtworkRef> artworkRefs,
+            MediaItemMetadata.ArtworkRef artworkRef) {
+        for (int i = 0; i < artworkRefs.size(); i++) {
+            if (artworkRefs.get(i).equals(mContext, artworkRef)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Nullable
+    private Entry find(List<Entry> entries, MediaItemMetadata.ArtworkRef artworkRef) {
+        for (Entry entry : entries) {
+            if (entry.mArtworkRef.equals(mContext, artworkRef)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static final class Entry {
+        final MediaItemMetadata.ArtworkRef mArtworkRef;
+        ImageBinder<MediaItemMetadata.ArtworkRef> mBinder;
+        Drawable mArtwork;
+
+        Entry(MediaItemMetadata.ArtworkRef artworkRef) {
+            mArtworkRef = artworkRef;
+        }
+
+        int getByteCount() {
+            if (mArtwork instanceof BitmapDrawable
+                    && ((BitmapDrawable) mArtwork).getBitmap() != null) {
+                return ((BitmapDrawable) mArtwork).getBitmap().getAllocationByteCount();
+            }
+            return mArtwork.getIntrinsicWidth() * mArtwork.getIntrinsicHeight() * 4;
+        }
+    }
+}
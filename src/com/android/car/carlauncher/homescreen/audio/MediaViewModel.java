@@ -25,6 +25,7 @@ import android.car.media.CarMediaIntents;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.drawable.Drawable;
+import android.text.TextUtils;
 import android.util.Log;
 import android.util.Size;
 import android.view.Display;
@@ -43,6 +44,7 @@ import com.android.car.carlauncher.homescreen.ui.DescriptiveTextWithControlsView
 import com.android.car.media.common.MediaItemMetadata;
 import com.android.car.media.common.R;
 import com.android.car.media.common.playback.PlaybackViewModel;
+import com.android.car.media.common.playback.PlaybackViewModel.PlaybackStateWrapper;
 import com.android.car.media.common.source.MediaSource;
 import com.android.car.media.common.source.MediaSourceViewModel;
 import com.android.internal.annotations.VisibleForTesting;
@@ -55,6 +57,8 @@ import com.android.internal.annotations.VisibleForTesting;
 public class MediaViewModel extends AndroidViewModel implements HomeCardInterface.Model {
 
     private static final String TAG = "MediaViewModel";
+    // The number of upcoming queue items whose artwork is prefetched.
+    private static final int ARTWORK_PREFETCH_COUNT = 2;
 
     private HomeCardInterface.Presenter mAudioPresenter;
     // MediaSourceViewModel is for the current or last played media app
@@ -68,11 +72,22 @@ public class MediaViewModel extends AndroidViewModel implements HomeCardInterfac
     private Drawable mAppIcon;
     private CharSequence mSongTitle;
     private CharSequence mArtistName;
+    // Whether the metadata was cleared, as there was no metadata.
+    private boolean mMetadataCleared;
+    private MediaItemMetadata.ArtworkRef mArtworkKey;
     private ImageBinder<MediaItemMetadata.ArtworkRef> mAlbumArtBinder;
     private Drawable mAlbumImageBitmap;
+    private MediaArtworkPrefetcher mArtworkPrefetcher;
+    // Whether the album art was prefetched, the album art binder is then ignored.
+    private boolean mAlbumArtPrefetched;
+    // Immutable snapshot of the content, only re-created when the content changes.
+    private DescriptiveTextWithControlsView mCardContent =
+            new DescriptiveTextWithControlsView(/* image= */ null, /* title= */ null,
+                    /* subtitle= */ null);
 
     private Observer<Object> mMediaSourceObserver = x -> updateModel();
     private Observer<Object> mMetadataObserver = x -> updateModelMetadata();
+    private Observer<Object> mQueueObserver = x -> prefetchArtwork();
 
     public MediaViewModel(Application application) {
         super(application);
@@ -81,9 +96,16 @@ public class MediaViewModel extends AndroidViewModel implements HomeCardInterfac
     @VisibleForTesting
     MediaViewModel(Application application, MediaSourceViewModel sourceViewModel,
             PlaybackViewModel playbackViewModel) {
+        this(application, sourceViewModel, playbackViewModel, /* artworkPrefetcher= */ null);
+    }
+
+    @VisibleForTesting
+    MediaViewModel(Application application, MediaSourceViewModel sourceViewModel,
+            PlaybackViewModel playbackViewModel, MediaArtworkPrefetcher artworkPrefetcher) {
         super(application);
         mSourceViewModel = sourceViewModel;
         mPlaybackViewModel = playbackViewModel;
+        mArtworkPrefetcher = artworkPrefetcher;
     }
 
     @Override
@@ -102,11 +124,27 @@ public class MediaViewModel extends AndroidViewModel implements HomeCardInterfac
         Size maxArtSize = new Size(max, max);
         mAlbumArtBinder = new ImageBinder<>(ImageBinder.PlaceholderType.FOREGROUND, maxArtSize,
                 drawable -> {
+                    if (mAlbumArtPrefetched) {
+                        return;
+                    }
                     mAlbumImageBitmap = drawable;
-                    mAudioPresenter.onModelUpdated(this);
+                    if (updateCardContent()) {
+                        mAudioPresenter.onModelUpdated(this);
+                    }
                 });
+        if (mArtworkPrefetcher == null) {
+            mArtworkPrefetcher = new MediaArtworkPrefetcher(context, maxArtSize,
+                    ARTWORK_PREFETCH_COUNT, artwork -> {
+                        if (mAudioPresenter instanceof HomeAudioCardPresenter) {
+                            ((HomeAudioCardPresenter) mAudioPresenter)
+                                    .onArtworkPrefetched(artwork);
+                        }
+                    });
+        }
         mSourceViewModel.getPrimaryMediaSource().observeForever(mMediaSourceObserver);
         mPlaybackViewModel.getMetadata().observeForever(mMetadataObserver);
+        mPlaybackViewModel.getQueue().observeForever(mQueueObserver);
+        mPlaybackViewModel.getPlaybackStateWrapper().observeForever(mQueueObserver);
         mAudioPresenter.onModelUpdated(this);
     }
 
@@ -115,6 +153,9 @@ public class MediaViewModel extends AndroidViewModel implements HomeCardInterfac
         super.onCleared();
         mSourceViewModel.getPrimaryMediaSource().removeObserver(mMediaSourceObserver);
         mPlaybackViewModel.getMetadata().removeObserver(mMetadataObserver);
+        mPlaybackViewModel.getQueue().removeObserver(mQueueObserver);
+        mPlaybackViewModel.getPlaybackStateWrapper().removeObserver(mQueueObserver);
+        mArtworkPrefetcher.release();
     }
 
     @Override
@@ -149,7 +190,21 @@ public class MediaViewModel extends AndroidViewModel implements HomeCardInterfac
 
     @Override
     public CardContent getCardContent() {
-        return new DescriptiveTextWithControlsView(mAlbumImageBitmap, mSongTitle, mArtistName);
+        return mCardContent;
+    }
+
+    /**
+     * Re-creates the content snapshot if the title, artist or album art changed, and returns
+     * whether it did.
+     */
+    private boolean updateCardContent() {
+        DescriptiveTextWithControlsView content = new DescriptiveTextWithControlsView(
+                mAlbumImageBitmap, mSongTitle, mArtistName);
+        if (content.equals(mCardContent)) {
+            return false;
+        }
+        mCardContent = content;
+        return true;
     }
 
     /**
@@ -180,6 +235,7 @@ public class MediaViewModel extends AndroidViewModel implements HomeCardInterfac
                 mAppIcon = mediaSource.getIcon();
                 mCardHeader = new CardHeader(mAppName, mAppIcon);
                 updateMetadata();
+                updateCardContent();
             } else {
                 if (Log.isLoggable(TAG, Log.INFO)) {
                     Log.i(TAG, "Not resetting media widget for video apps or apps "
@@ -196,7 +252,7 @@ public class MediaViewModel extends AndroidViewModel implements HomeCardInterfac
     private void updateModelMetadata() {
         if (metadataChanged()) {
             updateMetadata();
-            if (mCardHeader != null) {
+            if (updateCardContent() && mCardHeader != null) {
                 mAudioPresenter.onModelUpdated(this);
             }
         }
@@ -207,33 +263,71 @@ public class MediaViewModel extends AndroidViewModel implements HomeCardInterfac
         if (metadata == null) {
             clearMetadata();
         } else {
+            mMetadataCleared = false;
             mSongTitle = metadata.getTitle();
             mArtistName = metadata.getSubtitle();
-            mAlbumArtBinder.setImage(mContext, metadata.getArtworkKey());
+            mArtworkKey = metadata.getArtworkKey();
+            Drawable prefetchedArt = mArtworkPrefetcher.getArtwork(metadata.getArtworkKey());
+            if (prefetchedArt != null) {
+                // Shown right away, the binder is reset so that it fetches the next art again.
+                mAlbumArtPrefetched = true;
+                mAlbumArtBinder.setImage(mContext, /* newArtRef = */ null);
+                mAlbumImageBitmap = prefetchedArt;
+            } else {
+                mAlbumArtPrefetched = false;
+                mAlbumArtBinder.setImage(mContext, metadata.getArtworkKey());
+            }
+        }
+    }
+
+    /**
+     * Prefetches the artwork of the upcoming queue items.
+     */
+    private void prefetchArtwork() {
+        PlaybackStateWrapper playbackState =
+                mPlaybackViewModel.getPlaybackStateWrapper().getValue();
+        if (playbackState == null) {
+            return;
         }
+        mArtworkPrefetcher.prefetch(mPlaybackViewModel.getQueue().getValue(),
+                playbackState.getActiveQueueItemId());
     }
 
     private void clearMetadata() {
+        mMetadataCleared = true;
+        mAlbumArtPrefetched = false;
         mSongTitle = mContext.getString(R.string.default_media_song_title);
         mArtistName = null;
+        mArtworkKey = null;
         mAlbumArtBinder.setImage(mContext, /* newArtRef = */ null);
     }
 
     /**
-     * Helper method to check for a change in the media's metadata
+     * Helper method to check for a change in the media's metadata, the texts and the artwork are
+     * compared by value as the metadata is often re-created with the same texts and artwork.
      */
     private boolean metadataChanged() {
         MediaItemMetadata metadata = mPlaybackViewModel.getMetadata().getValue();
-        if (metadata == null && (mSongTitle != null || mArtistName != null)) {
+        if (metadata == null && !mMetadataCleared
+                && (mSongTitle != null || mArtistName != null)) {
             return true;
         }
-        if (metadata != null && (mSongTitle != metadata.getTitle()
-                || mArtistName != metadata.getSubtitle())) {
+        if (metadata != null && (mMetadataCleared
+                || !TextUtils.equals(mSongTitle, metadata.getTitle())
+                || !TextUtils.equals(mArtistName, metadata.getSubtitle())
+                || artworkChanged(metadata.getArtworkKey()))) {
             return true;
         }
         return false;
     }
 
+    private boolean artworkChanged(MediaItemMetadata.ArtworkRef artworkKey) {
+        if (mArtworkKey == null || artworkKey == null) {
+            return mArtworkKey != artworkKey;
+        }
+        return !mArtworkKey.equals(mContext, artworkKey);
+    }
+
     /**
      * Helper method to check for a change in the media source
      */
@@ -245,7 +339,7 @@ public class MediaViewModel extends AndroidViewModel implements HomeCardInterfac
             }
             return true;
         }
-        if (mediaSource != null && (mAppName != mediaSource.getDisplayName()
+        if (mediaSource != null && (!TextUtils.equals(mAppName, mediaSource.getDisplayName())
                 || mAppIcon != mediaSource.getIcon())) {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "new media source is " + mediaSource.toString());
@@ -25,14 +25,27 @@ import android.telecom.CallAudioState;
 import android.telecom.InCallService;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import com.android.car.carlauncher.homescreen.audio.InCallModel;
+import com.android.internal.annotations.GuardedBy;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /**
  * Implementation of {@link InCallService}, an {@link android.telecom} service which must be
  * implemented by an app that wishes to provide functionality for managing phone calls. This service
  * is bound by android telecom and {@link InCallModel}.
+ *
+ * <p>The service keeps the current calls and the last {@link CallAudioState}, which are replayed
+ * to the listeners when they are added, so that a listener bound after a call started, e.g. a
+ * re-created {@link InCallModel}, shows it right away. The events are dispatched while holding
+ * the service's lock, so that a listener doesn't miss nor receive twice an event happening while
+ * it's added.
  */
 public class InCallServiceImpl extends InCallService {
     private static final String TAG = "Home.InCallServiceImpl";
@@ -44,29 +57,40 @@ public class InCallServiceImpl extends InCallService {
      */
     public static final String ACTION_LOCAL_BIND = "local_bind";
 
-    private ArrayList<InCallListener> mInCallListeners = new ArrayList<>();
+    // Copy-on-write, the listeners can be added or removed from their callbacks.
+    private final CopyOnWriteArrayList<ListenerRecord> mInCallListeners =
+            new CopyOnWriteArrayList<>();
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    private final List<Call> mCalls = new ArrayList<>();
+    @GuardedBy("mLock")
+    @Nullable
+    private CallAudioState mAudioState;
 
     @Override
     public void onCallAdded(Call call) {
         if (DEBUG) Log.d(TAG, "onCallAdded: " + call);
-        for (InCallListener listener : mInCallListeners) {
-            listener.onCallAdded(call);
+        synchronized (mLock) {
+            mCalls.add(call);
+            dispatchLocked(listener -> listener.onCallAdded(call));
         }
     }
 
     @Override
     public void onCallRemoved(Call call) {
         if (DEBUG) Log.d(TAG, "onCallRemoved: " + call);
-        for (InCallListener listener : mInCallListeners) {
-            listener.onCallRemoved(call);
+        synchronized (mLock) {
+            mCalls.remove(call);
+            dispatchLocked(listener -> listener.onCallRemoved(call));
         }
     }
 
     @Override
     public void onCallAudioStateChanged(CallAudioState audioState) {
         if (DEBUG) Log.d(TAG, "onCallAudioStateChanged: " + audioState);
-        for (InCallListener listener : mInCallListeners) {
-            listener.onCallAudioStateChanged(audioState);
+        synchronized (mLock) {
+            mAudioState = audioState;
+            dispatchLocked(listener -> listener.onCallAudioStateChanged(audioState));
         }
     }
 
@@ -88,10 +112,70 @@ public class InCallServiceImpl extends InCallService {
     }
 
     /**
-     * Adds a listener for {@link InCallService} events
+     * Adds a listener for {@link InCallService} events, called on the calling thread of the
+     * events.
      */
     public void addListener(InCallListener listener) {
-        mInCallListeners.add(listener);
+        addListener(Runnable::run, listener);
+    }
+
+    /**
+     * Adds a listener for {@link InCallService} events, called on {@code executor}. The listener
+     * is told right away about the current calls and the current {@link CallAudioState}.
+     */
+    public void addListener(Executor executor, InCallListener listener) {
+        synchronized (mLock) {
+            removeListener(listener);
+            ListenerRecord record = new ListenerRecord(executor, listener);
+            mInCallListeners.add(record);
+            for (Call call : mCalls) {
+                record.dispatch(l -> l.onCallAdded(call));
+            }
+            CallAudioState audioState = mAudioState;
+            if (audioState != null) {
+                record.dispatch(l -> l.onCallAudioStateChanged(audioState));
+            }
+        }
+    }
+
+    /**
+     * Removes a listener, its callbacks still queued on its executor are dropped.
+     */
+    public void removeListener(InCallListener listener) {
+        for (ListenerRecord record : mInCallListeners) {
+            if (record.mListener == listener) {
+                record.mRemoved = true;
+                mInCallListeners.remove(record);
+            }
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void dispatchLocked(Consumer<InCallListener> event) {
+        for (ListenerRecord record : mInCallListeners) {
+            record.dispatch(event);
+        }
+    }
+
+    /** A listener with the executor running its callbacks. */
+    private static final class ListenerRecord {
+        final Executor mExecutor;
+        final InCallListener mListener;
+        // Drops the callbacks queued on the executor once removed.
+        volatile boolean mRemoved;
+
+        ListenerRecord(Executor executor, InCallListener listener) {
+            mExecutor = executor;
+            mListener = listener;
+        }
+
+        void dispatch(Consumer<InCallListener> event) {
+            mExecutor.execute(() -> {
+                if (!mRemoved) {
+                    event.accept(mListener);
+                }
+            });
+        }
     }
 
     /**
@@ -37,4 +37,19 @@ public abstract class CardContent {
      * Returns the type of content layout
      */
     public abstract HomeCardContentType getType();
+
+    /**
+     * Called once the content is bound to the views of a card, e.g. to record the state it was
+     * bound with.
+     */
+    public void onBound() {}
+
+    /**
+     * Returns whether the content was modified in place since {@link #onBound()}, e.g. the state
+     * of one of its icons changed, in which case it needs to be bound again although it's the
+     * same object.
+     */
+    public boolean isModifiedSinceBound() {
+        return false;
+    }
 }
@@ -17,6 +17,9 @@
 package com.android.car.carlauncher.homescreen.ui;
 
 import android.graphics.drawable.Drawable;
+import android.text.TextUtils;
+
+import java.util.Objects;
 
 /**
  * The header of a home app card displays the name and icon of the app that's providing
@@ -44,4 +47,25 @@ public final class CardHeader {
     public Drawable getCardIcon() {
         return mCardIcon;
     }
+
+    /**
+     * Two headers are equal if their titles have the same text and they have the same icon
+     * instance.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CardHeader)) {
+            return false;
+        }
+        CardHeader other = (CardHeader) o;
+        return TextUtils.equals(mCardTitle, other.mCardTitle) && mCardIcon == other.mCardIcon;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(Objects.toString(mCardTitle, null), mCardIcon);
+    }
 }
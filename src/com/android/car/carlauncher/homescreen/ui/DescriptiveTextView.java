@@ -17,6 +17,9 @@
 package com.android.car.carlauncher.homescreen.ui;
 
 import android.graphics.drawable.Drawable;
+import android.text.TextUtils;
+
+import java.util.Objects;
 
 /**
  * A layout that displays a title line of text with a subtitle line below
@@ -66,4 +69,28 @@ public class DescriptiveTextView extends CardContent {
     public Drawable getImage() {
         return mImage;
     }
+
+    /**
+     * Two contents are equal if their texts are the same and they have the same image instance.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DescriptiveTextView other = (DescriptiveTextView) o;
+        return mImage == other.mImage
+                && TextUtils.equals(mTitle, other.mTitle)
+                && TextUtils.equals(mSubtitle, other.mSubtitle)
+                && TextUtils.equals(mFooter, other.mFooter);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mImage, Objects.toString(mTitle, null),
+                Objects.toString(mSubtitle, null), Objects.toString(mFooter, null));
+    }
 }
@@ -17,8 +17,12 @@
 package com.android.car.carlauncher.homescreen.ui;
 
 import android.graphics.drawable.Drawable;
+import android.text.TextUtils;
 import android.view.View;
 
+import java.util.Arrays;
+import java.util.Objects;
+
 /**
  * A layout that displays a title line of text with a subtitle line below and three buttons to
  * control the audio. Displayed using card_content_descriptive_text_with_controls.xml
@@ -33,6 +37,12 @@ public class DescriptiveTextWithControlsView extends CardContent {
     private Control mCenterControl;
     private Control mRightControl;
     private long mStartTime;
+    // The states of the control icons when the content was created, e.g. selected, as the same
+    // icon instances can be reused with other states.
+    private int[][] mControlIconStates;
+    // The states of the control icons when the content was last bound, as the models can change
+    // them in place, e.g. the mute state of a call.
+    private int[][] mBoundControlIconStates;
 
     public DescriptiveTextWithControlsView(Drawable image, CharSequence title,
             CharSequence subtitle) {
@@ -49,6 +59,7 @@ public class DescriptiveTextWithControlsView extends CardContent {
         mLeftControl = leftControl;
         mCenterControl = centerControl;
         mRightControl = rightControl;
+        mControlIconStates = getIconStates(leftControl, centerControl, rightControl);
     }
 
     public DescriptiveTextWithControlsView(Drawable image, CharSequence title,
@@ -61,6 +72,7 @@ public class DescriptiveTextWithControlsView extends CardContent {
         mLeftControl = leftControl;
         mCenterControl = centerControl;
         mRightControl = rightControl;
+        mControlIconStates = getIconStates(leftControl, centerControl, rightControl);
     }
 
     @Override
@@ -96,6 +108,57 @@ public class DescriptiveTextWithControlsView extends CardContent {
         return mRightControl;
     }
 
+    /**
+     * Two contents are equal if their texts, start times and controls, including the states of the
+     * control icons, are the same and they have the same image instance.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DescriptiveTextWithControlsView other = (DescriptiveTextWithControlsView) o;
+        return mImage == other.mImage
+                && TextUtils.equals(mTitle, other.mTitle)
+                && TextUtils.equals(mSubtitle, other.mSubtitle)
+                && mStartTime == other.mStartTime
+                && Objects.equals(mLeftControl, other.mLeftControl)
+                && Objects.equals(mCenterControl, other.mCenterControl)
+                && Objects.equals(mRightControl, other.mRightControl)
+                && Arrays.deepEquals(mControlIconStates, other.mControlIconStates);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mImage, Objects.toString(mTitle, null),
+                Objects.toString(mSubtitle, null), mStartTime, mLeftControl, mCenterControl,
+                mRightControl);
+    }
+
+    @Override
+    public void onBound() {
+        mBoundControlIconStates = getIconStates(mLeftControl, mCenterControl, mRightControl);
+    }
+
+    @Override
+    public boolean isModifiedSinceBound() {
+        return mBoundControlIconStates != null && !Arrays.deepEquals(mBoundControlIconStates,
+                getIconStates(mLeftControl, mCenterControl, mRightControl));
+    }
+
+    private static int[][] getIconStates(Control... controls) {
+        int[][] iconStates = new int[controls.length][];
+        for (int i = 0; i < controls.length; i++) {
+            Drawable icon = controls[i] == null ? null : controls[i].getIcon();
+            int[] iconState = icon == null ? null : icon.getState();
+            iconStates[i] = iconState == null ? null : iconState.clone();
+        }
+        return iconStates;
+    }
+
     /**
      * A button shown with the DescriptiveTextWithControlsView that has a {@link Drawable} icon
      * used as the button's image and an {@link android.view.View.OnClickListener} that defines the
@@ -118,5 +181,26 @@ public class DescriptiveTextWithControlsView extends CardContent {
         public View.OnClickListener getOnClickListener() {
             return mOnClickListener;
         }
+
+        /**
+         * Two controls are equal if they have the same icon instance and the same listener
+         * instance.
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Control)) {
+                return false;
+            }
+            Control other = (Control) o;
+            return mIcon == other.mIcon && mOnClickListener == other.mOnClickListener;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mIcon, mOnClickListener);
+        }
     }
 }
@@ -16,6 +16,10 @@
 
 package com.android.car.carlauncher.homescreen.ui;
 
+import android.text.TextUtils;
+
+import java.util.Objects;
+
 /**
  * A layout that displays a potentially multi-line block of text
  */
@@ -48,4 +52,24 @@ public class TextBlockView extends CardContent {
     public CharSequence getFooter() {
         return mFooter;
     }
+
+    /**
+     * Two contents are equal if their texts are the same.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TextBlockView other = (TextBlockView) o;
+        return TextUtils.equals(mText, other.mText) && TextUtils.equals(mFooter, other.mFooter);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(Objects.toString(mText, null), Objects.toString(mFooter, null));
+    }
 }
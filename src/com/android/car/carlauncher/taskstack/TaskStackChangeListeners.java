@@ -18,30 +18,57 @@ package com.android.car.carlauncher.taskstack;
 
 import android.app.ActivityManager;
 import android.app.ActivityTaskManager;
+import android.app.IActivityTaskManager;
 import android.app.TaskStackListener;
 import android.content.ComponentName;
 import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.RemoteException;
 import android.util.Log;
+import android.view.Choreographer;
 
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.wm.shell.common.HandlerExecutor;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
-/** Organizer of many task stack listeners for the car launcher application. */
+/**
+ * Organizer of many task stack listeners for the car launcher application.
+ *
+ * <p>Registered listeners are kept in an immutable snapshot which is replaced on every
+ * registration change, so that dispatching a callback never takes a lock. Each listener is
+ * called on the executor it was registered with; listeners sharing an executor are called one
+ * after the other from a single task posted to that executor. A callback is delivered to the
+ * listeners registered when it arrives which are still registered when it runs.
+ *
+ * <p>Listeners registered with {@link #registerCoalescingTaskStackListener} opt into a
+ * coalescing mode for the callbacks which arrive in bursts during app launches:
+ * {@code onTaskStackChanged} is delivered at most once per frame, and only the latest
+ * {@code onTaskMovedToFront} & {@code onTaskFocusChanged} per task are delivered, in one pass.
+ * The coalesced callbacks are delivered in the order of their latest occurrence, e.g. a focus
+ * change followed by a move to front of the same task are delivered in that order, and before
+ * any callback which isn't coalesced and arrived after them.
+ */
 public class TaskStackChangeListeners {
     private static final String TAG = TaskStackChangeListeners.class.getSimpleName();
     private static final boolean DEBUG = Build.IS_DEBUGGABLE;
     private static final TaskStackChangeListeners INSTANCE = new TaskStackChangeListeners(
-            new HandlerExecutor(Handler.getMain()));
+            new HandlerExecutor(Handler.getMain()), ActivityTaskManager::getService,
+            Choreographer::getInstance);
 
     private final Impl mImpl;
 
-    private TaskStackChangeListeners(Executor executor) {
-        mImpl = new Impl(executor);
+    @VisibleForTesting
+    TaskStackChangeListeners(Executor defaultExecutor,
+            Supplier<IActivityTaskManager> activityTaskManager,
+            Supplier<Choreographer> choreographer) {
+        mImpl = new Impl(defaultExecutor, activityTaskManager, choreographer);
     }
 
     /** Returns a singleton instance of the {@link TaskStackChangeListeners}. */
@@ -50,161 +77,375 @@ public class TaskStackChangeListeners {
     }
 
     /**
-     * Registers a task stack listener with the system.
-     * This should be called on the main thread.
+     * Registers a task stack listener with the system. The listener is called on the main thread.
+     * This can be called from any thread.
      */
     public void registerTaskStackListener(TaskStackListener listener) {
-        synchronized (mImpl) {
-            mImpl.addListener(listener);
-        }
+        registerTaskStackListener(listener, mImpl.mDefaultExecutor);
+    }
+
+    /**
+     * Registers a task stack listener with the system. The listener is called on the given
+     * {@code executor}. This can be called from any thread.
+     */
+    public void registerTaskStackListener(TaskStackListener listener, Executor executor) {
+        mImpl.addListener(listener, executor);
         if (DEBUG) {
             Log.d(TAG, "registerTaskStackListener: " + listener);
         }
     }
 
     /**
-     * Unregisters a task stack listener with the system.
+     * Registers a task stack listener with the system in coalescing mode. The listener is called
+     * on the main thread, and the bursty callbacks are merged and delivered once per frame.
      * This should be called on the main thread.
      */
-    public void unregisterTaskStackListener(TaskStackListener listener) {
-        synchronized (mImpl) {
-            mImpl.removeListener(listener);
+    public void registerCoalescingTaskStackListener(TaskStackListener listener) {
+        mImpl.addCoalescingListener(listener);
+        if (DEBUG) {
+            Log.d(TAG, "registerCoalescingTaskStackListener: " + listener);
         }
+    }
+
+    /**
+     * Unregisters a task stack listener with the system.
+     * This can be called from any thread.
+     */
+    public void unregisterTaskStackListener(TaskStackListener listener) {
+        mImpl.removeListener(listener);
         if (DEBUG) {
             Log.d(TAG, "unregisterTaskStackListener: " + listener);
         }
     }
 
-    private static class Impl extends TaskStackListener {
+    /** Returns the listener registered with the system, which dispatches to the listeners. */
+    @VisibleForTesting
+    TaskStackListener getSystemListener() {
+        return mImpl;
+    }
 
-        private final List<TaskStackListener> mTaskStackListeners = new ArrayList<>();
+    /** A call to a single {@link TaskStackListener} callback. */
+    private interface ListenerCall {
+        void call(TaskStackListener listener) throws RemoteException;
+    }
 
-        private final Executor mExecutor;
-        private boolean mRegistered;
+    /** A coalesced callback pending delivery. */
+    private static final class PendingCall {
+        final String mName;
+        final ListenerCall mCall;
+
+        PendingCall(String name, ListenerCall call) {
+            mName = name;
+            mCall = call;
+        }
+    }
+
+    /** A registered listener and its executor. */
+    private static final class Registration {
+        final TaskStackListener mListener;
+        final Executor mExecutor;
+        // Set once unregistered, so that the callbacks already posted are dropped.
+        volatile boolean mRemoved;
 
-        Impl(Executor executor) {
+        Registration(TaskStackListener listener, Executor executor) {
+            mListener = listener;
             mExecutor = executor;
         }
+    }
 
-        public void addListener(TaskStackListener listener) {
-            synchronized (mTaskStackListeners) {
-                mTaskStackListeners.add(listener);
+    /** The listeners sharing the same executor. Immutable once published. */
+    private static final class ExecutorGroup {
+        final Executor mExecutor;
+        final Registration[] mRegistrations;
+
+        ExecutorGroup(Executor executor, Registration[] registrations) {
+            mExecutor = executor;
+            mRegistrations = registrations;
+        }
+    }
+
+    private static class Impl extends TaskStackListener {
+        private static final ExecutorGroup[] EMPTY = new ExecutorGroup[0];
+        private static final Registration[] NO_REGISTRATIONS = new Registration[0];
+        // The types of the coalesced callbacks, part of their key along with the task id.
+        private static final int TYPE_STACK_CHANGED = 0;
+        private static final int TYPE_MOVED_TO_FRONT = 1;
+        private static final int TYPE_FOCUS_CHANGED = 2;
+
+        private final Executor mDefaultExecutor;
+        private final Supplier<IActivityTaskManager> mActivityTaskManager;
+        private final Supplier<Choreographer> mChoreographer;
+        // Guards the registration state only, dispatching reads mGroups without locking.
+        private final Object mLock = new Object();
+        // Serializes the calls to the system, which are made without holding mLock.
+        private final Object mServiceLock = new Object();
+        // Registered listeners in registration order.
+        @GuardedBy("mLock")
+        private final List<Registration> mRegistrations = new ArrayList<>();
+        @GuardedBy("mLock")
+        private final List<Registration> mCoalescingRegistrations = new ArrayList<>();
+        private volatile ExecutorGroup[] mGroups = EMPTY;
+        private volatile Registration[] mCoalescingSnapshot = NO_REGISTRATIONS;
+        // Created on the main thread along with the first coalescing listener.
+        private volatile Coalescer mCoalescer;
+        @GuardedBy("mServiceLock")
+        private boolean mRegistered;
+
+        Impl(Executor defaultExecutor, Supplier<IActivityTaskManager> activityTaskManager,
+                Supplier<Choreographer> choreographer) {
+            mDefaultExecutor = defaultExecutor;
+            mActivityTaskManager = activityTaskManager;
+            mChoreographer = choreographer;
+        }
+
+        public void addListener(TaskStackListener listener, Executor executor) {
+            synchronized (mLock) {
+                mRegistrations.add(new Registration(listener, executor));
+                mGroups = buildGroupsLocked();
             }
-            if (!mRegistered) {
-                // Register mTaskStackListener to IActivityManager only once if needed.
-                try {
-                    ActivityTaskManager.getService().registerTaskStackListener(this);
-                    mRegistered = true;
-                } catch (Exception e) {
-                    Log.w(TAG, "Failed to call registerTaskStackListener", e);
+            updateServiceRegistration();
+        }
+
+        public void addCoalescingListener(TaskStackListener listener) {
+            if (Looper.myLooper() != Looper.getMainLooper()) {
+                throw new IllegalStateException("Coalescing listeners must be registered on the"
+                        + " main thread");
+            }
+            synchronized (mLock) {
+                if (mCoalescer == null) {
+                    mCoalescer = new Coalescer(mChoreographer.get());
                 }
+                mCoalescingRegistrations.add(new Registration(listener, mDefaultExecutor));
+                mCoalescingSnapshot = mCoalescingRegistrations.toArray(NO_REGISTRATIONS);
             }
+            updateServiceRegistration();
         }
 
         public void removeListener(TaskStackListener listener) {
-            boolean isEmpty;
-            synchronized (mTaskStackListeners) {
-                mTaskStackListeners.remove(listener);
-                isEmpty = mTaskStackListeners.isEmpty();
+            synchronized (mLock) {
+                if (removeRegistrationLocked(mRegistrations, listener)) {
+                    mGroups = buildGroupsLocked();
+                } else if (removeRegistrationLocked(mCoalescingRegistrations, listener)) {
+                    mCoalescingSnapshot = mCoalescingRegistrations.toArray(NO_REGISTRATIONS);
+                } else {
+                    return;
+                }
             }
-            if (isEmpty && mRegistered) {
-                // Unregister mTaskStackListener once we have no more listeners
+            updateServiceRegistration();
+        }
+
+        @GuardedBy("mLock")
+        private static boolean removeRegistrationLocked(List<Registration> registrations,
+                TaskStackListener listener) {
+            for (int i = 0; i < registrations.size(); i++) {
+                if (registrations.get(i).mListener == listener) {
+                    registrations.remove(i).mRemoved = true;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Registers with the system while there are listeners, and unregisters once there are
+         * none. The binder calls are made without holding mLock.
+         */
+        private void updateServiceRegistration() {
+            synchronized (mServiceLock) {
+                boolean hasListeners;
+                synchronized (mLock) {
+                    hasListeners = !mRegistrations.isEmpty()
+                            || !mCoalescingRegistrations.isEmpty();
+                }
+                if (hasListeners == mRegistered) {
+                    return;
+                }
                 try {
-                    ActivityTaskManager.getService().unregisterTaskStackListener(this);
-                    mRegistered = false;
+                    if (hasListeners) {
+                        mActivityTaskManager.get().registerTaskStackListener(this);
+                    } else {
+                        mActivityTaskManager.get().unregisterTaskStackListener(this);
+                    }
+                    mRegistered = hasListeners;
                 } catch (Exception e) {
-                    Log.w(TAG, "Failed to call unregisterTaskStackListener", e);
+                    Log.w(TAG, "Failed to call " + (hasListeners ? "register" : "unregister")
+                            + "TaskStackListener", e);
                 }
             }
         }
 
-        @Override
-        public void onTaskStackChanged() throws RemoteException {
-            mExecutor.execute(() -> {
-                synchronized (mTaskStackListeners) {
-                    for (int i = 0; i < mTaskStackListeners.size(); i++) {
-                        try {
-                            mTaskStackListeners.get(i).onTaskStackChanged();
-                        } catch (RemoteException e) {
-                            Log.e(TAG, "onTaskStackChanged failed", e);
-                        }
+        @GuardedBy("mLock")
+        private ExecutorGroup[] buildGroupsLocked() {
+            List<ExecutorGroup> groups = new ArrayList<>();
+            List<Executor> seen = new ArrayList<>();
+            for (int i = 0; i < mRegistrations.size(); i++) {
+                Executor executor = mRegistrations.get(i).mExecutor;
+                if (seen.contains(executor)) {
+                    continue;
+                }
+                seen.add(executor);
+                List<Registration> registrations = new ArrayList<>();
+                for (int j = i; j < mRegistrations.size(); j++) {
+                    if (mRegistrations.get(j).mExecutor == executor) {
+                        registrations.add(mRegistrations.get(j));
                     }
                 }
+                groups.add(new ExecutorGroup(executor,
+                        registrations.toArray(new Registration[0])));
+            }
+            return groups.toArray(EMPTY);
+        }
+
+        private void dispatch(String callbackName, ListenerCall call) {
+            ExecutorGroup[] groups = mGroups;
+            for (ExecutorGroup group : groups) {
+                group.mExecutor.execute(
+                        () -> deliver(group.mRegistrations, callbackName, call));
+            }
+        }
+
+        /** Calls the listeners which are still registered. */
+        private static void deliver(Registration[] registrations, String callbackName,
+                ListenerCall call) {
+            for (Registration registration : registrations) {
+                // Unregistered after the callback was posted.
+                if (registration.mRemoved) {
+                    continue;
+                }
+                try {
+                    call.call(registration.mListener);
+                } catch (RemoteException e) {
+                    Log.e(TAG, callbackName + " failed", e);
+                }
+            }
+        }
+
+        /**
+         * Dispatches a callback which isn't coalesced. Coalescing listeners get it on the main
+         * thread after the pending coalesced callbacks, so that they observe the original order.
+         * Like {@link #dispatch}, the listeners are snapshotted when the callback arrives.
+         */
+        private void dispatchInOrder(String callbackName, ListenerCall call) {
+            dispatch(callbackName, call);
+            Coalescer coalescer = mCoalescer;
+            Registration[] registrations = mCoalescingSnapshot;
+            if (coalescer == null || registrations.length == 0) {
+                return;
+            }
+            mDefaultExecutor.execute(() -> {
+                coalescer.flush();
+                deliver(registrations, callbackName, call);
             });
         }
 
+        private boolean hasCoalescingListeners() {
+            return mCoalescer != null && mCoalescingSnapshot.length > 0;
+        }
+
+        @Override
+        public void onTaskStackChanged() throws RemoteException {
+            dispatch("onTaskStackChanged", TaskStackListener::onTaskStackChanged);
+            if (hasCoalescingListeners()) {
+                mCoalescer.add(TYPE_STACK_CHANGED, /* taskId= */ 0, "onTaskStackChanged",
+                        TaskStackListener::onTaskStackChanged);
+            }
+        }
+
         @Override
         public void onTaskCreated(int taskId, ComponentName componentName) throws RemoteException {
-            mExecutor.execute(() -> {
-                synchronized (mTaskStackListeners) {
-                    for (int i = 0; i < mTaskStackListeners.size(); i++) {
-                        try {
-                            mTaskStackListeners.get(i).onTaskCreated(taskId, componentName);
-                        } catch (RemoteException e) {
-                            Log.e(TAG, "onTaskCreated failed", e);
-                        }
-                    }
-                }
-            });
+            dispatchInOrder("onTaskCreated", l -> l.onTaskCreated(taskId, componentName));
         }
 
         @Override
         public void onTaskRemoved(int taskId) throws RemoteException {
-            mExecutor.execute(() -> {
-                synchronized (mTaskStackListeners) {
-                    for (int i = 0; i < mTaskStackListeners.size(); i++) {
-                        try {
-                            mTaskStackListeners.get(i).onTaskRemoved(taskId);
-                        } catch (RemoteException e) {
-                            Log.e(TAG, "onTaskRemoved failed", e);
-                        }
-                    }
-                }
-            });
+            dispatchInOrder("onTaskRemoved", l -> l.onTaskRemoved(taskId));
         }
 
         @Override
         public void onTaskMovedToFront(ActivityManager.RunningTaskInfo taskInfo)
                 throws RemoteException {
-            mExecutor.execute(() -> {
-                synchronized (mTaskStackListeners) {
-                    for (int i = 0; i < mTaskStackListeners.size(); i++) {
-                        try {
-                            mTaskStackListeners.get(i).onTaskMovedToFront(taskInfo);
-                        } catch (RemoteException e) {
-                            Log.e(TAG, "onTaskMovedToFront failed", e);
-                        }
-                    }
-                }
-            });
+            dispatch("onTaskMovedToFront", l -> l.onTaskMovedToFront(taskInfo));
+            if (hasCoalescingListeners()) {
+                mCoalescer.add(TYPE_MOVED_TO_FRONT, taskInfo.taskId, "onTaskMovedToFront",
+                        l -> l.onTaskMovedToFront(taskInfo));
+            }
         }
 
         @Override
         public void onTaskFocusChanged(int taskId, boolean focused) {
-            mExecutor.execute(() -> {
-                synchronized (mTaskStackListeners) {
-                    for (int i = 0; i < mTaskStackListeners.size(); i++) {
-                        mTaskStackListeners.get(i).onTaskFocusChanged(taskId, focused);
-                    }
-                }
-            });
+            dispatch("onTaskFocusChanged", l -> l.onTaskFocusChanged(taskId, focused));
+            if (hasCoalescingListeners()) {
+                mCoalescer.add(TYPE_FOCUS_CHANGED, taskId, "onTaskFocusChanged",
+                        l -> l.onTaskFocusChanged(taskId, focused));
+            }
         }
 
         @Override
         public void onActivityRestartAttempt(ActivityManager.RunningTaskInfo task,
                 boolean homeTaskVisible, boolean clearedTask, boolean wasVisible) {
-            mExecutor.execute(() -> {
-                synchronized (mTaskStackListeners) {
-                    for (TaskStackListener listener : mTaskStackListeners) {
-                        try {
-                            listener.onActivityRestartAttempt(
-                                    task, homeTaskVisible, clearedTask, wasVisible);
-                        } catch (RemoteException e) {
-                            Log.e(TAG, "onActivityRestartAttempt failed", e);
-                        }
+            dispatchInOrder("onActivityRestartAttempt", l -> l.onActivityRestartAttempt(
+                    task, homeTaskVisible, clearedTask, wasVisible));
+        }
+
+        /**
+         * Accumulates the bursty callbacks from the binder threads and delivers them to the
+         * coalescing listeners on the next frame. Only the latest callback of each type and task
+         * is kept, in the order of the latest callbacks. The callbacks are delivered to the
+         * listeners registered at delivery.
+         */
+        private final class Coalescer implements Choreographer.FrameCallback {
+            private final Choreographer mChoreographer;
+            // Guards the pending state only, never held while calling the listeners.
+            private final Object mPendingLock = new Object();
+            // By type & task, the insertion order is the order of the latest callbacks.
+            @GuardedBy("mPendingLock")
+            private LinkedHashMap<Long, PendingCall> mPending = new LinkedHashMap<>();
+            @GuardedBy("mPendingLock")
+            private boolean mFrameScheduled;
+            // Double buffer, only touched on the main thread.
+            private LinkedHashMap<Long, PendingCall> mDelivering = new LinkedHashMap<>();
+
+            Coalescer(Choreographer choreographer) {
+                mChoreographer = choreographer;
+            }
+
+            void add(int type, int taskId, String callbackName, ListenerCall call) {
+                long key = ((long) type << 32) | (taskId & 0xffffffffL);
+                synchronized (mPendingLock) {
+                    // Removes first so that the callback moves to the end of the order.
+                    mPending.remove(key);
+                    mPending.put(key, new PendingCall(callbackName, call));
+                    if (!mFrameScheduled) {
+                        mFrameScheduled = true;
+                        // Choreographer#postFrameCallback is safe to call from any thread.
+                        mChoreographer.postFrameCallback(this);
                     }
                 }
-            });
+            }
+
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                flush();
+            }
+
+            /** Delivers the pending callbacks right away. Should be called on the main thread. */
+            void flush() {
+                synchronized (mPendingLock) {
+                    if (mFrameScheduled) {
+                        mChoreographer.removeFrameCallback(this);
+                        mFrameScheduled = false;
+                    }
+                    LinkedHashMap<Long, PendingCall> pending = mPending;
+                    mPending = mDelivering;
+                    mDelivering = pending;
+                }
+
+                Registration[] registrations = mCoalescingSnapshot;
+                for (PendingCall pendingCall : mDelivering.values()) {
+                    deliver(registrations, pendingCall.mName, pendingCall.mCall);
+                }
+                mDelivering.clear();
+            }
         }
     }
 }
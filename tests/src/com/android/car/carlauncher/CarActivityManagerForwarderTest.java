@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import android.app.ActivityManager;
+import android.car.app.CarActivityManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+@RunWith(JUnit4.class)
+public class CarActivityManagerForwarderTest {
+    @Mock
+    private CarActivityManager mCarActivityManager;
+
+    private final AtomicReference<CarActivityManager> mCarActivityManagerRef =
+            new AtomicReference<>();
+    private final List<Runnable> mQueuedRunnables = new ArrayList<>();
+    private final TaskEventMetrics mMetrics = new TaskEventMetrics();
+    private CarActivityManagerForwarder mForwarder;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mCarActivityManagerRef.set(mCarActivityManager);
+        mForwarder = new CarActivityManagerForwarder(mCarActivityManagerRef,
+                mQueuedRunnables::add, mMetrics, mQueuedRunnables::add);
+    }
+
+    @Test
+    public void events_notForwardedUntilExecutorRuns() {
+        mForwarder.onTaskAppeared(createTask(/* taskId= */ 1));
+
+        verifyZeroInteractions(mCarActivityManager);
+    }
+
+    @Test
+    public void events_forwardedInOrder_inSinglePass() {
+        ActivityManager.RunningTaskInfo task1 = createTask(/* taskId= */ 1);
+        ActivityManager.RunningTaskInfo task2 = createTask(/* taskId= */ 2);
+
+        mForwarder.onTaskAppeared(task1);
+        mForwarder.onTaskAppeared(task2);
+        mForwarder.onTaskVanished(task1);
+        runQueued();
+
+        assertThat(mQueuedRunnables).isEmpty();
+        InOrder inOrder = inOrder(mCarActivityManager);
+        inOrder.verify(mCarActivityManager).onTaskAppeared(task1);
+        inOrder.verify(mCarActivityManager).onTaskAppeared(task2);
+        inOrder.verify(mCarActivityManager).onTaskVanished(task1);
+    }
+
+    @Test
+    public void taskInfoChanged_sameTask_collapsedToLatest() {
+        ActivityManager.RunningTaskInfo first = createTask(/* taskId= */ 1);
+        ActivityManager.RunningTaskInfo second = createTask(/* taskId= */ 1);
+        ActivityManager.RunningTaskInfo latest = createTask(/* taskId= */ 1);
+
+        mForwarder.onTaskInfoChanged(first);
+        mForwarder.onTaskInfoChanged(second);
+        mForwarder.onTaskInfoChanged(latest);
+        runQueued();
+
+        verify(mCarActivityManager, never()).onTaskInfoChanged(first);
+        verify(mCarActivityManager, never()).onTaskInfoChanged(second);
+        verify(mCarActivityManager).onTaskInfoChanged(latest);
+        assertThat(mForwarder.getCollapsedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void taskInfoChanged_afterVanished_notCollapsedAcrossIt() {
+        ActivityManager.RunningTaskInfo changed = createTask(/* taskId= */ 1);
+        ActivityManager.RunningTaskInfo vanished = createTask(/* taskId= */ 1);
+        ActivityManager.RunningTaskInfo changedAgain = createTask(/* taskId= */ 1);
+
+        mForwarder.onTaskInfoChanged(changed);
+        mForwarder.onTaskVanished(vanished);
+        mForwarder.onTaskInfoChanged(changedAgain);
+        runQueued();
+
+        InOrder inOrder = inOrder(mCarActivityManager);
+        inOrder.verify(mCarActivityManager).onTaskInfoChanged(changed);
+        inOrder.verify(mCarActivityManager).onTaskVanished(vanished);
+        inOrder.verify(mCarActivityManager).onTaskInfoChanged(changedAgain);
+    }
+
+    @Test
+    public void carActivityManagerGone_eventsDropped() {
+        mForwarder.onTaskAppeared(createTask(/* taskId= */ 1));
+        mCarActivityManagerRef.set(null);
+
+        runQueued();
+
+        verifyZeroInteractions(mCarActivityManager);
+        assertThat(mMetrics.getDroppedCount(TaskEventMetrics.CAR_ACTIVITY_MANAGER
+                + TaskEventMetrics.ON_TASK_APPEARED)).isEqualTo(1);
+    }
+
+    @Test
+    public void eventsBeforeCarActivityManagerSet_aliveTasksReplayed() {
+        mCarActivityManagerRef.set(null);
+        ActivityManager.RunningTaskInfo task1 = createTask(/* taskId= */ 1);
+        ActivityManager.RunningTaskInfo task1Changed = createTask(/* taskId= */ 1);
+        ActivityManager.RunningTaskInfo task2 = createTask(/* taskId= */ 2);
+        mForwarder.onTaskAppeared(task1);
+        mForwarder.onTaskAppeared(task2);
+        mForwarder.onTaskInfoChanged(task1Changed);
+        mForwarder.onTaskVanished(task2);
+        runQueued();
+
+        mForwarder.setCarActivityManager(mCarActivityManager);
+        runQueued();
+
+        verify(mCarActivityManager).onTaskAppeared(task1Changed);
+        verify(mCarActivityManager, never()).onTaskAppeared(task1);
+        verify(mCarActivityManager, never()).onTaskAppeared(task2);
+        verify(mCarActivityManager, never()).onTaskVanished(task2);
+    }
+
+    @Test
+    public void setCarActivityManager_pendingEventsReplacedByReplay() {
+        ActivityManager.RunningTaskInfo task = createTask(/* taskId= */ 1);
+        mForwarder.onTaskAppeared(task);
+
+        mForwarder.setCarActivityManager(mCarActivityManager);
+        runQueued();
+
+        verify(mCarActivityManager, times(1)).onTaskAppeared(task);
+    }
+
+    @Test
+    public void setCarActivityManagerNull_eventsNotQueued() {
+        mForwarder.setCarActivityManager(null);
+
+        mForwarder.onTaskAppeared(createTask(/* taskId= */ 1));
+
+        assertThat(mQueuedRunnables).isEmpty();
+        verifyZeroInteractions(mCarActivityManager);
+    }
+
+    private void runQueued() {
+        while (!mQueuedRunnables.isEmpty()) {
+            mQueuedRunnables.remove(0).run();
+        }
+    }
+
+    private static ActivityManager.RunningTaskInfo createTask(int taskId) {
+        ActivityManager.RunningTaskInfo taskInfo = new ActivityManager.RunningTaskInfo();
+        taskInfo.taskId = taskId;
+        return taskInfo;
+    }
+}
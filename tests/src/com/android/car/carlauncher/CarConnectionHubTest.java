@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.car.Car;
+import android.car.app.CarActivityManager;
+import android.car.test.mocks.AbstractExtendedMockitoTestCase;
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.android.dx.mockito.inline.extended.ExtendedMockito;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+@RunWith(AndroidJUnit4.class)
+public class CarConnectionHubTest extends AbstractExtendedMockitoTestCase {
+    private final Context mContext = ApplicationProvider.getApplicationContext();
+
+    @Mock
+    private Car mCar;
+    @Mock
+    private CarActivityManager mCarActivityManager;
+    @Mock
+    private CarConnectionHub.Listener mListener1;
+    @Mock
+    private CarConnectionHub.Listener mListener2;
+
+    private Car.CarServiceLifecycleListener mCarServiceLifecycleListener;
+    private int mCreateCarCalls;
+    private CarConnectionHub mHub;
+
+    @Override
+    protected void onSessionBuilder(@NonNull CustomMockitoSessionBuilder builder) {
+        builder.spyStatic(Car.class);
+    }
+
+    @Before
+    public void setUp() {
+        ExtendedMockito.doAnswer(invocation -> {
+            mCreateCarCalls++;
+            mCarServiceLifecycleListener = invocation.getArgument(3);
+            return mCar;
+        }).when(() -> Car.createCar(any(), any(), anyLong(), any()));
+        when(mCar.getCarManager(Car.CAR_ACTIVITY_SERVICE)).thenReturn(mCarActivityManager);
+        mHub = new CarConnectionHub(mContext, Runnable::run, /* eventHandler= */ null);
+    }
+
+    @Test
+    public void addListener_multipleListeners_connectsOnce() {
+        mHub.addListener(Runnable::run, mListener1);
+        mHub.addListener(Runnable::run, mListener2);
+
+        mCarServiceLifecycleListener.onLifecycleChanged(mCar, /* ready= */ true);
+
+        assertThat(mCreateCarCalls).isEqualTo(1);
+        verify(mListener1).onCarReady(mCar);
+        verify(mListener2).onCarReady(mCar);
+    }
+
+    @Test
+    public void addListener_alreadyConnected_readyCalledRightAway() {
+        mHub.addListener(Runnable::run, mListener1);
+        mCarServiceLifecycleListener.onLifecycleChanged(mCar, /* ready= */ true);
+
+        mHub.addListener(Runnable::run, mListener2);
+
+        verify(mListener2).onCarReady(mCar);
+    }
+
+    @Test
+    public void carServiceCrashed_listenersToldAndReconnected() {
+        mHub.addListener(Runnable::run, mListener1);
+        mCarServiceLifecycleListener.onLifecycleChanged(mCar, /* ready= */ true);
+
+        mCarServiceLifecycleListener.onLifecycleChanged(mCar, /* ready= */ false);
+        assertThat(mHub.getCarManager(Car.CAR_ACTIVITY_SERVICE)).isNull();
+        mCarServiceLifecycleListener.onLifecycleChanged(mCar, /* ready= */ true);
+
+        verify(mListener1).onCarLost();
+        verify(mListener1, times(2)).onCarReady(mCar);
+    }
+
+    @Test
+    public void removeListener_lastListener_disconnects() {
+        mHub.addListener(Runnable::run, mListener1);
+        mHub.addListener(Runnable::run, mListener2);
+        mCarServiceLifecycleListener.onLifecycleChanged(mCar, /* ready= */ true);
+
+        mHub.removeListener(mListener1);
+        verify(mCar, never()).disconnect();
+        mHub.removeListener(mListener2);
+
+        verify(mCar).disconnect();
+    }
+
+    @Test
+    public void acquireTaskMonitor_notConnected_returnsNoConnection() {
+        mHub.addListener(Runnable::run, mListener1);
+
+        assertThat(mHub.acquireTaskMonitor()).isEqualTo(CarConnectionHub.NO_CONNECTION);
+        verify(mCarActivityManager, never()).registerTaskMonitor();
+    }
+
+    @Test
+    public void taskMonitor_sharedByHolders_unregisteredByLastOne() {
+        mHub.addListener(Runnable::run, mListener1);
+        mCarServiceLifecycleListener.onLifecycleChanged(mCar, /* ready= */ true);
+
+        int connection1 = mHub.acquireTaskMonitor();
+        int connection2 = mHub.acquireTaskMonitor();
+        verify(mCarActivityManager).registerTaskMonitor();
+
+        mHub.releaseTaskMonitor(connection1);
+        verify(mCarActivityManager, never()).unregisterTaskMonitor();
+        mHub.releaseTaskMonitor(connection2);
+        verify(mCarActivityManager).unregisterTaskMonitor();
+    }
+
+    @Test
+    public void taskMonitor_carServiceCrashed_staleReleaseIgnored() {
+        mHub.addListener(Runnable::run, mListener1);
+        mCarServiceLifecycleListener.onLifecycleChanged(mCar, /* ready= */ true);
+        int staleConnection = mHub.acquireTaskMonitor();
+        mCarServiceLifecycleListener.onLifecycleChanged(mCar, /* ready= */ false);
+        mCarServiceLifecycleListener.onLifecycleChanged(mCar, /* ready= */ true);
+
+        mHub.acquireTaskMonitor();
+        mHub.releaseTaskMonitor(staleConnection);
+
+        verify(mCarActivityManager, times(2)).registerTaskMonitor();
+        verify(mCarActivityManager, never()).unregisterTaskMonitor();
+    }
+}
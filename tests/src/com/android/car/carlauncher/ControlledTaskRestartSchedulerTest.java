@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher;
+
+import static android.app.ActivityTaskManager.INVALID_TASK_ID;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentName;
+import android.content.Intent;
+
+import com.android.wm.shell.common.ShellExecutor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(JUnit4.class)
+public class ControlledTaskRestartSchedulerTest {
+    @Mock
+    private ShellExecutor mShellExecutor;
+    @Mock
+    private Random mRandom;
+
+    private final List<Runnable> mPostedRunnables = new ArrayList<>();
+    private long mNow = 1_000_000;
+    private ControlledTaskRestartScheduler mScheduler;
+    private ControlledCarTaskView mTaskView;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        doAnswer(invocation -> {
+            mPostedRunnables.add(invocation.getArgument(0));
+            return null;
+        }).when(mShellExecutor).execute(any());
+        // No jitter: nextFloat() == 0.5 maps to a jitter of 0.
+        when(mRandom.nextFloat()).thenReturn(0.5f);
+        mScheduler = new ControlledTaskRestartScheduler(mShellExecutor, () -> mNow, mRandom);
+        mTaskView = createTaskView();
+        mScheduler.add(mTaskView);
+    }
+
+    @Test
+    public void requestRestart_firstTime_restartsImmediately() {
+        mScheduler.requestRestart(mTaskView, "test");
+        runPosted();
+
+        verify(mTaskView).startActivity();
+        verify(mShellExecutor, never()).executeDelayed(any(), anyLong());
+    }
+
+    @Test
+    public void requestRestart_concurrentRequests_mergedIntoSingleLaunch() {
+        mScheduler.requestRestart(mTaskView, "focus");
+        mScheduler.requestRestart(mTaskView, "package replaced");
+        mScheduler.requestRestart(mTaskView, "user unlocked");
+        runPosted();
+
+        verify(mTaskView, times(1)).startActivity();
+    }
+
+    @Test
+    public void requestRestart_taskAlreadyRunning_doesNotLaunch() {
+        mScheduler.requestRestart(mTaskView, "test");
+        when(mTaskView.getTaskId()).thenReturn(1);
+        runPosted();
+
+        verify(mTaskView, never()).startActivity();
+    }
+
+    @Test
+    public void requestRestart_consecutiveCrashes_backsOffExponentially() {
+        ArgumentCaptor<Long> delayCaptor = ArgumentCaptor.forClass(Long.class);
+
+        crashAndRestart();
+        crashAndRestart();
+        crashAndRestart();
+
+        verify(mShellExecutor, times(2)).executeDelayed(any(), delayCaptor.capture());
+        assertThat(delayCaptor.getAllValues()).containsExactly(
+                ControlledTaskRestartScheduler.BASE_BACKOFF_MS,
+                ControlledTaskRestartScheduler.BASE_BACKOFF_MS * 2).inOrder();
+    }
+
+    @Test
+    public void requestRestart_afterStableRun_resetsBackoff() {
+        crashAndRestart();
+        mScheduler.onTaskAppeared(mTaskView);
+        mNow += ControlledTaskRestartScheduler.STABLE_RUN_MS;
+
+        crashAndRestart();
+
+        verify(mShellExecutor, never()).executeDelayed(any(), anyLong());
+        verify(mTaskView, times(2)).startActivity();
+    }
+
+    @Test
+    public void requestRestart_crashLoop_opensCircuitBreaker() {
+        for (int i = 0; i < ControlledTaskRestartScheduler.CRASH_LOOP_THRESHOLD; i++) {
+            mScheduler.onTaskVanished(mTaskView);
+        }
+
+        mScheduler.requestRestart(mTaskView, "crash");
+
+        assertThat(mScheduler.hasPendingRestart(mTaskView)).isFalse();
+        assertThat(mScheduler.hasDeferredRestart(mTaskView)).isTrue();
+        runPosted();
+        verify(mTaskView, never()).startActivity();
+    }
+
+    @Test
+    public void requestRestart_breakerOpen_retriedWhenItCloses() {
+        for (int i = 0; i < ControlledTaskRestartScheduler.CRASH_LOOP_THRESHOLD; i++) {
+            mScheduler.onTaskVanished(mTaskView);
+        }
+        mScheduler.requestRestart(mTaskView, "crash");
+        mScheduler.requestRestart(mTaskView, "host focused");
+        ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(mShellExecutor).executeDelayed(runnableCaptor.capture(),
+                eq(ControlledTaskRestartScheduler.CIRCUIT_BREAKER_COOLDOWN_MS));
+
+        mNow += ControlledTaskRestartScheduler.CIRCUIT_BREAKER_COOLDOWN_MS;
+        runnableCaptor.getValue().run();
+
+        assertThat(mScheduler.hasDeferredRestart(mTaskView)).isFalse();
+        assertThat(mScheduler.hasPendingRestart(mTaskView)).isTrue();
+    }
+
+    @Test
+    public void onPackageReplaced_afterVanish_notCountedAsCrash() {
+        crashAndRestart();
+        mScheduler.onTaskVanished(mTaskView);
+        mNow += ControlledTaskRestartScheduler.PACKAGE_UPDATE_WINDOW_MS;
+        mScheduler.onPackageReplaced(mTaskView);
+
+        mScheduler.requestRestart(mTaskView, "package replaced");
+        runPosted();
+
+        // Still the first crash, so no backoff.
+        verify(mShellExecutor, never()).executeDelayed(any(), anyLong());
+        verify(mTaskView, times(2)).startActivity();
+    }
+
+    @Test
+    public void onPackageReplaced_vanishOpenedBreaker_closesIt() {
+        for (int i = 0; i < ControlledTaskRestartScheduler.CRASH_LOOP_THRESHOLD; i++) {
+            mScheduler.onTaskVanished(mTaskView);
+        }
+        mScheduler.requestRestart(mTaskView, "crash");
+
+        mScheduler.onPackageReplaced(mTaskView);
+        runPosted();
+
+        assertThat(mScheduler.hasDeferredRestart(mTaskView)).isFalse();
+        assertThat(mScheduler.hasPendingRestart(mTaskView)).isTrue();
+    }
+
+    @Test
+    public void removedTaskView_vanishAndRequestsIgnored() {
+        mScheduler.remove(mTaskView);
+
+        mScheduler.onTaskVanished(mTaskView);
+        mScheduler.requestRestart(mTaskView, "crash");
+        runPosted();
+
+        assertThat(mScheduler.hasPendingRestart(mTaskView)).isFalse();
+        verify(mTaskView, never()).startActivity();
+    }
+
+    @Test
+    public void requestRestart_afterBreakerCooldown_restartsAgain() {
+        for (int i = 0; i < ControlledTaskRestartScheduler.CRASH_LOOP_THRESHOLD; i++) {
+            mScheduler.onTaskVanished(mTaskView);
+        }
+        mNow += ControlledTaskRestartScheduler.CIRCUIT_BREAKER_COOLDOWN_MS;
+
+        mScheduler.requestRestart(mTaskView, "crash");
+
+        assertThat(mScheduler.hasPendingRestart(mTaskView)).isTrue();
+    }
+
+    @Test
+    public void clear_cancelsPendingRestarts() {
+        mScheduler.onTaskVanished(mTaskView);
+        mScheduler.onTaskVanished(mTaskView);
+        mScheduler.requestRestart(mTaskView, "crash");
+
+        mScheduler.clear();
+
+        verify(mShellExecutor).removeCallbacks(any());
+        assertThat(mScheduler.hasPendingRestart(mTaskView)).isFalse();
+    }
+
+    @Test
+    public void clear_laterEventsDoNotRecreateState() {
+        mScheduler.clear();
+
+        mScheduler.onTaskAppeared(mTaskView);
+        mScheduler.onTaskVanished(mTaskView);
+        mScheduler.requestRestart(mTaskView, "crash");
+
+        assertThat(mScheduler.hasPendingRestart(mTaskView)).isFalse();
+        assertThat(mPostedRunnables).isEmpty();
+    }
+
+    private void crashAndRestart() {
+        mScheduler.onTaskVanished(mTaskView);
+        mScheduler.requestRestart(mTaskView, "crash");
+        runPosted();
+        // Runs the delayed restart if any.
+        ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(mShellExecutor, atLeast(0))
+                .executeDelayed(runnableCaptor.capture(), anyLong());
+        if (mScheduler.hasPendingRestart(mTaskView)) {
+            List<Runnable> delayed = runnableCaptor.getAllValues();
+            delayed.get(delayed.size() - 1).run();
+        }
+    }
+
+    private void runPosted() {
+        while (!mPostedRunnables.isEmpty()) {
+            mPostedRunnables.remove(0).run();
+        }
+    }
+
+    private static ControlledCarTaskView createTaskView() {
+        ControlledCarTaskView taskView = mock(ControlledCarTaskView.class);
+        when(taskView.getTaskId()).thenReturn(INVALID_TASK_ID);
+        when(taskView.getConfig()).thenReturn(ControlledCarTaskViewConfig.builder()
+                .setActivityIntent(new Intent().setComponent(
+                        new ComponentName("com.test", "com.test.Maps")))
+                .build());
+        return taskView;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.android.wm.shell.common.ShellExecutor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.function.Supplier;
+
+@RunWith(AndroidJUnit4.class)
+public class LazyCarTaskViewTest {
+    private static final long PARK_TIMEOUT_MS = 1000;
+
+    @Mock
+    private View mContainer;
+    @Mock
+    private ViewTreeObserver mViewTreeObserver;
+    @Mock
+    private ShellExecutor mShellExecutor;
+    @Mock
+    private Supplier<CarTaskView> mFactory;
+    @Mock
+    private LazyCarTaskView.Parker mParker;
+    @Mock
+    private CarTaskView mTaskView;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mContainer.getViewTreeObserver()).thenReturn(mViewTreeObserver);
+        when(mFactory.get()).thenReturn(mTaskView);
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(mShellExecutor).execute(any());
+    }
+
+    @Test
+    public void containerHidden_taskViewNotCreated() {
+        setContainerVisible(false);
+
+        new LazyCarTaskView(mContainer, mShellExecutor, PARK_TIMEOUT_MS, mFactory, mParker);
+
+        verify(mFactory, never()).get();
+    }
+
+    @Test
+    public void containerBecomesVisible_taskViewCreated() {
+        setContainerVisible(false);
+        LazyCarTaskView lazyTaskView = new LazyCarTaskView(mContainer, mShellExecutor,
+                PARK_TIMEOUT_MS, mFactory, mParker);
+
+        setContainerVisible(true);
+        lazyTaskView.onGlobalLayout();
+
+        assertThat(lazyTaskView.getTaskView()).isSameInstanceAs(mTaskView);
+    }
+
+    @Test
+    public void containerHiddenForParkTimeout_taskParkedThenUnparked() {
+        setContainerVisible(true);
+        LazyCarTaskView lazyTaskView = new LazyCarTaskView(mContainer, mShellExecutor,
+                PARK_TIMEOUT_MS, mFactory, mParker);
+
+        setContainerVisible(false);
+        lazyTaskView.onGlobalLayout();
+        ArgumentCaptor<Runnable> park = ArgumentCaptor.forClass(Runnable.class);
+        verify(mShellExecutor).executeDelayed(park.capture(), eq(PARK_TIMEOUT_MS));
+        park.getValue().run();
+        verify(mParker).setEmbeddedTaskParked(mTaskView, /* parked= */ true);
+
+        setContainerVisible(true);
+        lazyTaskView.onGlobalLayout();
+        verify(mParker).setEmbeddedTaskParked(mTaskView, /* parked= */ false);
+    }
+
+    @Test
+    public void noParking_taskNeverParked() {
+        setContainerVisible(true);
+        LazyCarTaskView lazyTaskView = new LazyCarTaskView(mContainer, mShellExecutor,
+                TaskViewManager.NO_PARKING, mFactory, mParker);
+
+        setContainerVisible(false);
+        lazyTaskView.onGlobalLayout();
+
+        verify(mShellExecutor, never()).executeDelayed(any(), anyLong());
+        verify(mParker, never()).setEmbeddedTaskParked(any(), anyBoolean());
+    }
+
+    private void setContainerVisible(boolean visible) {
+        when(mContainer.isShown()).thenReturn(visible);
+        when(mContainer.getWidth()).thenReturn(visible ? 100 : 0);
+        when(mContainer.getHeight()).thenReturn(visible ? 100 : 0);
+    }
+}
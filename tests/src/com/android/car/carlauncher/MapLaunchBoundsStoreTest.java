@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Configuration;
+import android.graphics.Rect;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@RunWith(AndroidJUnit4.class)
+public class MapLaunchBoundsStoreTest {
+    private static final String PREFS_NAME = "map_launch_bounds_test";
+    private static final Rect BOUNDS = new Rect(0, 0, 800, 600);
+
+    private final Context mContext = ApplicationProvider.getApplicationContext();
+    private final List<Runnable> mExecutorQueue = new ArrayList<>();
+    private SharedPreferences mPreferences;
+    private MapLaunchBoundsStore mStore;
+    private Configuration mConfig;
+
+    @Before
+    public void setUp() {
+        mPreferences = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mStore = new MapLaunchBoundsStore(() -> mPreferences, mExecutorQueue::add);
+        mConfig = createConfiguration(/* widthDp= */ 1280, /* heightDp= */ 720);
+    }
+
+    @After
+    public void tearDown() {
+        mPreferences.edit().clear().commit();
+    }
+
+    @Test
+    public void load_readOnExecutor() {
+        CompletableFuture<Rect> bounds = mStore.load(mConfig);
+
+        assertThat(bounds.isDone()).isFalse();
+        runAll();
+        assertThat(bounds.isDone()).isTrue();
+    }
+
+    @Test
+    public void load_nothingSaved_completesWithNull() {
+        CompletableFuture<Rect> bounds = mStore.load(mConfig);
+        runAll();
+
+        assertThat(bounds.join()).isNull();
+    }
+
+    @Test
+    public void save_thenLoad_completesWithSavedBounds() {
+        mStore.save(mConfig, BOUNDS);
+        CompletableFuture<Rect> bounds = mStore.load(mConfig);
+        runAll();
+
+        assertThat(bounds.join()).isEqualTo(BOUNDS);
+    }
+
+    @Test
+    public void save_emptyBounds_ignored() {
+        mStore.save(mConfig, new Rect());
+
+        assertThat(mExecutorQueue).isEmpty();
+    }
+
+    @Test
+    public void load_otherConfiguration_completesWithNull() {
+        mStore.save(mConfig, BOUNDS);
+        CompletableFuture<Rect> bounds = mStore.load(
+                createConfiguration(/* widthDp= */ 720, /* heightDp= */ 1280));
+        runAll();
+
+        assertThat(bounds.join()).isNull();
+    }
+
+    private Configuration createConfiguration(int widthDp, int heightDp) {
+        Configuration config = new Configuration(mContext.getResources().getConfiguration());
+        config.screenWidthDp = widthDp;
+        config.screenHeightDp = heightDp;
+        return config;
+    }
+
+    private void runAll() {
+        List<Runnable> runnables = new ArrayList<>(mExecutorQueue);
+        mExecutorQueue.clear();
+        runnables.forEach(Runnable::run);
+    }
+}
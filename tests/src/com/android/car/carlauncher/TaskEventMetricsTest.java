@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher;
+
+import static com.android.car.carlauncher.TaskEventMetrics.ON_TASK_APPEARED;
+import static com.android.car.carlauncher.TaskEventMetrics.ON_TASK_VANISHED;
+import static com.android.car.carlauncher.TaskEventMetrics.ROOT_TASK_LISTENER;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import android.app.ActivityManager;
+import android.view.SurfaceControl;
+
+import com.android.wm.shell.ShellTaskOrganizer;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+@RunWith(JUnit4.class)
+public class TaskEventMetricsTest {
+    private final TaskEventMetrics mMetrics = new TaskEventMetrics();
+
+    @Test
+    public void instrument_forwardsAndCountsEvents() {
+        ShellTaskOrganizer.TaskListener delegate = mock(ShellTaskOrganizer.TaskListener.class);
+        ShellTaskOrganizer.TaskListener listener =
+                mMetrics.instrument(ROOT_TASK_LISTENER, delegate);
+        ActivityManager.RunningTaskInfo taskInfo = createTask(/* taskId= */ 1);
+        SurfaceControl leash = mock(SurfaceControl.class);
+
+        listener.onTaskAppeared(taskInfo, leash);
+        listener.onTaskVanished(taskInfo);
+        listener.onTaskVanished(taskInfo);
+
+        verify(delegate).onTaskAppeared(taskInfo, leash);
+        assertThat(mMetrics.getEventCount(ROOT_TASK_LISTENER + ON_TASK_APPEARED)).isEqualTo(1);
+        assertThat(mMetrics.getEventCount(ROOT_TASK_LISTENER + ON_TASK_VANISHED)).isEqualTo(2);
+    }
+
+    @Test
+    public void onEventDropped_countedPerCallback() {
+        mMetrics.onEventDropped(ROOT_TASK_LISTENER + ON_TASK_APPEARED, /* taskId= */ 1);
+        mMetrics.onEventDropped(ROOT_TASK_LISTENER + ON_TASK_APPEARED, /* taskId= */ 2);
+
+        assertThat(mMetrics.getDroppedCount(ROOT_TASK_LISTENER + ON_TASK_APPEARED)).isEqualTo(2);
+        assertThat(mMetrics.getDroppedCount(ROOT_TASK_LISTENER + ON_TASK_VANISHED)).isEqualTo(0);
+    }
+
+    @Test
+    public void onLaunchRootStackSizeChanged_tracksMaxSize() {
+        mMetrics.onLaunchRootStackSizeChanged(1);
+        mMetrics.onLaunchRootStackSizeChanged(3);
+        mMetrics.onLaunchRootStackSizeChanged(2);
+
+        assertThat(mMetrics.getMaxLaunchRootStackSize()).isEqualTo(3);
+    }
+
+    @Test
+    public void dump_recentEventsBounded() {
+        int events = TaskEventMetrics.RECENT_EVENTS_CAPACITY + 10;
+        for (int i = 0; i < events; i++) {
+            mMetrics.onEventHandled(ROOT_TASK_LISTENER + ON_TASK_APPEARED, i, System.nanoTime());
+        }
+
+        StringWriter output = new StringWriter();
+        mMetrics.dump("", new PrintWriter(output));
+
+        String dump = output.toString();
+        assertThat(dump).contains("Recent events (" + TaskEventMetrics.RECENT_EVENTS_CAPACITY
+                + " of " + events + ")");
+        // The oldest events were overwritten.
+        assertThat(dump).doesNotContain("taskId=9 ");
+        assertThat(dump).contains("taskId=" + (events - 1) + " ");
+    }
+
+    private static ActivityManager.RunningTaskInfo createTask(int taskId) {
+        ActivityManager.RunningTaskInfo taskInfo = new ActivityManager.RunningTaskInfo();
+        taskInfo.taskId = taskId;
+        return taskInfo;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher;
+
+import static android.view.Display.DEFAULT_DISPLAY;
+
+import static com.android.wm.shell.ShellTaskOrganizer.TASK_LISTENER_TYPE_FULLSCREEN;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.app.ActivityManager;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.view.SurfaceControl;
+import android.window.WindowContainerTransaction;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.android.wm.shell.ShellTaskOrganizer;
+import com.android.wm.shell.common.ShellExecutor;
+import com.android.wm.shell.common.SyncTransactionQueue;
+import com.android.wm.shell.sysui.ShellInit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+@RunWith(AndroidJUnit4.class)
+public class TaskOrganizerHubTest {
+    private static final int CLUSTER_DISPLAY = 2;
+    private static final Intent MAP_INTENT = new Intent().setComponent(
+            new ComponentName("com.android.car.maps", "com.android.car.maps.MapActivity"));
+
+    @Mock
+    private ShellTaskOrganizer mOrganizer;
+    @Mock
+    private SyncTransactionQueue mSyncQueue;
+    @Mock
+    private ShellInit mShellInit;
+    @Mock
+    private ShellExecutor mShellExecutor;
+    @Mock
+    private SurfaceControl mLeash;
+
+    private TaskOrganizerHub mHub;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mHub = new TaskOrganizerHub(mOrganizer, mSyncQueue, mShellInit, mShellExecutor,
+                /* shared= */ false);
+    }
+
+    @Test
+    public void addHost_multipleHosts_registersOrganizerOnce() {
+        mHub.addHost(createHost(DEFAULT_DISPLAY));
+        mHub.addHost(createHost(CLUSTER_DISPLAY));
+
+        verify(mShellInit, times(1)).init();
+        verify(mOrganizer, times(1)).registerOrganizer();
+    }
+
+    @Test
+    public void removeHost_lastHost_unregistersOrganizer() {
+        TaskViewManager defaultHost = createHost(DEFAULT_DISPLAY);
+        TaskViewManager clusterHost = createHost(CLUSTER_DISPLAY);
+        mHub.addHost(defaultHost);
+        mHub.addHost(clusterHost);
+
+        mHub.removeHost(clusterHost);
+        verify(mOrganizer, never()).unregisterOrganizer();
+
+        mHub.removeHost(defaultHost);
+        verify(mOrganizer).unregisterOrganizer();
+    }
+
+    @Test
+    public void fullscreenTask_routedToHostOfItsDisplay() {
+        TaskViewManager defaultHost = createHost(DEFAULT_DISPLAY);
+        TaskViewManager clusterHost = createHost(CLUSTER_DISPLAY);
+        mHub.addHost(defaultHost);
+        mHub.addHost(clusterHost);
+        ShellTaskOrganizer.TaskListener router = captureRouter();
+        ActivityManager.RunningTaskInfo clusterTask = createTask(/* taskId= */ 1,
+                CLUSTER_DISPLAY);
+
+        router.onTaskAppeared(clusterTask, mLeash);
+        router.onTaskInfoChanged(clusterTask);
+        router.onTaskVanished(clusterTask);
+
+        ShellTaskOrganizer.TaskListener clusterListener = clusterHost.getFullscreenTaskListener();
+        verify(clusterListener).onTaskAppeared(clusterTask, mLeash);
+        verify(clusterListener).onTaskInfoChanged(clusterTask);
+        verify(clusterListener).onTaskVanished(clusterTask);
+        verify(defaultHost.getFullscreenTaskListener(), never()).onTaskAppeared(any(), any());
+    }
+
+    @Test
+    public void fullscreenTask_displayWithoutHost_routedToDefaultDisplayHost() {
+        TaskViewManager defaultHost = createHost(DEFAULT_DISPLAY);
+        mHub.addHost(defaultHost);
+        mHub.addHost(createHost(CLUSTER_DISPLAY));
+        ShellTaskOrganizer.TaskListener router = captureRouter();
+        ActivityManager.RunningTaskInfo task = createTask(/* taskId= */ 1, /* displayId= */ 5);
+
+        router.onTaskAppeared(task, mLeash);
+
+        verify(defaultHost.getFullscreenTaskListener()).onTaskAppeared(task, mLeash);
+    }
+
+    @Test
+    public void removeHost_fullscreenTasksHandedOverToRemainingHost() {
+        TaskViewManager defaultHost = createHost(DEFAULT_DISPLAY);
+        TaskViewManager clusterHost = createHost(CLUSTER_DISPLAY);
+        mHub.addHost(defaultHost);
+        mHub.addHost(clusterHost);
+        ShellTaskOrganizer.TaskListener router = captureRouter();
+        ActivityManager.RunningTaskInfo clusterTask = createTask(/* taskId= */ 1,
+                CLUSTER_DISPLAY);
+        router.onTaskAppeared(clusterTask, mLeash);
+
+        mHub.removeHost(clusterHost);
+        router.onTaskInfoChanged(clusterTask);
+
+        // Handed over silently, as the task is still alive.
+        verify(clusterHost).releaseFullscreenTask(clusterTask);
+        verify(clusterHost.getFullscreenTaskListener(), never()).onTaskVanished(any());
+        verify(defaultHost).adoptFullscreenTask(clusterTask, mLeash);
+        ShellTaskOrganizer.TaskListener defaultListener = defaultHost.getFullscreenTaskListener();
+        verify(defaultListener, never()).onTaskAppeared(any(), any());
+        verify(defaultListener).onTaskInfoChanged(clusterTask);
+    }
+
+    @Test
+    public void addHost_fullscreenTasksOfItsDisplayHandedOver() {
+        TaskViewManager defaultHost = createHost(DEFAULT_DISPLAY);
+        mHub.addHost(defaultHost);
+        ShellTaskOrganizer.TaskListener router = captureRouter();
+        ActivityManager.RunningTaskInfo clusterTask = createTask(/* taskId= */ 1,
+                CLUSTER_DISPLAY);
+        router.onTaskAppeared(clusterTask, mLeash);
+
+        TaskViewManager clusterHost = createHost(CLUSTER_DISPLAY);
+        mHub.addHost(clusterHost);
+        router.onTaskVanished(clusterTask);
+
+        verify(defaultHost).releaseFullscreenTask(clusterTask);
+        verify(clusterHost).adoptFullscreenTask(clusterTask, mLeash);
+        verify(clusterHost.getFullscreenTaskListener()).onTaskVanished(clusterTask);
+        verify(defaultHost.getFullscreenTaskListener(), never()).onTaskVanished(any());
+    }
+
+    @Test
+    public void fullscreenTaskWithoutHost_appearsOnNextHost() {
+        TaskViewManager host = createHost(DEFAULT_DISPLAY);
+        mHub.addHost(host);
+        ShellTaskOrganizer.TaskListener router = captureRouter();
+        mHub.retainTask(MAP_INTENT, DEFAULT_DISPLAY, createTaskView(/* taskId= */ 1));
+        mHub.removeHost(host);
+        ActivityManager.RunningTaskInfo task = createTask(/* taskId= */ 2, DEFAULT_DISPLAY);
+        router.onTaskAppeared(task, mLeash);
+
+        TaskViewManager nextHost = createHost(DEFAULT_DISPLAY);
+        mHub.addHost(nextHost);
+
+        verify(host.getFullscreenTaskListener(), never()).onTaskAppeared(any(), any());
+        verify(nextHost.getFullscreenTaskListener()).onTaskAppeared(task, mLeash);
+    }
+
+    @Test
+    public void retainTask_lastHostRemoved_organizerStaysRegistered() {
+        TaskViewManager host = createHost(DEFAULT_DISPLAY);
+        mHub.addHost(host);
+        mHub.retainTask(MAP_INTENT, DEFAULT_DISPLAY, createTaskView(/* taskId= */ 1));
+
+        mHub.removeHost(host);
+        mHub.addHost(createHost(DEFAULT_DISPLAY));
+
+        verify(mOrganizer, never()).unregisterOrganizer();
+        verify(mOrganizer, times(1)).registerOrganizer();
+    }
+
+    @Test
+    public void adoptRetainedTask_taskMovedToNewTaskView() {
+        mHub.addHost(createHost(DEFAULT_DISPLAY));
+        CarTaskView oldTaskView = createTaskView(/* taskId= */ 1);
+        mHub.retainTask(MAP_INTENT, DEFAULT_DISPLAY, oldTaskView);
+        ArgumentCaptor<ShellTaskOrganizer.TaskListener> retainedTask =
+                ArgumentCaptor.forClass(ShellTaskOrganizer.TaskListener.class);
+        verify(mOrganizer).removeListener(oldTaskView);
+        verify(mOrganizer).addListenerForTaskId(retainedTask.capture(), eq(1));
+        retainedTask.getValue().onTaskAppeared(createTask(/* taskId= */ 1, DEFAULT_DISPLAY),
+                mLeash);
+        CarTaskView newTaskView = mock(CarTaskView.class);
+
+        assertThat(mHub.adoptRetainedTask(new Intent(MAP_INTENT), CLUSTER_DISPLAY, newTaskView))
+                .isFalse();
+        assertThat(mHub.adoptRetainedTask(new Intent(MAP_INTENT), DEFAULT_DISPLAY, newTaskView))
+                .isTrue();
+
+        verify(mOrganizer).removeListener(retainedTask.getValue());
+        verify(mOrganizer).addListenerForTaskId(newTaskView, 1);
+        verify(mShellExecutor).removeCallbacks(any());
+        assertThat(mHub.hasRetainedTask(MAP_INTENT, DEFAULT_DISPLAY)).isFalse();
+    }
+
+    @Test
+    public void retainedTaskNotAdopted_removedAfterTimeout() {
+        TaskViewManager host = createHost(DEFAULT_DISPLAY);
+        mHub.addHost(host);
+        mHub.retainTask(MAP_INTENT, DEFAULT_DISPLAY, createTaskView(/* taskId= */ 1));
+        ArgumentCaptor<ShellTaskOrganizer.TaskListener> retainedTask =
+                ArgumentCaptor.forClass(ShellTaskOrganizer.TaskListener.class);
+        verify(mOrganizer).addListenerForTaskId(retainedTask.capture(), eq(1));
+        retainedTask.getValue().onTaskAppeared(createTask(/* taskId= */ 1, DEFAULT_DISPLAY),
+                mLeash);
+        mHub.removeHost(host);
+        ArgumentCaptor<Runnable> expiry = ArgumentCaptor.forClass(Runnable.class);
+        verify(mShellExecutor).executeDelayed(expiry.capture(),
+                eq(TaskOrganizerHub.RETAINED_TASK_TIMEOUT_MS));
+
+        expiry.getValue().run();
+
+        verify(mSyncQueue).queue(any(WindowContainerTransaction.class));
+        verify(mOrganizer).unregisterOrganizer();
+    }
+
+    private ShellTaskOrganizer.TaskListener captureRouter() {
+        ArgumentCaptor<ShellTaskOrganizer.TaskListener> captor =
+                ArgumentCaptor.forClass(ShellTaskOrganizer.TaskListener.class);
+        verify(mOrganizer).addListenerForType(captor.capture(),
+                eq(TASK_LISTENER_TYPE_FULLSCREEN));
+        return captor.getValue();
+    }
+
+    private static TaskViewManager createHost(int displayId) {
+        TaskViewManager host = mock(TaskViewManager.class);
+        ShellTaskOrganizer.TaskListener listener = mock(ShellTaskOrganizer.TaskListener.class);
+        when(host.getDisplayId()).thenReturn(displayId);
+        when(host.getFullscreenTaskListener()).thenReturn(listener);
+        return host;
+    }
+
+    private static CarTaskView createTaskView(int taskId) {
+        CarTaskView taskView = mock(CarTaskView.class);
+        when(taskView.getTaskId()).thenReturn(taskId);
+        return taskView;
+    }
+
+    private static ActivityManager.RunningTaskInfo createTask(int taskId, int displayId) {
+        ActivityManager.RunningTaskInfo taskInfo = new ActivityManager.RunningTaskInfo();
+        taskInfo.taskId = taskId;
+        taskInfo.displayId = displayId;
+        return taskInfo;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.hardware.HardwareBuffer;
+import android.view.SurfaceControl;
+import android.view.View;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+@RunWith(AndroidJUnit4.class)
+public class TaskSnapshotCacheTest {
+    private static final String KEY = "0_map";
+    private static final int TASK_VIEW_SIZE = 40;
+
+    private final Context mContext = ApplicationProvider.getApplicationContext();
+    private final File mSnapshotDir = new File(mContext.getCacheDir(), "task_snapshots_test");
+    private final SurfaceControl mLeash = mock(SurfaceControl.class);
+    private final HardwareBuffer mHardwareBuffer = mock(HardwareBuffer.class);
+    private TaskSnapshotCache mCache;
+    private View mView;
+    private long mUptimeMs;
+    private int mScreenshots;
+
+    @Before
+    public void setUp() {
+        when(mLeash.isValid()).thenReturn(true);
+        mCache = createCache();
+        mView = new View(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        mCache.getSnapshotFile(KEY).delete();
+        mSnapshotDir.delete();
+    }
+
+    @Test
+    public void capture_snapshotShownAndBufferClosed() {
+        mCache.capture(KEY, mLeash, TASK_VIEW_SIZE, TASK_VIEW_SIZE);
+
+        mCache.showPlaceholder(KEY, mView);
+
+        assertThat(mCache.isPlaceholderShown(mView)).isTrue();
+        verify(mHardwareBuffer).close();
+    }
+
+    @Test
+    public void capture_withinMinInterval_throttled() {
+        mCache.capture(KEY, mLeash, TASK_VIEW_SIZE, TASK_VIEW_SIZE);
+
+        mUptimeMs += TaskSnapshotCache.MIN_CAPTURE_INTERVAL_MS - 1;
+        mCache.capture(KEY, mLeash, TASK_VIEW_SIZE, TASK_VIEW_SIZE);
+        assertThat(mScreenshots).isEqualTo(1);
+
+        mUptimeMs += 1;
+        mCache.capture(KEY, mLeash, TASK_VIEW_SIZE, TASK_VIEW_SIZE);
+        assertThat(mScreenshots).isEqualTo(2);
+    }
+
+    @Test
+    public void capture_snapshotPersisted_shownAfterProcessRestart() {
+        mCache.capture(KEY, mLeash, TASK_VIEW_SIZE, TASK_VIEW_SIZE);
+        assertThat(mCache.getSnapshotFile(KEY).isFile()).isTrue();
+
+        TaskSnapshotCache restartedCache = createCache();
+        restartedCache.showPlaceholder(KEY, mView);
+
+        assertThat(restartedCache.isPlaceholderShown(mView)).isTrue();
+    }
+
+    @Test
+    public void invalidate_snapshotDroppedFromMemoryAndDisk() {
+        mCache.capture(KEY, mLeash, TASK_VIEW_SIZE, TASK_VIEW_SIZE);
+
+        mCache.invalidate(KEY);
+
+        mCache.showPlaceholder(KEY, mView);
+        assertThat(mCache.isPlaceholderShown(mView)).isFalse();
+        assertThat(mCache.getSnapshotFile(KEY).exists()).isFalse();
+        // Not throttled, the new version of the task is captured on the next occasion.
+        mCache.capture(KEY, mLeash, TASK_VIEW_SIZE, TASK_VIEW_SIZE);
+        assertThat(mScreenshots).isEqualTo(2);
+    }
+
+    @Test
+    public void showPlaceholder_snapshotInMemory_shown() {
+        mCache.putSnapshot(KEY, Bitmap.createBitmap(10, 10, Bitmap.Config.RGB_565));
+
+        mCache.showPlaceholder(KEY, mView);
+
+        assertThat(mCache.isPlaceholderShown(mView)).isTrue();
+    }
+
+    @Test
+    public void showPlaceholder_noSnapshot_notShown() {
+        mCache.showPlaceholder("unknown", mView);
+
+        assertThat(mCache.isPlaceholderShown(mView)).isFalse();
+    }
+
+    @Test
+    public void hidePlaceholder_placeholderRemoved() {
+        mCache.putSnapshot(KEY, Bitmap.createBitmap(10, 10, Bitmap.Config.RGB_565));
+        mCache.showPlaceholder(KEY, mView);
+
+        mCache.hidePlaceholder(mView);
+
+        assertThat(mCache.isPlaceholderShown(mView)).isFalse();
+    }
+
+    private TaskSnapshotCache createCache() {
+        return new TaskSnapshotCache(mSnapshotDir, Runnable::run, Runnable::run,
+                () -> mUptimeMs, leash -> {
+                    mScreenshots++;
+                    SurfaceControl.ScreenshotHardwareBuffer buffer =
+                            mock(SurfaceControl.ScreenshotHardwareBuffer.class);
+                    int size = Math.round(TASK_VIEW_SIZE * TaskSnapshotCache.CAPTURE_SCALE);
+                    when(buffer.asBitmap()).thenReturn(
+                            Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888));
+                    when(buffer.getHardwareBuffer()).thenReturn(mHardwareBuffer);
+                    return buffer;
+                });
+    }
+}
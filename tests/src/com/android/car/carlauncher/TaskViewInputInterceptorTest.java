@@ -112,6 +112,7 @@ public class TaskViewInputInterceptorTest extends AbstractExtendedMockitoTestCas
 
     @Test
     public void init_addsSpyWindow() throws Exception {
+        createControlledCarTaskView(new Rect(10, 0, 30, 100), /* capturingEnabled= */ true);
         runOnMainAndWait(() -> mTaskViewInputInterceptor.init());
 
         verify(mActivity.mSpyWm).addView(any(), mLayoutParamsArgumentCaptor.capture());
@@ -121,6 +122,7 @@ public class TaskViewInputInterceptorTest extends AbstractExtendedMockitoTestCas
 
     @Test
     public void init_again_doesNothing() throws Exception {
+        createControlledCarTaskView(new Rect(10, 0, 30, 100), /* capturingEnabled= */ true);
         runOnMainAndWait(() -> mTaskViewInputInterceptor.init());
 
         runOnMainAndWait(() -> mTaskViewInputInterceptor.init());
@@ -130,6 +132,7 @@ public class TaskViewInputInterceptorTest extends AbstractExtendedMockitoTestCas
 
     @Test
     public void activityStopped_removesSpyWindow() throws Exception {
+        createControlledCarTaskView(new Rect(10, 0, 30, 100), /* capturingEnabled= */ true);
         runOnMainAndWait(() -> mTaskViewInputInterceptor.init());
 
         mScenario.moveToState(Lifecycle.State.CREATED);
@@ -139,6 +142,7 @@ public class TaskViewInputInterceptorTest extends AbstractExtendedMockitoTestCas
 
     @Test
     public void activityStoppedStarted_addsSpyWindow() throws Exception {
+        createControlledCarTaskView(new Rect(10, 0, 30, 100), /* capturingEnabled= */ true);
         runOnMainAndWait(() -> mTaskViewInputInterceptor.init());
         mScenario.moveToState(Lifecycle.State.CREATED);
 
@@ -147,11 +151,46 @@ public class TaskViewInputInterceptorTest extends AbstractExtendedMockitoTestCas
         verify(mActivity.mSpyWm, times(2)).addView(any(), any());
     }
 
+    @Test
+    public void init_noCapturingTaskView_doesNotAddSpyWindow() throws Exception {
+        createControlledCarTaskView(new Rect(10, 0, 30, 100), /* capturingEnabled= */ false);
+
+        runOnMainAndWait(() -> mTaskViewInputInterceptor.init());
+
+        verify(mActivity.mSpyWm, times(0)).addView(any(), any());
+    }
+
+    @Test
+    public void capturingTaskViewHidden_removesSpyWindow() throws Exception {
+        ControlledCarTaskView taskView =
+                createControlledCarTaskView(new Rect(10, 0, 30, 100), /* capturingEnabled= */ true);
+        runOnMainAndWait(() -> mTaskViewInputInterceptor.init());
+
+        doReturn(false).when(taskView).isShown();
+        runOnMainAndWait(() -> mTaskViewInputInterceptor.updateSpyWindow());
+
+        verify(mActivity.mSpyWm).removeView(any());
+    }
+
+    @Test
+    public void capturingTaskViewShown_addsSpyWindow() throws Exception {
+        ControlledCarTaskView taskView =
+                createControlledCarTaskView(new Rect(10, 0, 30, 100), /* capturingEnabled= */ true);
+        doReturn(false).when(taskView).isShown();
+        runOnMainAndWait(() -> mTaskViewInputInterceptor.init());
+        verify(mActivity.mSpyWm, times(0)).addView(any(), any());
+
+        doReturn(true).when(taskView).isShown();
+        runOnMainAndWait(() -> mTaskViewInputInterceptor.updateSpyWindow());
+
+        verify(mActivity.mSpyWm).addView(any(), any());
+    }
+
     @Test
     public void singleTap_insideTaskView_capturingEnabled_noCapturing() throws Exception {
+        createControlledCarTaskView(new Rect(10, 0, 30, 100), /* capturingEnabled= */ true);
         runOnMainAndWait(() -> mTaskViewInputInterceptor.init());
         verify(mActivity.mSpyWm).addView(mSpyWindowArgumentCaptor.capture(), any());
-        createControlledCarTaskView(new Rect(10, 0, 30, 100), /* capturingEnabled= */ true);
 
         View spyWindow = mSpyWindowArgumentCaptor.getValue();
         final long eventTime = SystemClock.uptimeMillis();
@@ -189,14 +228,16 @@ public class TaskViewInputInterceptorTest extends AbstractExtendedMockitoTestCas
 
         // Assert
         verify(mActivity.mSpyInputManager, times(0)).pilferPointers(any());
+        assertThat(mTaskViewInputInterceptor.getMetrics().getPassedThroughGestureCount())
+                .isEqualTo(1);
     }
 
     @Test
     public void longPress_insideTaskView_capturingEnabled_capturesGesture() throws Exception {
-        runOnMainAndWait(() -> mTaskViewInputInterceptor.init());
-        verify(mActivity.mSpyWm).addView(mSpyWindowArgumentCaptor.capture(), any());
         ControlledCarTaskView taskView =
                 createControlledCarTaskView(new Rect(10, 0, 30, 100), /* capturingEnabled= */ true);
+        runOnMainAndWait(() -> mTaskViewInputInterceptor.init());
+        verify(mActivity.mSpyWm).addView(mSpyWindowArgumentCaptor.capture(), any());
         View.OnLongClickListener taskViewLongClickListener = mock(View.OnLongClickListener.class);
         doReturn(taskViewLongClickListener).when(taskView).getOnLongClickListener();
         View spyWindow = mSpyWindowArgumentCaptor.getValue();
@@ -222,11 +263,13 @@ public class TaskViewInputInterceptorTest extends AbstractExtendedMockitoTestCas
 
     @Test
     public void longPress_insideTaskView_capturingDisabled_noCapturing() throws Exception {
-        runOnMainAndWait(() -> mTaskViewInputInterceptor.init());
-        verify(mActivity.mSpyWm).addView(mSpyWindowArgumentCaptor.capture(), any());
         ControlledCarTaskView taskView =
                 createControlledCarTaskView(
                         new Rect(10, 0, 30, 100), /* capturingEnabled= */ false);
+        // A capturing task view elsewhere keeps the spy window around.
+        createControlledCarTaskView(new Rect(50, 0, 70, 100), /* capturingEnabled= */ true);
+        runOnMainAndWait(() -> mTaskViewInputInterceptor.init());
+        verify(mActivity.mSpyWm).addView(mSpyWindowArgumentCaptor.capture(), any());
         View.OnLongClickListener taskViewLongClickListener = mock(View.OnLongClickListener.class);
         doReturn(taskViewLongClickListener).when(taskView).getOnLongClickListener();
         View spyWindow = mSpyWindowArgumentCaptor.getValue();
@@ -261,9 +304,9 @@ public class TaskViewInputInterceptorTest extends AbstractExtendedMockitoTestCas
     public void swipeGesture_whenActionDownInsideTaskView_capturingEnabled_capturesGesture()
             throws Exception {
         // Arrange
+        createControlledCarTaskView(new Rect(10, 0, 30, 100), /* capturingEnabled= */ true);
         runOnMainAndWait(() -> mTaskViewInputInterceptor.init());
         verify(mActivity.mSpyWm).addView(mSpyWindowArgumentCaptor.capture(), any());
-        createControlledCarTaskView(new Rect(10, 0, 30, 100), /* capturingEnabled= */ true);
 
         View spyWindow = mSpyWindowArgumentCaptor.getValue();
         final long eventTime = SystemClock.uptimeMillis();
@@ -315,15 +358,21 @@ public class TaskViewInputInterceptorTest extends AbstractExtendedMockitoTestCas
         assertThat(mActivity.mEventsReceived.get(2).getAction()).isEqualTo(MotionEvent.ACTION_UP);
         assertThat(mActivity.mEventsReceived.get(2).getX()).isEqualTo(12);
         assertThat(mActivity.mEventsReceived.get(2).getY()).isEqualTo(9);
+        assertThat(mTaskViewInputInterceptor.getMetrics().getInterceptedGestureCount())
+                .isEqualTo(1);
+        assertThat(mTaskViewInputInterceptor.getMetrics().getPassedThroughGestureCount())
+                .isEqualTo(0);
     }
 
     @Test
     public void swipeGesture_whenActionDownInsideTaskView_capturingDisabled_noCapturing()
             throws Exception {
         // Arrange
+        createControlledCarTaskView(new Rect(10, 0, 30, 100), /* capturingEnabled= */ false);
+        // A capturing task view elsewhere keeps the spy window around.
+        createControlledCarTaskView(new Rect(50, 0, 70, 100), /* capturingEnabled= */ true);
         runOnMainAndWait(() -> mTaskViewInputInterceptor.init());
         verify(mActivity.mSpyWm).addView(mSpyWindowArgumentCaptor.capture(), any());
-        createControlledCarTaskView(new Rect(10, 0, 30, 100), /* capturingEnabled= */ false);
 
         View spyWindow = mSpyWindowArgumentCaptor.getValue();
         final long eventTime = SystemClock.uptimeMillis();
@@ -372,9 +421,9 @@ public class TaskViewInputInterceptorTest extends AbstractExtendedMockitoTestCas
     public void swipeGesture_whenActionDownOutsideTaskView_capturingEnabled_noCapturing()
             throws Exception {
         // Arrange
+        createControlledCarTaskView(new Rect(10, 0, 30, 100), /* capturingEnabled= */ true);
         runOnMainAndWait(() -> mTaskViewInputInterceptor.init());
         verify(mActivity.mSpyWm).addView(mSpyWindowArgumentCaptor.capture(), any());
-        createControlledCarTaskView(new Rect(10, 0, 30, 100), /* capturingEnabled= */ true);
 
         View spyWindow = mSpyWindowArgumentCaptor.getValue();
         final long eventTime = SystemClock.uptimeMillis();
@@ -431,6 +480,7 @@ public class TaskViewInputInterceptorTest extends AbstractExtendedMockitoTestCas
                 })
                 .when(taskView)
                 .getBoundsOnScreen(any());
+        doReturn(true).when(taskView).isShown();
 
         doReturn(
                 ControlledCarTaskViewConfig.builder()
@@ -37,8 +37,10 @@ import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -52,7 +54,9 @@ import android.car.Car;
 import android.car.app.CarActivityManager;
 import android.car.test.mocks.AbstractExtendedMockitoTestCase;
 import android.car.user.CarUserManager;
+import android.content.BroadcastReceiver;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.IBinder;
@@ -75,7 +79,6 @@ import com.android.wm.shell.ShellTaskOrganizer;
 import com.android.wm.shell.TaskView;
 import com.android.wm.shell.common.HandlerExecutor;
 import com.android.wm.shell.common.SyncTransactionQueue;
-import com.android.wm.shell.startingsurface.StartingWindowController;
 import com.android.wm.shell.sysui.ShellInit;
 
 import com.google.common.collect.ImmutableList;
@@ -88,6 +91,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 
@@ -100,6 +104,9 @@ import java.util.stream.Collectors;
 
 @RunWith(AndroidJUnit4.class)
 public class TaskViewManagerTest extends AbstractExtendedMockitoTestCase {
+    // Task events are forwarded to CarActivityManager from a background thread.
+    private static final long TASK_EVENT_TIMEOUT_MS = 1000;
+
     @Rule
     public ActivityScenarioRule mActivityRule = new ActivityScenarioRule<>(TestActivity.class);
 
@@ -120,8 +127,6 @@ public class TaskViewManagerTest extends AbstractExtendedMockitoTestCase {
     @Mock
     private WindowContainerToken mToken;
 
-    @Mock
-    private StartingWindowController mStartingWindowController;
     @Mock
     private TaskViewInputInterceptor mTaskViewInputInterceptor;
 
@@ -155,7 +160,7 @@ public class TaskViewManagerTest extends AbstractExtendedMockitoTestCase {
 
         ExtendedMockito.doReturn(mTaskStackChangeListeners).when(() ->
                 TaskStackChangeListeners.getInstance());
-        doNothing().when(mTaskStackChangeListeners).registerTaskStackListener(
+        doNothing().when(mTaskStackChangeListeners).registerCoalescingTaskStackListener(
                 mTaskStackListenerArgumentCaptor.capture());
 
         doNothing().when(mCarUserManager).addListener(any(), any(),
@@ -580,7 +585,28 @@ public class TaskViewManagerTest extends AbstractExtendedMockitoTestCase {
         runOnMainAndWait(() -> {});
 
         // Assert
-        verify(mCarActivityManager).onTaskAppeared(taskInfo);
+        verify(mCarActivityManager, timeout(TASK_EVENT_TIMEOUT_MS)).onTaskAppeared(taskInfo);
+    }
+
+    @Test
+    public void testTaskAppearedBeforeCarConnected_replayedToCarActivityManager()
+            throws Exception {
+        TaskViewManager taskViewManager = createTaskViewManager();
+        runOnMainAndWait(() -> {});
+        AtomicReference<ShellTaskOrganizer.TaskListener> rootTaskListener = new AtomicReference<>();
+        setUpLaunchRootTaskView(taskViewManager, rootTaskListener, /* rootTaskId = */ 1);
+        ActivityManager.RunningTaskInfo taskInfo = createMultiWindowTask(2).getTaskInfo();
+        rootTaskListener.get().onTaskAppeared(taskInfo, mLeash);
+        runOnMainAndWait(() -> {});
+
+        // Act
+        mCarServiceLifecycleListener.onLifecycleChanged(mCar, true);
+
+        // Assert
+        verify(mCarActivityManager, timeout(TASK_EVENT_TIMEOUT_MS)).onTaskAppeared(taskInfo);
+        InOrder inOrder = inOrder(mCarActivityManager);
+        inOrder.verify(mCarActivityManager).registerTaskMonitor();
+        inOrder.verify(mCarActivityManager).onTaskAppeared(taskInfo);
     }
 
     @Test
@@ -599,7 +625,7 @@ public class TaskViewManagerTest extends AbstractExtendedMockitoTestCase {
         runOnMainAndWait(() -> {});
 
         // Assert
-        verify(mCarActivityManager).onTaskInfoChanged(taskInfo);
+        verify(mCarActivityManager, timeout(TASK_EVENT_TIMEOUT_MS)).onTaskInfoChanged(taskInfo);
     }
 
     @Test
@@ -617,7 +643,7 @@ public class TaskViewManagerTest extends AbstractExtendedMockitoTestCase {
         runOnMainAndWait(() -> {});
 
         // Assert
-        verify(mCarActivityManager).onTaskVanished(taskInfo);
+        verify(mCarActivityManager, timeout(TASK_EVENT_TIMEOUT_MS)).onTaskVanished(taskInfo);
     }
 
     @Test
@@ -755,6 +781,7 @@ public class TaskViewManagerTest extends AbstractExtendedMockitoTestCase {
         ControlledCarTaskView spiedTaskView = spy(controlledCarTaskView);
         doNothing().when(spiedTaskView).startActivity();
         taskViewManager.getControlledTaskViews().set(0, spiedTaskView);
+        taskViewManager.refreshDependingPackageNames();
 
         // Act
         taskViewManager.getPackageBroadcastReceiver().onReceive(mActivity,
@@ -764,6 +791,33 @@ public class TaskViewManagerTest extends AbstractExtendedMockitoTestCase {
         verify(spiedTaskView).startActivity();
     }
 
+    @Test
+    public void testSnapshotInvalidated_whenPackageThatCanRestartRemoved() throws Exception {
+        TaskViewManager taskViewManager = createTaskViewManager();
+        mCarServiceLifecycleListener.onLifecycleChanged(mCar, true);
+        setUpControlledTaskView(taskViewManager, new Intent("ACTION_VIEW"),
+                ImmutableSet.of("com.relevant.package"));
+        ControlledCarTaskView controlledCarTaskView =
+                taskViewManager.getControlledTaskViews().get(0);
+        ActivityManager.RunningTaskInfo taskInfo = createMultiWindowTask(2).getTaskInfo();
+        controlledCarTaskView.onTaskAppeared(taskInfo, mLeash);
+        controlledCarTaskView.onTaskVanished(taskInfo);
+
+        ControlledCarTaskView spiedTaskView = spy(controlledCarTaskView);
+        doNothing().when(spiedTaskView).startActivity();
+        taskViewManager.getControlledTaskViews().set(0, spiedTaskView);
+        taskViewManager.refreshDependingPackageNames();
+
+        // Act
+        taskViewManager.getPackageBroadcastReceiver().onReceive(mActivity,
+                new Intent(Intent.ACTION_PACKAGE_REMOVED)
+                        .setData(Uri.parse("package:com.relevant.package")));
+
+        // Assert
+        verify(spiedTaskView).invalidateSnapshot();
+        verify(spiedTaskView, times(0)).startActivity();
+    }
+
     @Test
     public void testControlledTaskNotRestarted_whenARandomPackageChanged() throws Exception {
         TaskViewManager taskViewManager = createTaskViewManager();
@@ -783,6 +837,7 @@ public class TaskViewManagerTest extends AbstractExtendedMockitoTestCase {
         ControlledCarTaskView spiedTaskView = spy(controlledCarTaskView);
         doNothing().when(spiedTaskView).startActivity();
         taskViewManager.getControlledTaskViews().set(0, spiedTaskView);
+        taskViewManager.refreshDependingPackageNames();
 
         // Act
         taskViewManager.getPackageBroadcastReceiver().onReceive(mActivity,
@@ -792,6 +847,22 @@ public class TaskViewManagerTest extends AbstractExtendedMockitoTestCase {
         verify(spiedTaskView, times(0)).startActivity();
     }
 
+    @Test
+    public void testPackageBroadcastReceiver_registeredForDependingPackagesOnly()
+            throws Exception {
+        TaskViewManager taskViewManager = createTaskViewManager();
+
+        setUpControlledTaskView(taskViewManager, new Intent("ACTION_VIEW"),
+                ImmutableSet.of("com.relevant.package"));
+
+        IntentFilter filter = mActivity.mPackageIntentFilter;
+        assertThat(filter).isNotNull();
+        assertThat(filter.matchData(/* type= */ null, "package",
+                Uri.parse("package:com.relevant.package"))).isAtLeast(0);
+        assertThat(filter.matchData(/* type= */ null, "package",
+                Uri.parse("package:com.random.package"))).isLessThan(0);
+    }
+
     // User switch related tests.
 
     @Test
@@ -900,7 +971,7 @@ public class TaskViewManagerTest extends AbstractExtendedMockitoTestCase {
         }
 
         TaskViewManager taskViewManager =  new TaskViewManager(mActivity, mShellExecutor,
-                mOrganizer, mSyncQueue, new ShellInit(mShellExecutor), mStartingWindowController);
+                mOrganizer, mSyncQueue, new ShellInit(mShellExecutor));
         taskViewManager.setTaskViewInputInterceptor(mTaskViewInputInterceptor);
         return taskViewManager;
     }
@@ -917,6 +988,15 @@ public class TaskViewManagerTest extends AbstractExtendedMockitoTestCase {
     public static class TestActivity extends Activity {
         private static final int FINISH_TIMEOUT_MS = 1000;
         private final CountDownLatch mDestroyed = new CountDownLatch(1);
+        private IntentFilter mPackageIntentFilter;
+
+        @Override
+        public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+            if (filter.hasAction(Intent.ACTION_PACKAGE_REPLACED)) {
+                mPackageIntentFilter = filter;
+            }
+            return super.registerReceiver(receiver, filter);
+        }
 
         @Override
         protected void onDestroy() {
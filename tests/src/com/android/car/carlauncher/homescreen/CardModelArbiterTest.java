@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher.homescreen;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.car.carlauncher.homescreen.ui.CardContent;
+import com.android.car.carlauncher.homescreen.ui.CardHeader;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CardModelArbiterTest {
+
+    private final CardModelArbiter mArbiter = new CardModelArbiter("test");
+    private final TestModel mModel = new TestModel();
+    private final TestModel mOtherModel = new TestModel();
+    private final HighPriorityModel mHighPriorityModel = new HighPriorityModel();
+    private final StickyModel mStickyModel = new StickyModel();
+
+    @Test
+    public void modelWithContent_isDisplayed() {
+        assertThat(update(mModel, /* hasContent= */ true)).isTrue();
+
+        assertThat(mArbiter.getDisplayedModel()).isSameInstanceAs(mModel);
+    }
+
+    @Test
+    public void modelWithoutContent_notDisplayed_doesNotUpdate() {
+        update(mModel, /* hasContent= */ true);
+
+        assertThat(update(mOtherModel, /* hasContent= */ false)).isFalse();
+        assertThat(mArbiter.getDisplayedModel()).isSameInstanceAs(mModel);
+    }
+
+    @Test
+    public void samePriority_latestUpdateIsDisplayed() {
+        update(mModel, /* hasContent= */ true);
+        update(mOtherModel, /* hasContent= */ true);
+        assertThat(mArbiter.getDisplayedModel()).isSameInstanceAs(mOtherModel);
+
+        update(mModel, /* hasContent= */ true);
+        assertThat(mArbiter.getDisplayedModel()).isSameInstanceAs(mModel);
+    }
+
+    @Test
+    public void higherPriority_isDisplayedUntilItHasNoContent() {
+        update(mModel, /* hasContent= */ true);
+        update(mHighPriorityModel, /* hasContent= */ true);
+
+        assertThat(update(mModel, /* hasContent= */ true)).isFalse();
+        assertThat(mArbiter.getDisplayedModel()).isSameInstanceAs(mHighPriorityModel);
+
+        assertThat(update(mHighPriorityModel, /* hasContent= */ false)).isTrue();
+        assertThat(mArbiter.getDisplayedModel()).isSameInstanceAs(mModel);
+    }
+
+    @Test
+    public void sticky_isNotReplacedBySamePriority() {
+        update(mStickyModel, /* hasContent= */ true);
+
+        assertThat(update(mModel, /* hasContent= */ true)).isFalse();
+        assertThat(mArbiter.getDisplayedModel()).isSameInstanceAs(mStickyModel);
+
+        update(mHighPriorityModel, /* hasContent= */ true);
+        assertThat(mArbiter.getDisplayedModel()).isSameInstanceAs(mHighPriorityModel);
+    }
+
+    @Test
+    public void displayedModelLosesContent_noOtherContent_displaysNothing() {
+        update(mModel, /* hasContent= */ true);
+
+        assertThat(update(mModel, /* hasContent= */ false)).isTrue();
+        assertThat(mArbiter.getDisplayedModel()).isNull();
+    }
+
+    private boolean update(TestModel model, boolean hasContent) {
+        model.mHeader = hasContent ? new CardHeader("app", /* appIcon= */ null) : null;
+        return mArbiter.onModelUpdated(model);
+    }
+
+    private static class TestModel implements HomeCardInterface.Model {
+        CardHeader mHeader;
+
+        @Override
+        public CardHeader getCardHeader() {
+            return mHeader;
+        }
+
+        @Override
+        public CardContent getCardContent() {
+            return null;
+        }
+
+        @Override
+        public void setPresenter(HomeCardInterface.Presenter presenter) {
+        }
+    }
+
+    @CardModelArbiter.Policy(priority = CardModelArbiter.PRIORITY_HIGH)
+    private static class HighPriorityModel extends TestModel {
+    }
+
+    @CardModelArbiter.Policy(sticky = true)
+    private static class StickyModel extends TestModel {
+    }
+}
@@ -25,12 +25,18 @@ import static androidx.test.espresso.matcher.ViewMatchers.withText;
 
 import static org.hamcrest.CoreMatchers.allOf;
 import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import android.content.res.Configuration;
 import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+import android.view.View;
 import android.widget.ImageButton;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
@@ -69,16 +75,18 @@ public class HomeCardFragmentTest {
     private static final TextBlockView TEXT_BLOCK_VIEW_NO_FOOTER = new TextBlockView(
             TEXT_BLOCK_CONTENT);
 
+    private static final long CARD_TIMEOUT_MS = 5_000;
+
     @Rule
     public ActivityTestRule<CarLauncher> mActivityTestRule = new ActivityTestRule<CarLauncher>(
             CarLauncher.class);
 
     @Test
     public void updateContentView_descriptiveTextWithFooter_displaysTapForMoreView() {
-        HomeCardFragment fragment = (HomeCardFragment) mActivityTestRule.getActivity()
-                .getSupportFragmentManager().findFragmentById(R.id.top_card);
+        HomeCardFragment fragment = getTopCardFragment();
         fragment.updateHeaderView(CARD_HEADER);
         fragment.updateContentView(DESCRIPTIVE_TEXT_VIEW);
+        applyPendingUpdates(fragment);
 
         onView(allOf(withId(R.id.descriptive_text_layout),
                 isDescendantOfA(withId(R.id.top_card)))).check(
@@ -96,10 +104,10 @@ public class HomeCardFragmentTest {
 
     @Test
     public void updateContentView_descriptiveTextWithNoFooter_hidesTapForMoreView() {
-        HomeCardFragment fragment = (HomeCardFragment) mActivityTestRule.getActivity()
-                .getSupportFragmentManager().findFragmentById(R.id.top_card);
+        HomeCardFragment fragment = getTopCardFragment();
         fragment.updateHeaderView(CARD_HEADER);
         fragment.updateContentView(DESCRIPTIVE_TEXT_VIEW_NO_FOOTER);
+        applyPendingUpdates(fragment);
 
         onView(allOf(withId(R.id.descriptive_text_layout),
                 isDescendantOfA(withId(R.id.top_card)))).check(
@@ -117,10 +125,10 @@ public class HomeCardFragmentTest {
 
     @Test
     public void updateContentView_textBlockWithFooter_displaysTapForMoreView() {
-        HomeCardFragment fragment = (HomeCardFragment) mActivityTestRule.getActivity()
-                .getSupportFragmentManager().findFragmentById(R.id.top_card);
+        HomeCardFragment fragment = getTopCardFragment();
         fragment.updateHeaderView(CARD_HEADER);
         fragment.updateContentView(TEXT_BLOCK_VIEW);
+        applyPendingUpdates(fragment);
 
         onView(allOf(withId(R.id.text_block_layout), isDescendantOfA(withId(R.id.top_card)))).check(
                 matches(isDisplayed()));
@@ -132,12 +140,65 @@ public class HomeCardFragmentTest {
                 isDescendantOfA(withId(R.id.top_card)))).check(matches(isDisplayed()));
     }
 
+    @Test
+    public void updateContentView_severalUpdatesWithinFrame_appliesLatestOnly() {
+        HomeCardFragment fragment = getTopCardFragment();
+        int skippedUpdateCount = fragment.getSkippedUpdateCount();
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            fragment.updateHeaderView(CARD_HEADER);
+            fragment.updateContentView(DESCRIPTIVE_TEXT_VIEW);
+            fragment.updateContentView(TEXT_BLOCK_VIEW);
+            fragment.applyPendingUpdates();
+        });
+
+        assertEquals(skippedUpdateCount + 1, fragment.getSkippedUpdateCount());
+        onView(allOf(withId(R.id.text_block), withText(TEXT_BLOCK_CONTENT),
+                isDescendantOfA(withId(R.id.text_block_layout)),
+                isDescendantOfA(withId(R.id.top_card)))).check(matches(isDisplayed()));
+        onView(allOf(withId(R.id.descriptive_text_layout),
+                isDescendantOfA(withId(R.id.top_card)))).check(matches(not(isDisplayed())));
+    }
+
+    @Test
+    public void onConfigurationChanged_uiMode_reinflatesViewAndRebindsContent() {
+        HomeCardFragment fragment = getTopCardFragment();
+        fragment.updateHeaderView(CARD_HEADER);
+        fragment.updateContentView(TEXT_BLOCK_VIEW);
+        applyPendingUpdates(fragment);
+        View rootView = fragment.getView();
+
+        Configuration newConfig = new Configuration(fragment.getResources().getConfiguration());
+        newConfig.uiMode ^= Configuration.UI_MODE_NIGHT_MASK;
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(
+                () -> fragment.onConfigurationChanged(newConfig));
+
+        assertNotSame(rootView, fragment.getView());
+        onView(allOf(withId(R.id.text_block), withText(TEXT_BLOCK_CONTENT),
+                isDescendantOfA(withId(R.id.text_block_layout)),
+                isDescendantOfA(withId(R.id.top_card)))).check(matches(isDisplayed()));
+    }
+
+    @Test
+    public void onConfigurationChanged_mcc_keepsView() {
+        HomeCardFragment fragment = getTopCardFragment();
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        View rootView = fragment.getView();
+
+        Configuration newConfig = new Configuration(fragment.getResources().getConfiguration());
+        newConfig.mcc++;
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(
+                () -> fragment.onConfigurationChanged(newConfig));
+
+        assertSame(rootView, fragment.getView());
+    }
+
     @Test
     public void updateContentView_textBlockNoFooter_hidesTapForMoreView() {
-        HomeCardFragment fragment = (HomeCardFragment) mActivityTestRule.getActivity()
-                .getSupportFragmentManager().findFragmentById(R.id.top_card);
+        HomeCardFragment fragment = getTopCardFragment();
         fragment.updateHeaderView(CARD_HEADER);
         fragment.updateContentView(TEXT_BLOCK_VIEW_NO_FOOTER);
+        applyPendingUpdates(fragment);
 
         onView(allOf(withId(R.id.text_block_layout), isDescendantOfA(withId(R.id.top_card)))).check(
                 matches(isDisplayed()));
@@ -151,8 +212,7 @@ public class HomeCardFragmentTest {
 
     @Test
     public void updateControlBarButton_updatesButtonSelectedState() {
-        HomeCardFragment fragment = (HomeCardFragment) mActivityTestRule.getActivity()
-                .getSupportFragmentManager().findFragmentById(R.id.top_card);
+        HomeCardFragment fragment = getTopCardFragment();
         assertNotNull(fragment);
 
         ImageButton leftImageButton = mock(ImageButton.class);
@@ -171,7 +231,7 @@ public class HomeCardFragmentTest {
                 "test", "test", leftButtonControl, buttonControl, buttonControl);
         fragment.updateHeaderView(CARD_HEADER);
         fragment.updateContentView(controlView);
-        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        applyPendingUpdates(fragment);
         verify(leftImageButton).setSelected(false);
 
         // selects the button in case the icon have a selected state
@@ -180,7 +240,53 @@ public class HomeCardFragmentTest {
         controlView = new DescriptiveTextWithControlsView(null,
                 "test", "test", leftButtonControl, buttonControl, buttonControl);
         fragment.updateContentView(controlView);
-        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        applyPendingUpdates(fragment);
+        verify(leftImageButton).setSelected(true);
+    }
+
+    @Test
+    public void updateControlBarButton_sameContentWithNewIconState_updatesButtonSelectedState() {
+        HomeCardFragment fragment = getTopCardFragment();
+        assertNotNull(fragment);
+        ImageButton leftImageButton = mock(ImageButton.class);
+        fragment.setControlBarLeftButton(leftImageButton);
+        Drawable mockIcon = mock(Drawable.class);
+        DescriptiveTextWithControlsView.Control buttonControl = mock(
+                DescriptiveTextWithControlsView.Control.class);
+        DescriptiveTextWithControlsView.Control leftButtonControl = mock(
+                DescriptiveTextWithControlsView.Control.class);
+        when(mockIcon.getState()).thenReturn(new int[0]);
+        when(leftButtonControl.getIcon()).thenReturn(mockIcon);
+        DescriptiveTextWithControlsView controlView = new DescriptiveTextWithControlsView(null,
+                "test", "test", leftButtonControl, buttonControl, buttonControl);
+        fragment.updateHeaderView(CARD_HEADER);
+        fragment.updateContentView(controlView);
+        applyPendingUpdates(fragment);
+        verify(leftImageButton).setSelected(false);
+
+        // The model changes the state of the icon in place, e.g. muted from the steering wheel,
+        // and sends the same content again.
+        when(mockIcon.getState()).thenReturn(new int[]{android.R.attr.state_selected});
+        fragment.updateContentView(controlView);
+        applyPendingUpdates(fragment);
+
         verify(leftImageButton).setSelected(true);
     }
+
+    private HomeCardFragment getTopCardFragment() {
+        // The card modules are constructed off the main thread, the card is added afterwards.
+        long deadline = SystemClock.uptimeMillis() + CARD_TIMEOUT_MS;
+        HomeCardFragment fragment;
+        do {
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+            fragment = (HomeCardFragment) mActivityTestRule.getActivity()
+                    .getSupportFragmentManager().findFragmentById(R.id.top_card);
+        } while (fragment == null && SystemClock.uptimeMillis() < deadline);
+        return fragment;
+    }
+
+    private static void applyPendingUpdates(HomeCardFragment fragment) {
+        // The updates are otherwise applied on the next frame.
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(fragment::applyPendingUpdates);
+    }
 }
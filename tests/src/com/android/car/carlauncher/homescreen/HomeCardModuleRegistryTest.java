@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher.homescreen;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.car.carlauncher.R;
+import com.android.car.carlauncher.homescreen.assistive.AssistiveCard;
+import com.android.car.carlauncher.homescreen.audio.AudioCard;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Set;
+
+@RunWith(JUnit4.class)
+public class HomeCardModuleRegistryTest {
+
+    private static final String[] CARD_MODULE_CLASS_NAMES = {
+            AssistiveCard.class.getName(), AudioCard.class.getName()};
+
+    @Test
+    public void createModules_createsAllModules() {
+        Set<HomeCardModule> cardModules = HomeCardModuleRegistry.createModules(
+                CARD_MODULE_CLASS_NAMES).join();
+
+        assertThat(cardModules).hasSize(2);
+    }
+
+    @Test
+    public void createModules_modulesKeepTheirContainer() {
+        Set<HomeCardModule> cardModules = HomeCardModuleRegistry.createModules(
+                CARD_MODULE_CLASS_NAMES).join();
+
+        assertThat(cardModules.stream().map(HomeCardModule::getCardResId).toArray())
+                .asList().containsExactly(R.id.top_card, R.id.bottom_card);
+    }
+
+    @Test
+    public void createModules_unknownClass_skipsModule() {
+        Set<HomeCardModule> cardModules = HomeCardModuleRegistry.createModules(
+                new String[]{"com.example.UnknownCard", AudioCard.class.getName()}).join();
+
+        assertThat(cardModules).hasSize(1);
+        assertThat(cardModules.iterator().next()).isInstanceOf(AudioCard.class);
+    }
+
+    @Test
+    public void createModules_factoryThrows_skipsOnlyThatModule() {
+        String failingClassName = "com.example.FailingCard";
+        HomeCardModuleRegistry.register(failingClassName, () -> {
+            throw new IllegalStateException("Failing card");
+        });
+
+        Set<HomeCardModule> cardModules = HomeCardModuleRegistry.createModules(
+                new String[]{failingClassName, AudioCard.class.getName()}).join();
+
+        assertThat(cardModules).hasSize(1);
+        assertThat(cardModules.iterator().next()).isInstanceOf(AudioCard.class);
+    }
+}
@@ -18,6 +18,7 @@ package com.android.car.carlauncher.homescreen.assistive;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
@@ -31,6 +32,7 @@ import androidx.test.core.app.ApplicationProvider;
 
 import com.android.car.carlauncher.R;
 import com.android.car.carlauncher.homescreen.HomeCardInterface;
+import com.android.car.carlauncher.homescreen.ui.CardHeader;
 import com.android.car.carlauncher.homescreen.ui.DescriptiveTextView;
 
 import org.junit.After;
@@ -159,6 +161,30 @@ public class ProjectionModelTest {
         assertNull(mModel.getCardContent());
     }
 
+    @Test
+    public void sameProjectionStatusAgain_doesNotCallPresenter() {
+        sendProjectionStatus(mProjectingDeviceProjectionStatus);
+
+        sendProjectionStatus(ProjectionStatus.builder(mContext.getPackageName(),
+                ProjectionStatus.PROJECTION_STATE_READY_TO_PROJECT).addMobileDevice(
+                PROJECTING_DEVICE).build());
+
+        verify(mPresenter, never()).onModelUpdated(any());
+    }
+
+    @Test
+    public void changeProjectionStatusDevices_callsPresenterAndKeepsHeader() {
+        sendProjectionStatus(mProjectingDeviceProjectionStatus);
+        CardHeader header = mModel.getCardHeader();
+
+        sendProjectionStatus(mNonProjectingDeviceProjectionStatus);
+
+        verify(mPresenter).onModelUpdated(mModel);
+        assertSame(header, mModel.getCardHeader());
+        DescriptiveTextView content = (DescriptiveTextView) mModel.getCardContent();
+        assertEquals(NONPROJECTING_DEVICE_NAME, String.valueOf(content.getSubtitle()));
+    }
+
     private void sendProjectionStatus(ProjectionStatus status) {
         reset(mPresenter);
         mModel.onProjectionStatusChanged(
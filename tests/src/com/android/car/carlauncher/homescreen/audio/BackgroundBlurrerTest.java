@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher.homescreen.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class BackgroundBlurrerTest {
+    private static final int SIZE = 64;
+    private static final float RADIUS = 0.36f;
+
+    private final Context mContext = ApplicationProvider.getApplicationContext();
+    private final List<Bitmap> mResults = new ArrayList<>();
+    private BackgroundBlurrer mBlurrer;
+    private Bitmap mArtwork;
+
+    @Before
+    public void setUp() {
+        mBlurrer = new BackgroundBlurrer(mContext, Runnable::run, Runnable::run);
+        mArtwork = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+    }
+
+    @Test
+    public void blur_downscalesImage() {
+        mBlurrer.blur(new BitmapDrawable(mContext.getResources(), mArtwork), SIZE, RADIUS,
+                mResults::add);
+
+        assertThat(mResults).hasSize(1);
+        assertThat(mResults.get(0).getWidth()).isEqualTo(SIZE / BackgroundBlurrer.DOWNSCALE_FACTOR);
+    }
+
+    @Test
+    public void blur_sameArtworkInNewDrawable_usesCachedResult() {
+        mBlurrer.blur(new BitmapDrawable(mContext.getResources(), mArtwork), SIZE, RADIUS,
+                mResults::add);
+        mBlurrer.blur(new BitmapDrawable(mContext.getResources(), mArtwork), SIZE, RADIUS,
+                mResults::add);
+
+        assertThat(mBlurrer.getBlurCount()).isEqualTo(1);
+        assertThat(mResults).hasSize(2);
+        assertThat(mResults.get(1)).isSameInstanceAs(mResults.get(0));
+    }
+
+    @Test
+    public void blur_otherSize_blursAgain() {
+        mBlurrer.blur(new BitmapDrawable(mContext.getResources(), mArtwork), SIZE, RADIUS,
+                mResults::add);
+        mBlurrer.blur(new BitmapDrawable(mContext.getResources(), mArtwork), SIZE * 2, RADIUS,
+                mResults::add);
+
+        assertThat(mBlurrer.getBlurCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void blur_afterRelease_dropped() {
+        mBlurrer.release();
+
+        mBlurrer.blur(new BitmapDrawable(mContext.getResources(), mArtwork), SIZE, RADIUS,
+                mResults::add);
+        mBlurrer.prefetch(new BitmapDrawable(mContext.getResources(), mArtwork), SIZE, RADIUS);
+
+        assertThat(mResults).isEmpty();
+        assertThat(mBlurrer.getBlurCount()).isEqualTo(0);
+    }
+}
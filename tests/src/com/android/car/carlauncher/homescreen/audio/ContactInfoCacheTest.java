@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher.homescreen.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(AndroidJUnit4.class)
+public class ContactInfoCacheTest {
+    private static final int AVATAR_SIZE = 76;
+    private static final int IMAGE_SIZE = 400;
+    private static final long TIMEOUT_MS = 5_000;
+
+    private final Context mContext = ApplicationProvider.getApplicationContext();
+    private ContactInfoCache mCache;
+    private File mAvatarFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mCache = new ContactInfoCache(mContext, Clock.systemUTC(), Runnable::run, AVATAR_SIZE);
+        mAvatarFile = new File(mContext.getCacheDir(), "avatar.png");
+        Bitmap image = Bitmap.createBitmap(IMAGE_SIZE, IMAGE_SIZE, Bitmap.Config.ARGB_8888);
+        try (OutputStream out = new FileOutputStream(mAvatarFile)) {
+            image.compress(Bitmap.CompressFormat.PNG, /* quality= */ 100, out);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mCache.release();
+        mAvatarFile.delete();
+    }
+
+    @Test
+    public void loadAvatar_downsamplesAndCaches() throws Exception {
+        Uri avatarUri = Uri.fromFile(mAvatarFile);
+
+        Drawable avatar = mCache.loadAvatar(avatarUri).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        // Downsampled by the largest power of 2 which keeps it above the avatar size.
+        assertThat(((BitmapDrawable) avatar).getBitmap().getWidth()).isEqualTo(IMAGE_SIZE / 4);
+        assertThat(mCache.getCachedAvatar(avatarUri)).isNotNull();
+    }
+
+    @Test
+    public void loadAvatar_invalidUri_completesWithNull() throws Exception {
+        Uri invalidUri = new Uri.Builder().path("invalid uri path").build();
+
+        Drawable avatar = mCache.loadAvatar(invalidUri).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertThat(avatar).isNull();
+        assertThat(mCache.getCachedAvatar(invalidUri)).isNull();
+    }
+
+    @Test
+    public void release_clearsAvatars() throws Exception {
+        Uri avatarUri = Uri.fromFile(mAvatarFile);
+        mCache.loadAvatar(avatarUri).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        mCache.release();
+
+        assertThat(mCache.getCachedAvatar(avatarUri)).isNull();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher.homescreen.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.car.apps.common.imaging.ImageBinder;
+import com.android.car.media.common.MediaItemMetadata;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+@RunWith(JUnit4.class)
+public class MediaArtworkPrefetcherTest {
+    private static final int PREFETCH_COUNT = 2;
+
+    private final Context mContext = ApplicationProvider.getApplicationContext();
+    // The binders created by the prefetcher, with their clients.
+    private final List<ImageBinder<MediaItemMetadata.ArtworkRef>> mBinders = new ArrayList<>();
+    private final List<Consumer<Drawable>> mClients = new ArrayList<>();
+    private final List<MediaItemMetadata> mQueue = new ArrayList<>();
+
+    @Mock
+    private MediaArtworkPrefetcher.Listener mListener;
+
+    private MediaArtworkPrefetcher mPrefetcher;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mPrefetcher = new MediaArtworkPrefetcher(mContext, client -> {
+            ImageBinder<MediaItemMetadata.ArtworkRef> binder = mock(ImageBinder.class);
+            mBinders.add(binder);
+            mClients.add(client);
+            return binder;
+        }, PREFETCH_COUNT, mListener);
+        for (int i = 0; i < 5; i++) {
+            mQueue.add(createQueueItem(/* queueId= */ i));
+        }
+    }
+
+    @Test
+    public void prefetch_fetchesItemsAfterActiveOne() {
+        mPrefetcher.prefetch(mQueue, /* activeQueueItemId= */ 1);
+
+        assertThat(mBinders).hasSize(PREFETCH_COUNT);
+        verify(mBinders.get(0)).setImage(any(), same(artworkOf(2)));
+        verify(mBinders.get(1)).setImage(any(), same(artworkOf(3)));
+    }
+
+    @Test
+    public void prefetch_activeItemNotInQueue_fetchesNothing() {
+        mPrefetcher.prefetch(mQueue, /* activeQueueItemId= */ 42);
+
+        assertThat(mBinders).isEmpty();
+    }
+
+    @Test
+    public void prefetch_queueChanged_cancelsObsoleteFetches() {
+        mPrefetcher.prefetch(mQueue, /* activeQueueItemId= */ 1);
+
+        mPrefetcher.prefetch(mQueue, /* activeQueueItemId= */ 2);
+
+        // Item 2 is active now, item 3 is still upcoming and item 4 is fetched.
+        verify(mBinders.get(0)).setImage(any(), isNull());
+        verify(mBinders.get(1), never()).setImage(any(), isNull());
+        assertThat(mBinders).hasSize(PREFETCH_COUNT + 1);
+        verify(mBinders.get(2)).setImage(any(), same(artworkOf(4)));
+    }
+
+    @Test
+    public void fetched_artworkCachedAndListenerNotified() {
+        mPrefetcher.prefetch(mQueue, /* activeQueueItemId= */ 1);
+        Drawable artwork = createArtwork(/* bytes= */ 1024);
+
+        mClients.get(0).accept(artwork);
+
+        assertThat(mPrefetcher.getArtwork(artworkOf(2))).isSameInstanceAs(artwork);
+        assertThat(mPrefetcher.getArtwork(artworkOf(3))).isNull();
+        verify(mListener).onArtworkPrefetched(artwork);
+    }
+
+    @Test
+    public void fetchedAfterCancel_notCached() {
+        mPrefetcher.prefetch(mQueue, /* activeQueueItemId= */ 1);
+        mPrefetcher.prefetch(mQueue, /* activeQueueItemId= */ 3);
+
+        mClients.get(0).accept(createArtwork(/* bytes= */ 1024));
+
+        assertThat(mPrefetcher.getArtwork(artworkOf(2))).isNull();
+        verify(mListener, never()).onArtworkPrefetched(any());
+    }
+
+    @Test
+    public void fetched_overBudget_oldestEvicted() {
+        mPrefetcher.prefetch(mQueue, /* activeQueueItemId= */ 1);
+        int bytes = MediaArtworkPrefetcher.MAX_CACHE_BYTES * 3 / 4;
+
+        mClients.get(0).accept(createArtwork(bytes));
+        mClients.get(1).accept(createArtwork(bytes));
+
+        assertThat(mPrefetcher.getArtwork(artworkOf(2))).isNull();
+        assertThat(mPrefetcher.getArtwork(artworkOf(3))).isNotNull();
+    }
+
+    @Test
+    public void release_cancelsFetchesAndClearsCache() {
+        mPrefetcher.prefetch(mQueue, /* activeQueueItemId= */ 1);
+        mClients.get(0).accept(createArtwork(/* bytes= */ 1024));
+
+        mPrefetcher.release();
+
+        verify(mBinders.get(1)).setImage(any(), isNull());
+        assertThat(mPrefetcher.getArtwork(artworkOf(2))).isNull();
+    }
+
+    private MediaItemMetadata.ArtworkRef artworkOf(int index) {
+        return mQueue.get(index).getArtworkKey();
+    }
+
+    private MediaItemMetadata createQueueItem(long queueId) {
+        MediaItemMetadata item = mock(MediaItemMetadata.class);
+        MediaItemMetadata.ArtworkRef artworkRef = mock(MediaItemMetadata.ArtworkRef.class);
+        when(artworkRef.equals(any(), same(artworkRef))).thenReturn(true);
+        when(item.getQueueId()).thenReturn(queueId);
+        when(item.getArtworkKey()).thenReturn(artworkRef);
+        return item;
+    }
+
+    private Drawable createArtwork(int bytes) {
+        int width = 256;
+        Bitmap bitmap = Bitmap.createBitmap(width, bytes / (width * 4), Bitmap.Config.ARGB_8888);
+        return new BitmapDrawable(mContext.getResources(), bitmap);
+    }
+}
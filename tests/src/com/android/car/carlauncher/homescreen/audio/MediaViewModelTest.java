@@ -18,13 +18,17 @@ package com.android.car.carlauncher.homescreen.audio;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 
 import androidx.lifecycle.MutableLiveData;
@@ -32,6 +36,7 @@ import androidx.test.core.app.ApplicationProvider;
 
 import com.android.car.apps.common.testutils.InstantTaskExecutorRule;
 import com.android.car.carlauncher.homescreen.HomeCardInterface;
+import com.android.car.carlauncher.homescreen.ui.CardContent;
 import com.android.car.carlauncher.homescreen.ui.CardHeader;
 import com.android.car.carlauncher.homescreen.ui.DescriptiveTextWithControlsView;
 import com.android.car.media.common.MediaItemMetadata;
@@ -48,6 +53,8 @@ import org.junit.runners.JUnit4;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.List;
+
 @RunWith(JUnit4.class)
 public class MediaViewModelTest {
 
@@ -59,6 +66,9 @@ public class MediaViewModelTest {
     private MediaViewModel mMediaViewModel;
     private MutableLiveData<MediaSource> mLiveMediaSource = new MutableLiveData<>();
     private MutableLiveData<MediaItemMetadata> mLiveMetadata = new MutableLiveData<>();
+    private MutableLiveData<List<MediaItemMetadata>> mLiveQueue = new MutableLiveData<>();
+    private MutableLiveData<PlaybackViewModel.PlaybackStateWrapper> mLivePlaybackState =
+            new MutableLiveData<>();
 
     @Mock
     private MediaSourceViewModel mSourceViewModel;
@@ -83,6 +93,8 @@ public class MediaViewModelTest {
                 mSourceViewModel, mPlaybackViewModel);
         when(mSourceViewModel.getPrimaryMediaSource()).thenReturn(mLiveMediaSource);
         when(mPlaybackViewModel.getMetadata()).thenReturn(mLiveMetadata);
+        when(mPlaybackViewModel.getQueue()).thenReturn(mLiveQueue);
+        when(mPlaybackViewModel.getPlaybackStateWrapper()).thenReturn(mLivePlaybackState);
         mMediaViewModel.setPresenter(mPresenter);
         mMediaViewModel.onCreate(ApplicationProvider.getApplicationContext());
         reset(mPresenter);
@@ -156,5 +168,72 @@ public class MediaViewModelTest {
         assertEquals(content.getTitle(), SONG_TITLE);
         assertEquals(content.getSubtitle(), ARTIST_NAME);
     }
-}
 
+    @Test
+    public void changeMetadataToEqualTexts_doesNotCallPresenter() {
+        when(mMediaSource.getDisplayName()).thenReturn(APP_NAME);
+        when(mMediaSource.getIcon()).thenReturn(APP_ICON);
+        when(mMetadata.getSubtitle()).thenReturn(ARTIST_NAME);
+        when(mMetadata.getTitle()).thenReturn(SONG_TITLE);
+        mLiveMediaSource.setValue(mMediaSource);
+        mLiveMetadata.setValue(mMetadata);
+        CardContent content = mMediaViewModel.getCardContent();
+        reset(mPresenter);
+
+        MediaItemMetadata newMetadata = mock(MediaItemMetadata.class);
+        when(newMetadata.getSubtitle()).thenReturn(new StringBuilder(ARTIST_NAME).toString());
+        when(newMetadata.getTitle()).thenReturn(new StringBuilder(SONG_TITLE).toString());
+        mLiveMetadata.setValue(newMetadata);
+
+        verify(mPresenter, never()).onModelUpdated(any());
+        assertSame(content, mMediaViewModel.getCardContent());
+    }
+
+    @Test
+    public void changeMetadataToEqualTextsAndNewArtwork_updatesMetadata() {
+        when(mMediaSource.getDisplayName()).thenReturn(APP_NAME);
+        when(mMediaSource.getIcon()).thenReturn(APP_ICON);
+        when(mMetadata.getSubtitle()).thenReturn(ARTIST_NAME);
+        when(mMetadata.getTitle()).thenReturn(SONG_TITLE);
+        mLiveMediaSource.setValue(mMediaSource);
+        mLiveMetadata.setValue(mMetadata);
+
+        MediaItemMetadata newMetadata = mock(MediaItemMetadata.class);
+        MediaItemMetadata.ArtworkRef newArtwork = mock(MediaItemMetadata.ArtworkRef.class);
+        when(newMetadata.getSubtitle()).thenReturn(ARTIST_NAME);
+        when(newMetadata.getTitle()).thenReturn(SONG_TITLE);
+        when(newMetadata.getArtworkKey()).thenReturn(newArtwork);
+        Drawable newArt = new ColorDrawable(Color.RED);
+        when(newArtwork.getImage(any())).thenReturn(newArt);
+        mLiveMetadata.setValue(newMetadata);
+
+        DescriptiveTextWithControlsView content =
+                (DescriptiveTextWithControlsView) mMediaViewModel.getCardContent();
+        assertSame(newArt, content.getImage());
+    }
+
+    @Test
+    public void changeMetadata_prefetchedArtwork_shownWithoutDecoding() {
+        MediaArtworkPrefetcher prefetcher = mock(MediaArtworkPrefetcher.class);
+        MediaViewModel mediaViewModel = new MediaViewModel(
+                ApplicationProvider.getApplicationContext(), mSourceViewModel,
+                mPlaybackViewModel, prefetcher);
+        mediaViewModel.setPresenter(mPresenter);
+        mediaViewModel.onCreate(ApplicationProvider.getApplicationContext());
+        MediaItemMetadata.ArtworkRef artwork = mock(MediaItemMetadata.ArtworkRef.class);
+        Drawable prefetchedArt = new ColorDrawable(Color.BLUE);
+        when(prefetcher.getArtwork(artwork)).thenReturn(prefetchedArt);
+        when(mMediaSource.getDisplayName()).thenReturn(APP_NAME);
+        when(mMetadata.getTitle()).thenReturn(SONG_TITLE);
+        when(mMetadata.getArtworkKey()).thenReturn(artwork);
+
+        mLiveMediaSource.setValue(mMediaSource);
+        mLiveMetadata.setValue(mMetadata);
+
+        DescriptiveTextWithControlsView content =
+                (DescriptiveTextWithControlsView) mediaViewModel.getCardContent();
+        assertSame(prefetchedArt, content.getImage());
+        verify(artwork, never()).getImage(any());
+        mediaViewModel.onCleared();
+    }
+}
@@ -16,6 +16,8 @@
 
 package com.android.car.carlauncher.homescreen.audio.telecom;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 import android.content.Intent;
@@ -36,6 +38,8 @@ import org.junit.runners.JUnit4;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeoutException;
 
 @RunWith(JUnit4.class)
@@ -86,4 +90,51 @@ public class InCallServiceImplTest {
 
         verify(mInCallModel).onCallAudioStateChanged(callAudioState);
     }
+
+    @Test
+    public void removeListener_doesNotCallListener() {
+        mService.addListener(mInCallModel);
+        mService.removeListener(mInCallModel);
+        mService.onCallAdded(mCall);
+
+        verify(mInCallModel, never()).onCallAdded(any());
+    }
+
+    @Test
+    public void addListener_callsListenerWithCurrentCallsAndAudioState() {
+        CallAudioState callAudioState = new CallAudioState(true,
+                CallAudioState.ROUTE_WIRED_OR_EARPIECE, CallAudioState.ROUTE_WIRED_OR_EARPIECE);
+        mService.onCallAdded(mCall);
+        mService.onCallAudioStateChanged(callAudioState);
+
+        mService.addListener(mInCallModel);
+
+        verify(mInCallModel).onCallAdded(mCall);
+        verify(mInCallModel).onCallAudioStateChanged(callAudioState);
+    }
+
+    @Test
+    public void addListener_withExecutor_callsListenerOnExecutor() {
+        List<Runnable> pending = new ArrayList<>();
+        mService.addListener(pending::add, mInCallModel);
+        mService.onCallAdded(mCall);
+
+        verify(mInCallModel, never()).onCallAdded(any());
+
+        pending.forEach(Runnable::run);
+
+        verify(mInCallModel).onCallAdded(mCall);
+    }
+
+    @Test
+    public void removeListener_dropsPendingCallbacks() {
+        List<Runnable> pending = new ArrayList<>();
+        mService.addListener(pending::add, mInCallModel);
+        mService.onCallAdded(mCall);
+
+        mService.removeListener(mInCallModel);
+        pending.forEach(Runnable::run);
+
+        verify(mInCallModel, never()).onCallAdded(any());
+    }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher.homescreen.ui;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.text.SpannableString;
+import android.view.View;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class CardContentTest {
+
+    private final Drawable mImage = new ColorDrawable();
+    private final View.OnClickListener mListener = v -> {};
+
+    @Test
+    public void cardHeader_sameTitleAndIcon_equal() {
+        CardHeader header = new CardHeader("title", mImage);
+
+        assertThat(new CardHeader(new SpannableString("title"), mImage)).isEqualTo(header);
+        assertThat(new CardHeader("title", mImage).hashCode()).isEqualTo(header.hashCode());
+        assertThat(new CardHeader("title", new ColorDrawable())).isNotEqualTo(header);
+    }
+
+    @Test
+    public void descriptiveTextView_sameTexts_equal() {
+        DescriptiveTextView content = new DescriptiveTextView(mImage, "title", "subtitle");
+
+        assertThat(new DescriptiveTextView(mImage, "title", "subtitle")).isEqualTo(content);
+        assertThat(new DescriptiveTextView(mImage, "title", "subtitle", "footer"))
+                .isNotEqualTo(content);
+    }
+
+    @Test
+    public void textBlockView_sameTexts_equal() {
+        TextBlockView content = new TextBlockView("text", "footer");
+
+        assertThat(new TextBlockView("text", "footer")).isEqualTo(content);
+        assertThat(new TextBlockView("text")).isNotEqualTo(content);
+    }
+
+    @Test
+    public void descriptiveTextWithControlsView_iconStateChanged_notEqual() {
+        Drawable icon = new ColorDrawable();
+        DescriptiveTextWithControlsView.Control control =
+                new DescriptiveTextWithControlsView.Control(icon, mListener);
+        DescriptiveTextWithControlsView content = new DescriptiveTextWithControlsView(mImage,
+                "title", "subtitle", control, control, control);
+        assertThat(new DescriptiveTextWithControlsView(mImage, "title", "subtitle", control,
+                control, control)).isEqualTo(content);
+
+        icon.setState(new int[]{android.R.attr.state_selected});
+
+        assertThat(new DescriptiveTextWithControlsView(mImage, "title", "subtitle", control,
+                control, control)).isNotEqualTo(content);
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.carlauncher.taskstack;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.app.ActivityManager;
+import android.app.IActivityTaskManager;
+import android.app.TaskStackListener;
+import android.view.Choreographer;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class TaskStackChangeListenersTest {
+    @Mock
+    private IActivityTaskManager mActivityTaskManager;
+    @Mock
+    private TaskStackListener mListener;
+    @Mock
+    private TaskStackListener mOtherListener;
+    @Mock
+    private Choreographer mChoreographer;
+
+    private final List<Runnable> mDefaultQueue = new ArrayList<>();
+    private final List<Runnable> mOtherQueue = new ArrayList<>();
+    private TaskStackChangeListeners mListeners;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mListeners = new TaskStackChangeListeners(mDefaultQueue::add, () -> mActivityTaskManager,
+                () -> mChoreographer);
+    }
+
+    @Test
+    public void registerTaskStackListener_registersWithSystemOnce() throws Exception {
+        mListeners.registerTaskStackListener(mListener);
+        mListeners.registerTaskStackListener(mOtherListener);
+
+        verify(mActivityTaskManager).registerTaskStackListener(mListeners.getSystemListener());
+    }
+
+    @Test
+    public void unregisterLastListener_unregistersFromSystem() throws Exception {
+        mListeners.registerTaskStackListener(mListener);
+
+        mListeners.unregisterTaskStackListener(mListener);
+
+        verify(mActivityTaskManager).unregisterTaskStackListener(mListeners.getSystemListener());
+    }
+
+    @Test
+    public void callback_deliveredOnEachListenerExecutor() throws Exception {
+        mListeners.registerTaskStackListener(mListener);
+        mListeners.registerTaskStackListener(mOtherListener, mOtherQueue::add);
+
+        mListeners.getSystemListener().onTaskRemoved(/* taskId= */ 1);
+
+        // One task per executor, the listeners aren't called until it runs.
+        assertThat(mDefaultQueue).hasSize(1);
+        assertThat(mOtherQueue).hasSize(1);
+        verify(mListener, never()).onTaskRemoved(/* taskId= */ 1);
+
+        runAll(mDefaultQueue);
+        verify(mListener).onTaskRemoved(/* taskId= */ 1);
+        verify(mOtherListener, never()).onTaskRemoved(/* taskId= */ 1);
+
+        runAll(mOtherQueue);
+        verify(mOtherListener).onTaskRemoved(/* taskId= */ 1);
+    }
+
+    @Test
+    public void listenersSharingExecutor_calledFromOneTask() throws Exception {
+        mListeners.registerTaskStackListener(mListener);
+        mListeners.registerTaskStackListener(mOtherListener);
+
+        mListeners.getSystemListener().onTaskStackChanged();
+
+        assertThat(mDefaultQueue).hasSize(1);
+        runAll(mDefaultQueue);
+        verify(mListener).onTaskStackChanged();
+        verify(mOtherListener).onTaskStackChanged();
+    }
+
+    @Test
+    public void unregisterAfterCallbackPosted_doesNotDeliver() throws Exception {
+        mListeners.registerTaskStackListener(mListener);
+        mListeners.registerTaskStackListener(mOtherListener);
+        mListeners.getSystemListener().onTaskStackChanged();
+
+        mListeners.unregisterTaskStackListener(mListener);
+        runAll(mDefaultQueue);
+
+        verify(mListener, never()).onTaskStackChanged();
+        verify(mOtherListener).onTaskStackChanged();
+    }
+
+    @Test
+    public void unregister_doesNotDeliverLaterCallbacks() throws Exception {
+        mListeners.registerTaskStackListener(mListener);
+        mListeners.unregisterTaskStackListener(mListener);
+
+        mListeners.getSystemListener().onTaskCreated(/* taskId= */ 1, /* componentName= */ null);
+        runAll(mDefaultQueue);
+
+        verify(mListener, never()).onTaskCreated(any(Integer.class), any());
+    }
+
+    @Test
+    public void coalescingListener_latestCallbackPerTaskDeliveredOnNextFrame() throws Exception {
+        registerCoalescing(mListener);
+        ActivityManager.RunningTaskInfo task1 = createTask(/* taskId= */ 1);
+        ActivityManager.RunningTaskInfo task1Again = createTask(/* taskId= */ 1);
+        ActivityManager.RunningTaskInfo task2 = createTask(/* taskId= */ 2);
+
+        mListeners.getSystemListener().onTaskMovedToFront(task1);
+        mListeners.getSystemListener().onTaskMovedToFront(task2);
+        mListeners.getSystemListener().onTaskMovedToFront(task1Again);
+        mListeners.getSystemListener().onTaskStackChanged();
+        mListeners.getSystemListener().onTaskStackChanged();
+        verify(mListener, never()).onTaskMovedToFront(any());
+
+        runNextFrame();
+
+        InOrder inOrder = inOrder(mListener);
+        inOrder.verify(mListener).onTaskMovedToFront(task2);
+        inOrder.verify(mListener).onTaskMovedToFront(task1Again);
+        inOrder.verify(mListener).onTaskStackChanged();
+        verify(mListener, never()).onTaskMovedToFront(task1);
+        verify(mListener, times(1)).onTaskStackChanged();
+    }
+
+    @Test
+    public void coalescingListener_keepsOrderBetweenCallbackTypes() throws Exception {
+        registerCoalescing(mListener);
+        ActivityManager.RunningTaskInfo task = createTask(/* taskId= */ 1);
+
+        mListeners.getSystemListener().onTaskFocusChanged(/* taskId= */ 1, /* focused= */ true);
+        mListeners.getSystemListener().onTaskMovedToFront(task);
+        runNextFrame();
+
+        InOrder inOrder = inOrder(mListener);
+        inOrder.verify(mListener).onTaskFocusChanged(/* taskId= */ 1, /* focused= */ true);
+        inOrder.verify(mListener).onTaskMovedToFront(task);
+    }
+
+    @Test
+    public void coalescingListener_pendingCallbacksFlushedBeforeOtherCallbacks()
+            throws Exception {
+        registerCoalescing(mListener);
+        ActivityManager.RunningTaskInfo task = createTask(/* taskId= */ 1);
+
+        mListeners.getSystemListener().onTaskMovedToFront(task);
+        mListeners.getSystemListener().onTaskRemoved(/* taskId= */ 1);
+        runAll(mDefaultQueue);
+
+        InOrder inOrder = inOrder(mListener);
+        inOrder.verify(mListener).onTaskMovedToFront(task);
+        inOrder.verify(mListener).onTaskRemoved(/* taskId= */ 1);
+        // Already flushed, the frame doesn't deliver it again.
+        runNextFrame();
+        verify(mListener, times(1)).onTaskMovedToFront(task);
+    }
+
+    @Test
+    public void coalescingListener_unregistered_doesNotDeliverPendingCallbacks()
+            throws Exception {
+        registerCoalescing(mListener);
+        registerCoalescing(mOtherListener);
+        mListeners.getSystemListener().onTaskStackChanged();
+        mListeners.getSystemListener().onTaskRemoved(/* taskId= */ 1);
+
+        mListeners.unregisterTaskStackListener(mListener);
+        runAll(mDefaultQueue);
+        runNextFrame();
+
+        verify(mListener, never()).onTaskStackChanged();
+        verify(mListener, never()).onTaskRemoved(/* taskId= */ 1);
+        verify(mOtherListener).onTaskStackChanged();
+        verify(mOtherListener).onTaskRemoved(/* taskId= */ 1);
+    }
+
+    private void registerCoalescing(TaskStackListener listener) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(
+                () -> mListeners.registerCoalescingTaskStackListener(listener));
+    }
+
+    /** Runs the frame callback posted since the last frame, if any. */
+    private void runNextFrame() {
+        ArgumentCaptor<Choreographer.FrameCallback> captor =
+                ArgumentCaptor.forClass(Choreographer.FrameCallback.class);
+        verify(mChoreographer, atLeast(0)).postFrameCallback(
+                captor.capture());
+        clearInvocations(mChoreographer);
+        for (Choreographer.FrameCallback callback : captor.getAllValues()) {
+            callback.doFrame(/* frameTimeNanos= */ 0);
+        }
+    }
+
+    private static ActivityManager.RunningTaskInfo createTask(int taskId) {
+        ActivityManager.RunningTaskInfo task = new ActivityManager.RunningTaskInfo();
+        task.taskId = taskId;
+        return task;
+    }
+
+    private static void runAll(List<Runnable> queue) {
+        List<Runnable> runnables = new ArrayList<>(queue);
+        queue.clear();
+        runnables.forEach(Runnable::run);
+    }
+}